@@ -1,5 +1,9 @@
 package net.juniper.contrail.sandesh;
 
+import net.juniper.contrail.vcenter.ApiCircuitBreaker;
+import net.juniper.contrail.vcenter.EventRetryQueue;
+import net.juniper.contrail.vcenter.LatencyStats;
+
 public class ApiServerInfo {
     
     private String ipAddr;
@@ -56,6 +60,36 @@ public class ApiServerInfo {
          .append("</connected>");
     }
   
+    private String circuitState;
+    private long circuitOpens;
+    private long circuitProbes;
+    private int heldEvents;
+
+    public void setCircuitBreaker(ApiCircuitBreaker breaker, EventRetryQueue retryQueue) {
+        if (breaker != null) {
+            circuitState = breaker.getState().toString();
+            circuitOpens = breaker.getOpenCount();
+            circuitProbes = breaker.getProbeCount();
+        }
+        if (retryQueue != null) {
+            heldEvents = retryQueue.getHeld();
+        }
+    }
+
+    private long probeRttAvg;
+    private long probeRttP50;
+    private long probeRttP99;
+    private long probeFailures;
+    private long apiTimeout;
+
+    public void setProbe(LatencyStats rtt, long failures, long timeout) {
+        probeRttAvg = rtt.getAverage();
+        probeRttP50 = rtt.getPercentile(50);
+        probeRttP99 = rtt.getPercentile(99);
+        probeFailures = failures;
+        apiTimeout = timeout;
+    }
+
     public void writeObject(StringBuilder s) {
         writeObject(s, 1);
     }
@@ -70,6 +104,15 @@ public class ApiServerInfo {
         writeFieldIpAddr(s, inner_id++);
         writeFieldPort(s, inner_id++);
         writeFieldConnected(s, inner_id++);
+        SandeshUtils.writeField(s, "circuitState", "string", inner_id++, circuitState);
+        SandeshUtils.writeField(s, "circuitOpens", "i64", inner_id++, circuitOpens);
+        SandeshUtils.writeField(s, "circuitProbes", "i64", inner_id++, circuitProbes);
+        SandeshUtils.writeField(s, "heldEvents", "int", inner_id++, heldEvents);
+        SandeshUtils.writeField(s, "probeRttAvgMs", "i64", inner_id++, probeRttAvg);
+        SandeshUtils.writeField(s, "probeRttP50Ms", "i64", inner_id++, probeRttP50);
+        SandeshUtils.writeField(s, "probeRttP99Ms", "i64", inner_id++, probeRttP99);
+        SandeshUtils.writeField(s, "probeFailures", "i64", inner_id++, probeFailures);
+        SandeshUtils.writeField(s, "apiTimeoutMs", "i64", inner_id++, apiTimeout);
         s.append("</ApiServerStruct>");
         s.append("</ApiServerInfo>");
     }
@@ -0,0 +1,122 @@
+/* This class will be generated based on struct ApiWriteStats 
+ * from vcenter.sandesh 
+ */
+
+package net.juniper.contrail.sandesh;
+
+import net.juniper.contrail.vcenter.LatencyStats;
+import net.juniper.contrail.vcenter.VncCascadeDelete;
+import net.juniper.contrail.vcenter.VncWriteBehind;
+
+public class ApiWriteStats {
+
+    private int threads;
+    public int getThreads() { return threads; }
+    public void setThreads(int threads) { this.threads = threads; }
+
+    private int maxInFlight;
+    public int getMaxInFlight() { return maxInFlight; }
+    public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
+
+    private int pending;
+    public int getPending() { return pending; }
+    public void setPending(int pending) { this.pending = pending; }
+
+    private long submitted;
+    public long getSubmitted() { return submitted; }
+    public void setSubmitted(long submitted) { this.submitted = submitted; }
+
+    private long failures;
+    public long getFailures() { return failures; }
+    public void setFailures(long failures) { this.failures = failures; }
+
+    private long skipped;
+    public long getSkipped() { return skipped; }
+    public void setSkipped(long skipped) { this.skipped = skipped; }
+
+    private long retried;
+    public long getRetried() { return retried; }
+    public void setRetried(long retried) { this.retried = retried; }
+
+    private long slow;
+    public long getSlow() { return slow; }
+    public void setSlow(long slow) { this.slow = slow; }
+
+    // per operation: count, average and max latency
+    private final String[] ops = { "create", "sync", "delete" };
+    private final long[] counts = new long[ops.length];
+    private final long[] averages = new long[ops.length];
+    private final long[] maxima = new long[ops.length];
+
+    public void populate(VncWriteBehind writeBehind) {
+        if (writeBehind == null) {
+            return;
+        }
+        setThreads(writeBehind.getThreads());
+        setMaxInFlight(writeBehind.getMaxInFlight());
+        setPending(writeBehind.getPending());
+        setSubmitted(writeBehind.getSubmitted());
+        setFailures(writeBehind.getFailures());
+        setSkipped(writeBehind.getSkipped());
+        setRetried(writeBehind.getRetried());
+        setSlow(writeBehind.getSlow());
+        for (int i = 0; i < ops.length; i++) {
+            LatencyStats latency = writeBehind.getLatencies().get(ops[i]);
+            if (latency != null) {
+                counts[i] = latency.getCount();
+                averages[i] = latency.getAverage();
+                maxima[i] = latency.getMax();
+            }
+        }
+    }
+
+    // children of deleted networks and VMs
+    private int deleteThreads;
+    private long cascadeDeleted;
+    private long cascadeFailures;
+    private long cascadeLatencyAvg;
+    private long cascadeLatencyMax;
+
+    public void populate(VncCascadeDelete cascadeDelete) {
+        if (cascadeDelete == null) {
+            return;
+        }
+        deleteThreads = cascadeDelete.getThreads();
+        cascadeDeleted = cascadeDelete.getDeleted();
+        cascadeFailures = cascadeDelete.getFailures();
+        cascadeLatencyAvg = cascadeDelete.getLatency().getAverage();
+        cascadeLatencyMax = cascadeDelete.getLatency().getMax();
+    }
+
+    public void writeObject(StringBuilder s) {
+        writeObject(s, 1);
+    }
+
+    public void writeObject(StringBuilder s, int identifier) {
+        s.append("<ApiWriteStats type=\"struct\" identifier=\"")
+         .append(identifier)
+         .append("\">");
+        s.append("<ApiWriteStatsStruct>");
+        int inner_id = 1;
+        SandeshUtils.writeField(s, "threads", "int", inner_id++, threads);
+        SandeshUtils.writeField(s, "maxInFlight", "int", inner_id++, maxInFlight);
+        SandeshUtils.writeField(s, "pending", "int", inner_id++, pending);
+        SandeshUtils.writeField(s, "submitted", "i64", inner_id++, submitted);
+        SandeshUtils.writeField(s, "failures", "i64", inner_id++, failures);
+        SandeshUtils.writeField(s, "skipped", "i64", inner_id++, skipped);
+        SandeshUtils.writeField(s, "retried", "i64", inner_id++, retried);
+        SandeshUtils.writeField(s, "slow", "i64", inner_id++, slow);
+        for (int i = 0; i < ops.length; i++) {
+            SandeshUtils.writeField(s, ops[i] + "Count", "i64", inner_id++, counts[i]);
+            SandeshUtils.writeField(s, ops[i] + "LatencyAvgMs", "i64", inner_id++, averages[i]);
+            SandeshUtils.writeField(s, ops[i] + "LatencyMaxMs", "i64", inner_id++, maxima[i]);
+        }
+        SandeshUtils.writeField(s, "deleteThreads", "int", inner_id++, deleteThreads);
+        SandeshUtils.writeField(s, "cascadeDeleted", "i64", inner_id++, cascadeDeleted);
+        SandeshUtils.writeField(s, "cascadeFailures", "i64", inner_id++, cascadeFailures);
+        SandeshUtils.writeField(s, "cascadeLatencyAvgMs", "i64", inner_id++, cascadeLatencyAvg);
+        SandeshUtils.writeField(s, "cascadeLatencyMaxMs", "i64", inner_id++, cascadeLatencyMax);
+        s.append("</ApiWriteStatsStruct>");
+        s.append("</ApiWriteStats>");
+    }
+}
@@ -0,0 +1,16 @@
+package net.juniper.contrail.sandesh;
+
+import java.util.Comparator;
+
+public class ComparatorHostReadInfo
+    implements Comparator<HostReadInfo> {
+
+    // slowest hosts first
+    public int compare(HostReadInfo h1, HostReadInfo h2) {
+        if (h1.getDurationMs() != h2.getDurationMs()) {
+            return h1.getDurationMs() > h2.getDurationMs() ? -1 : 1;
+        }
+        return SandeshUtils.nullSafeComparator(h1.getHostName(),
+                                               h2.getHostName());
+    }
+}
@@ -0,0 +1,164 @@
+/* This class will be generated based on struct EventQueueStats 
+ * from vcenter.sandesh 
+ */
+
+package net.juniper.contrail.sandesh;
+
+import net.juniper.contrail.vcenter.EventRetryQueue;
+import net.juniper.contrail.vcenter.LatencyStats;
+import net.juniper.contrail.vcenter.VCenterEventDispatcher;
+import net.juniper.contrail.vcenter.VmEventCoalescer;
+
+public class EventQueueStats {
+
+    private int workers;
+    public int getWorkers() { return workers; }
+    public void setWorkers(int workers) { this.workers = workers; }
+
+    private int queueDepth;
+    public int getQueueDepth() { return queueDepth; }
+    public void setQueueDepth(int queueDepth) { this.queueDepth = queueDepth; }
+
+    private int queueCapacity;
+    public int getQueueCapacity() { return queueCapacity; }
+    public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+
+    private boolean backpressure;
+    public boolean getBackpressure() { return backpressure; }
+    public void setBackpressure(boolean backpressure) { this.backpressure = backpressure; }
+
+    private long backpressureCount;
+    public long getBackpressureCount() { return backpressureCount; }
+    public void setBackpressureCount(long count) { this.backpressureCount = count; }
+
+    private long dispatched;
+    public long getDispatched() { return dispatched; }
+    public void setDispatched(long dispatched) { this.dispatched = dispatched; }
+
+    private long processed;
+    public long getProcessed() { return processed; }
+    public void setProcessed(long processed) { this.processed = processed; }
+
+    private long failed;
+    public long getFailed() { return failed; }
+    public void setFailed(long failed) { this.failed = failed; }
+
+    private long queueLatencyAvg;
+    private long queueLatencyMax;
+    private long handleLatencyAvg;
+    private long handleLatencyMax;
+
+    public void setQueueLatency(LatencyStats stats) {
+        queueLatencyAvg = stats.getAverage();
+        queueLatencyMax = stats.getMax();
+    }
+
+    public void setHandleLatency(LatencyStats stats) {
+        handleLatencyAvg = stats.getAverage();
+        handleLatencyMax = stats.getMax();
+    }
+
+    private long coalesceWindowMs;
+    private int coalescePending;
+    private long vmEventsReceived;
+    private long vmUpdatesEmitted;
+    private long vmUpdatesSuperseded;
+    private String collapseRatio = "1.00";
+
+    public void populate(VmEventCoalescer coalescer) {
+        if (coalescer == null) {
+            return;
+        }
+        coalesceWindowMs = coalescer.getWindowMillis();
+        coalescePending = coalescer.getPending();
+        vmEventsReceived = coalescer.getReceived();
+        vmUpdatesEmitted = coalescer.getEmitted();
+        vmUpdatesSuperseded = coalescer.getSuperseded();
+        collapseRatio = String.format("%.2f", coalescer.getCollapseRatio());
+    }
+
+    private int retryPending;
+    private long retryFailures;
+    private long retried;
+    private long retryRecovered;
+    private long fullResyncs;
+
+    public void populate(EventRetryQueue retryQueue) {
+        if (retryQueue == null) {
+            return;
+        }
+        retryPending = retryQueue.getPending();
+        retryFailures = retryQueue.getFailures();
+        retried = retryQueue.getRetried();
+        retryRecovered = retryQueue.getRecovered();
+        fullResyncs = retryQueue.getFullResyncs();
+    }
+
+    private int lastEventKey;
+    public int getLastEventKey() { return lastEventKey; }
+    public void setLastEventKey(int lastEventKey) { this.lastEventKey = lastEventKey; }
+
+    private int lastEventChainId;
+    public int getLastEventChainId() { return lastEventChainId; }
+    public void setLastEventChainId(int chainId) { this.lastEventChainId = chainId; }
+
+    private long eventsReplayed;
+    public long getEventsReplayed() { return eventsReplayed; }
+    public void setEventsReplayed(long eventsReplayed) { this.eventsReplayed = eventsReplayed; }
+
+    public void populate(VCenterEventDispatcher dispatcher) {
+        if (dispatcher == null) {
+            return;
+        }
+        setWorkers(dispatcher.getWorkerCount());
+        setQueueDepth(dispatcher.getQueueDepth());
+        setQueueCapacity(dispatcher.getQueueCapacity());
+        setBackpressure(dispatcher.getBackpressure());
+        setBackpressureCount(dispatcher.getBackpressureCount());
+        setDispatched(dispatcher.getDispatched());
+        setProcessed(dispatcher.getProcessed());
+        setFailed(dispatcher.getFailed());
+        setQueueLatency(dispatcher.getQueueLatency());
+        setHandleLatency(dispatcher.getHandleLatency());
+    }
+
+    public void writeObject(StringBuilder s) {
+        writeObject(s, 1);
+    }
+
+    public void writeObject(StringBuilder s, int identifier) {
+        s.append("<EventQueueStats type=\"struct\" identifier=\"")
+         .append(identifier)
+         .append("\">");
+        s.append("<EventQueueStatsStruct>");
+        int inner_id = 1;
+        SandeshUtils.writeField(s, "workers", "int", inner_id++, workers);
+        SandeshUtils.writeField(s, "queueDepth", "int", inner_id++, queueDepth);
+        SandeshUtils.writeField(s, "queueCapacity", "int", inner_id++, queueCapacity);
+        SandeshUtils.writeField(s, "backpressure", "bool", inner_id++, backpressure);
+        SandeshUtils.writeField(s, "backpressureCount", "i64", inner_id++, backpressureCount);
+        SandeshUtils.writeField(s, "dispatched", "i64", inner_id++, dispatched);
+        SandeshUtils.writeField(s, "processed", "i64", inner_id++, processed);
+        SandeshUtils.writeField(s, "failed", "i64", inner_id++, failed);
+        SandeshUtils.writeField(s, "queueLatencyAvgMs", "i64", inner_id++, queueLatencyAvg);
+        SandeshUtils.writeField(s, "queueLatencyMaxMs", "i64", inner_id++, queueLatencyMax);
+        SandeshUtils.writeField(s, "handleLatencyAvgMs", "i64", inner_id++, handleLatencyAvg);
+        SandeshUtils.writeField(s, "handleLatencyMaxMs", "i64", inner_id++, handleLatencyMax);
+        SandeshUtils.writeField(s, "coalesceWindowMs", "i64", inner_id++, coalesceWindowMs);
+        SandeshUtils.writeField(s, "coalescePending", "int", inner_id++, coalescePending);
+        SandeshUtils.writeField(s, "vmEventsReceived", "i64", inner_id++, vmEventsReceived);
+        SandeshUtils.writeField(s, "vmUpdatesEmitted", "i64", inner_id++, vmUpdatesEmitted);
+        SandeshUtils.writeField(s, "vmUpdatesSuperseded", "i64", inner_id++, vmUpdatesSuperseded);
+        SandeshUtils.writeField(s, "collapseRatio", "string", inner_id++, collapseRatio);
+        SandeshUtils.writeField(s, "retryPending", "int", inner_id++, retryPending);
+        SandeshUtils.writeField(s, "retryFailures", "i64", inner_id++, retryFailures);
+        SandeshUtils.writeField(s, "retried", "i64", inner_id++, retried);
+        SandeshUtils.writeField(s, "retryRecovered", "i64", inner_id++, retryRecovered);
+        SandeshUtils.writeField(s, "fullResyncs", "i64", inner_id++, fullResyncs);
+        SandeshUtils.writeField(s, "lastEventKey", "int", inner_id++, lastEventKey);
+        SandeshUtils.writeField(s, "lastEventChainId", "int", inner_id++, lastEventChainId);
+        SandeshUtils.writeField(s, "eventsReplayed", "i64", inner_id++, eventsReplayed);
+        s.append("</EventQueueStatsStruct>");
+        s.append("</EventQueueStats>");
+    }
+}
@@ -0,0 +1,49 @@
+/* This class will be generated based on struct HostReadInfo
+ * from vcenter.sandesh
+ */
+package net.juniper.contrail.sandesh;
+
+public class HostReadInfo implements SandeshObject
+{
+    private String hostName;
+    public String getHostName() { return hostName; }
+    public void setHostName(String hostName) { this.hostName = hostName; }
+
+    private String status;
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    private long durationMs;
+    public long getDurationMs() { return durationMs; }
+    public void setDurationMs(long durationMs) { this.durationMs = durationMs; }
+
+    private int attempts;
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    private int vms;
+    public int getVms() { return vms; }
+    public void setVms(int vms) { this.vms = vms; }
+
+    @Override
+    public void writeObject(StringBuilder s,  DetailLevel detail, int identifier)
+    {
+        s.append("<HostReadInfo type=\"struct\" identifier=\"")
+        .append(identifier)
+        .append("\">");
+        if (detail == DetailLevel.FULL) {
+            s.append("<HostReadInfoStruct>");
+        }
+        int inner_id = 1;
+        SandeshUtils.writeField(s, "hostName", "string", inner_id++, hostName);
+        SandeshUtils.writeField(s, "status", "string", inner_id++, status);
+        SandeshUtils.writeField(s, "durationMs", "i64", inner_id++, durationMs);
+        SandeshUtils.writeField(s, "attempts", "int", inner_id++, attempts);
+        SandeshUtils.writeField(s, "vms", "int", inner_id++, vms);
+
+        if (detail == DetailLevel.FULL) {
+            s.append("</HostReadInfoStruct>");
+        }
+        s.append("</HostReadInfo>");
+    }
+}
@@ -0,0 +1,15 @@
+package net.juniper.contrail.sandesh;
+
+import java.net.URI;
+
+public class HostReadReq {
+    URI uri;
+    
+    // required params parsed from URI
+    
+    // optional params
+
+    public HostReadReq(URI uri) {
+        this.uri = uri;
+    }
+}
@@ -0,0 +1,34 @@
+package net.juniper.contrail.sandesh;
+
+import java.util.Map;
+import net.juniper.contrail.vcenter.ParallelHostReader;
+import net.juniper.contrail.vcenter.ParallelHostReader.HostReadRecord;
+
+public class HostReadResp {
+
+    private SandeshObjectList<HostReadInfo> hosts;
+
+    public HostReadResp(HostReadReq req) {
+        hosts = new SandeshObjectList<HostReadInfo>(HostReadInfo.class,
+                new ComparatorHostReadInfo());
+
+        for (Map.Entry<String, HostReadRecord> entry:
+            ParallelHostReader.getHostReads().entrySet()) {
+
+            HostReadRecord rec = entry.getValue();
+            HostReadInfo hostInfo = new HostReadInfo();
+            hostInfo.setHostName(rec.hostName);
+            hostInfo.setStatus(rec.status);
+            hostInfo.setDurationMs(rec.durationMs);
+            hostInfo.setAttempts(rec.attempts);
+            hostInfo.setVms(rec.vms);
+            hosts.add(hostInfo);
+        }
+    }
+
+    public void writeObject(StringBuilder s) {
+        s.append("<HostReadResp type=\"sandesh\">");
+        hosts.writeObject(s, "HostReadInfo", DetailLevel.REGULAR, 1);
+        s.append("</HostReadResp>");
+    }
+}
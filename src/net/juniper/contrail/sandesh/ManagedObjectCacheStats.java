@@ -0,0 +1,66 @@
+/* This class will be generated based on struct ManagedObjectCacheStats 
+ * from vcenter.sandesh 
+ */
+
+package net.juniper.contrail.sandesh;
+
+import net.juniper.contrail.vcenter.ManagedObjectCache;
+
+public class ManagedObjectCacheStats {
+
+    private int size;
+    public int getSize() { return size; }
+    public void setSize(int size) { this.size = size; }
+
+    private int capacity;
+    public int getCapacity() { return capacity; }
+    public void setCapacity(int capacity) { this.capacity = capacity; }
+
+    private long hits;
+    public long getHits() { return hits; }
+    public void setHits(long hits) { this.hits = hits; }
+
+    private long misses;
+    public long getMisses() { return misses; }
+    public void setMisses(long misses) { this.misses = misses; }
+
+    private long evictions;
+    public long getEvictions() { return evictions; }
+    public void setEvictions(long evictions) { this.evictions = evictions; }
+
+    private long invalidations;
+    public long getInvalidations() { return invalidations; }
+    public void setInvalidations(long invalidations) { this.invalidations = invalidations; }
+
+    public void populate(ManagedObjectCache cache) {
+        if (cache == null) {
+            return;
+        }
+        setSize(cache.size());
+        setCapacity(cache.getCapacity());
+        setHits(cache.getHits());
+        setMisses(cache.getMisses());
+        setEvictions(cache.getEvictions());
+        setInvalidations(cache.getInvalidations());
+    }
+
+    public void writeObject(StringBuilder s) {
+        writeObject(s, 1);
+    }
+
+    public void writeObject(StringBuilder s, int identifier) {
+        s.append("<ManagedObjectCacheStats type=\"struct\" identifier=\"")
+         .append(identifier)
+         .append("\">");
+        s.append("<ManagedObjectCacheStatsStruct>");
+        int inner_id = 1;
+        SandeshUtils.writeField(s, "size", "int", inner_id++, size);
+        SandeshUtils.writeField(s, "capacity", "int", inner_id++, capacity);
+        SandeshUtils.writeField(s, "hits", "i64", inner_id++, hits);
+        SandeshUtils.writeField(s, "misses", "i64", inner_id++, misses);
+        SandeshUtils.writeField(s, "evictions", "i64", inner_id++, evictions);
+        SandeshUtils.writeField(s, "invalidations", "i64", inner_id++, invalidations);
+        s.append("</ManagedObjectCacheStatsStruct>");
+        s.append("</ManagedObjectCacheStats>");
+    }
+}
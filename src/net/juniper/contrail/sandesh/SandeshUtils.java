@@ -12,4 +12,14 @@ public class SandeshUtils {
 
         return s1.compareTo(s2);
     }
+
+    public static void writeField(StringBuilder s, String name, String type,
+            int identifier, Object value) {
+        s.append("<").append(name)
+         .append(" type=\"").append(type)
+         .append("\" identifier=\"").append(identifier)
+         .append("\">")
+         .append(value)
+         .append("</").append(name).append(">");
+    }
 }
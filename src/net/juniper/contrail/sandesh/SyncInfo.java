@@ -0,0 +1,88 @@
+/* This class will be generated based on struct SyncInfo 
+ * from vcenter.sandesh 
+ */
+
+package net.juniper.contrail.sandesh;
+
+import java.util.Date;
+import net.juniper.contrail.vcenter.SyncSummary;
+
+public class SyncInfo {
+
+    private long syncs;
+    public long getSyncs() { return syncs; }
+    public void setSyncs(long syncs) { this.syncs = syncs; }
+
+    private String lastSyncTime;
+    public String getLastSyncTime() { return lastSyncTime; }
+    public void setLastSyncTime(String lastSyncTime) { this.lastSyncTime = lastSyncTime; }
+
+    private long totalMs;
+    public long getTotalMs() { return totalMs; }
+    public void setTotalMs(long totalMs) { this.totalMs = totalMs; }
+
+    private int virtualNetworks;
+    public int getVirtualNetworks() { return virtualNetworks; }
+    public void setVirtualNetworks(int virtualNetworks) { this.virtualNetworks = virtualNetworks; }
+
+    private int virtualMachines;
+    public int getVirtualMachines() { return virtualMachines; }
+    public void setVirtualMachines(int virtualMachines) { this.virtualMachines = virtualMachines; }
+
+    private int failures;
+    public int getFailures() { return failures; }
+    public void setFailures(int failures) { this.failures = failures; }
+
+    private long generation;
+    public long getGeneration() { return generation; }
+    public void setGeneration(long generation) { this.generation = generation; }
+
+    private long snapshotGeneration;
+    public long getSnapshotGeneration() { return snapshotGeneration; }
+    public void setSnapshotGeneration(long snapshotGeneration) { this.snapshotGeneration = snapshotGeneration; }
+
+    // per stage duration, in SyncSummary.Stage order
+    private final String[] stages = { "vcenterVnRead", "vnSync", "vcenterVmRead",
+                                      "vncVmList", "vmSync" };
+    private final long[] durations = new long[stages.length];
+
+    public void populate(SyncSummary summary) {
+        if (summary == null) {
+            return;
+        }
+        setSyncs(summary.getNumber());
+        setLastSyncTime(new Date(summary.getStartTime()).toString());
+        setTotalMs(summary.getTotal());
+        setVirtualNetworks(summary.getVirtualNetworks());
+        setVirtualMachines(summary.getVirtualMachines());
+        setFailures(summary.getFailures());
+        for (SyncSummary.Stage stage: SyncSummary.Stage.values()) {
+            durations[stage.ordinal()] = summary.getDuration(stage);
+        }
+    }
+
+    public void writeObject(StringBuilder s) {
+        writeObject(s, 1);
+    }
+
+    public void writeObject(StringBuilder s, int identifier) {
+        s.append("<SyncInfo type=\"struct\" identifier=\"")
+         .append(identifier)
+         .append("\">");
+        s.append("<SyncInfoStruct>");
+        int inner_id = 1;
+        SandeshUtils.writeField(s, "syncs", "i64", inner_id++, syncs);
+        SandeshUtils.writeField(s, "lastSyncTime", "string", inner_id++, lastSyncTime);
+        SandeshUtils.writeField(s, "totalMs", "i64", inner_id++, totalMs);
+        SandeshUtils.writeField(s, "virtualNetworks", "int", inner_id++, virtualNetworks);
+        SandeshUtils.writeField(s, "virtualMachines", "int", inner_id++, virtualMachines);
+        SandeshUtils.writeField(s, "failures", "int", inner_id++, failures);
+        for (int i = 0; i < stages.length; i++) {
+            SandeshUtils.writeField(s, stages[i] + "Ms", "i64", inner_id++, durations[i]);
+        }
+        SandeshUtils.writeField(s, "generation", "i64", inner_id++, generation);
+        SandeshUtils.writeField(s, "snapshotGeneration", "i64", inner_id++, snapshotGeneration);
+        s.append("</SyncInfoStruct>");
+        s.append("</SyncInfo>");
+    }
+}
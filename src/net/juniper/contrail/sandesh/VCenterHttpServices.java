@@ -41,6 +41,7 @@ public class VCenterHttpServices {
         new VCenterPluginReqHttpHandler();
         new VRouterListReqHttpHandler();
         new VRouterDetailReqHttpHandler();
+        new HostReadReqHttpHandler();
         new TaskWatchDogHttpHandler();
     }
     
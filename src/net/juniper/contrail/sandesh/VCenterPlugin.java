@@ -83,6 +83,62 @@ public class VCenterPlugin {
         vCenterServerInfo.writeObject(s, identifier);
     }
     
+    private volatile EventQueueStats eventQueueStats;
+    
+    public EventQueueStats getEventQueueStats() {
+        return eventQueueStats;
+    }
+    
+    public void setEventQueueStats(EventQueueStats eventQueueStats) {
+        this.eventQueueStats = eventQueueStats;
+    }
+    
+    private void writeFieldEventQueueStats(StringBuilder s, int identifier) {
+        eventQueueStats.writeObject(s, identifier);
+    }
+    
+    private volatile ManagedObjectCacheStats moCacheStats;
+    
+    public ManagedObjectCacheStats getManagedObjectCacheStats() {
+        return moCacheStats;
+    }
+    
+    public void setManagedObjectCacheStats(ManagedObjectCacheStats moCacheStats) {
+        this.moCacheStats = moCacheStats;
+    }
+    
+    private void writeFieldManagedObjectCacheStats(StringBuilder s, int identifier) {
+        moCacheStats.writeObject(s, identifier);
+    }
+    
+    private volatile ApiWriteStats apiWriteStats;
+    
+    public ApiWriteStats getApiWriteStats() {
+        return apiWriteStats;
+    }
+    
+    public void setApiWriteStats(ApiWriteStats apiWriteStats) {
+        this.apiWriteStats = apiWriteStats;
+    }
+    
+    private void writeFieldApiWriteStats(StringBuilder s, int identifier) {
+        apiWriteStats.writeObject(s, identifier);
+    }
+    
+    private volatile SyncInfo syncInfo;
+    
+    public SyncInfo getSyncInfo() {
+        return syncInfo;
+    }
+    
+    public void setSyncInfo(SyncInfo syncInfo) {
+        this.syncInfo = syncInfo;
+    }
+    
+    private void writeFieldSyncInfo(StringBuilder s, int identifier) {
+        syncInfo.writeObject(s, identifier);
+    }
+    
     public void writeObject(StringBuilder s) {
         writeObject(s, 1);
     }
@@ -91,6 +147,10 @@ public class VCenterPlugin {
         vRouterStats = new VRouterStats();
         apiServerInfo = new ApiServerInfo();
         vCenterServerInfo = new VCenterServerInfo();
+        eventQueueStats = new EventQueueStats();
+        moCacheStats = new ManagedObjectCacheStats();
+        apiWriteStats = new ApiWriteStats();
+        syncInfo = new SyncInfo();
     }
     
     public void writeObject(StringBuilder s, int identifier)
@@ -106,6 +166,10 @@ public class VCenterPlugin {
         writeFieldVRouterStats(s, inner_identifier++);
         writeFieldApiServerInfo(s, inner_identifier++);
         writeFieldVCenterServerInfo(s, inner_identifier++);
+        writeFieldEventQueueStats(s, inner_identifier++);
+        writeFieldManagedObjectCacheStats(s, inner_identifier++);
+        writeFieldApiWriteStats(s, inner_identifier++);
+        writeFieldSyncInfo(s, inner_identifier++);
         s.append("</VCenterPluginStruct>");
         s.append("</VCenterPlugin>");
     }
@@ -1,9 +1,10 @@
 package net.juniper.contrail.sandesh;
 
 import java.util.Map;
-import net.juniper.contrail.contrail_vrouter_api.ContrailVRouterApi;
+import net.juniper.contrail.vcenter.MainDB;
 import net.juniper.contrail.vcenter.VCenterMonitor;
 import net.juniper.contrail.vcenter.VCenterNotify;
+import net.juniper.contrail.vcenter.VRouterConnection;
 import net.juniper.contrail.vcenter.VRouterNotifier;
 import net.juniper.contrail.vcenter.VncDB;
 
@@ -19,6 +20,13 @@ public class VCenterPluginResp {
             populateVRouterStats();
             populateApiServerInfo();
             populateVCenterServerInfo();
+            populateEventQueueStats();
+            populateManagedObjectCacheStats();
+            populateApiWriteStats();
+            vCenterPluginInfo.getSyncInfo().populate(MainDB.getLastSync());
+            vCenterPluginInfo.getSyncInfo().setGeneration(MainDB.getGeneration());
+            vCenterPluginInfo.getSyncInfo().setSnapshotGeneration(
+                    MainDB.getSnapshot().getGeneration());
             populatePluginState();
         }
     }
@@ -34,21 +42,18 @@ public class VCenterPluginResp {
         int up = 0;
         int down = 0;
 
-        Map<String, ContrailVRouterApi> apiMap = VRouterNotifier.getVrouterApiMap();
+        Map<String, VRouterConnection> connections = VRouterNotifier.getConnections();
 
-        if (apiMap == null) {
-            return;
-        }
-
-        for (Map.Entry<String, ContrailVRouterApi> entry: apiMap.entrySet()) {
-            Boolean active = (entry.getValue() != null);
-            if (active == Boolean.TRUE) {
+        // vRouters not checked yet or in maintenance are neither up nor down
+        for (VRouterConnection connection: connections.values()) {
+            VRouterConnection.State state = connection.getState();
+            if (state == VRouterConnection.State.UP) {
                 up++;
-            } else {
+            } else if (state == VRouterConnection.State.DOWN) {
                 down++;
             }
         }
-        vCenterPluginInfo.getVRouterStats().setTotal(apiMap.size());
+        vCenterPluginInfo.getVRouterStats().setTotal(connections.size());
         vCenterPluginInfo.getVRouterStats().setUp(up);
         vCenterPluginInfo.getVRouterStats().setDown(down);
     }
@@ -60,6 +65,10 @@ public class VCenterPluginResp {
             apiServerInfo.setIpAddr(vncDB.getApiServerAddress());
             apiServerInfo.setPort(vncDB.getApiServerPort());
             apiServerInfo.setConnected(vncDB.isServerAlive());
+            apiServerInfo.setCircuitBreaker(vncDB.getCircuitBreaker(),
+                    VCenterNotify.getEventRetryQueue());
+            apiServerInfo.setProbe(vncDB.getProbeLatency(),
+                    vncDB.getProbeFailures(), vncDB.getApiTimeout());
         }
     }
     
@@ -74,6 +83,37 @@ public class VCenterPluginResp {
         }
     }
 
+    private void populateEventQueueStats() {
+        vCenterPluginInfo.getEventQueueStats().populate(
+                VCenterNotify.getEventDispatcher());
+        vCenterPluginInfo.getEventQueueStats().populate(
+                VCenterNotify.getEventCoalescer());
+        vCenterPluginInfo.getEventQueueStats().populate(
+                VCenterNotify.getEventRetryQueue());
+        vCenterPluginInfo.getEventQueueStats().setLastEventKey(
+                VCenterNotify.getLastEventKey());
+        vCenterPluginInfo.getEventQueueStats().setLastEventChainId(
+                VCenterNotify.getLastEventChainId());
+        vCenterPluginInfo.getEventQueueStats().setEventsReplayed(
+                VCenterNotify.getEventsReplayed());
+    }
+
+    private void populateManagedObjectCacheStats() {
+        if (VCenterNotify.getVcenterDB() != null) {
+            vCenterPluginInfo.getManagedObjectCacheStats().populate(
+                    VCenterNotify.getVcenterDB().getManagedObjectCache());
+        }
+    }
+
+    private void populateApiWriteStats() {
+        if (VCenterNotify.getVncDB() != null) {
+            vCenterPluginInfo.getApiWriteStats().populate(
+                    VCenterNotify.getVncDB().getWriteBehind());
+            vCenterPluginInfo.getApiWriteStats().populate(
+                    VCenterNotify.getVncDB().getCascadeDelete());
+        }
+    }
+
     public void writeObject(StringBuilder s) {
         if (s == null) {
             // log error
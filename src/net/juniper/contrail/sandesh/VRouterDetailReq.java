@@ -3,7 +3,7 @@ package net.juniper.contrail.sandesh;
 import java.net.URI;
 import java.security.InvalidParameterException;
 import java.util.Map;
-import net.juniper.contrail.contrail_vrouter_api.ContrailVRouterApi;
+import net.juniper.contrail.vcenter.VRouterConnection;
 import net.juniper.contrail.vcenter.VCenterMonitor;
 import net.juniper.contrail.vcenter.VRouterNotifier;
 
@@ -20,7 +20,7 @@ public class VRouterDetailReq {
         int idx = req.indexOf("Snh_vRouterDetail?x=");
         this.ipAddr = req.substring(idx + "Snh_vRouterDetail?x=".length());
         
-        Map<String, ContrailVRouterApi> vRouters = VRouterNotifier.getVrouterApiMap();
+        Map<String, VRouterConnection> vRouters = VRouterNotifier.getConnections();
         
         if (!vRouters.containsKey(this.ipAddr)) {
             throw new InvalidParameterException(); 
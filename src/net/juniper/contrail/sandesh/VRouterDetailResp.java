@@ -2,11 +2,12 @@ package net.juniper.contrail.sandesh;
 
 import java.util.Map;
 import java.util.SortedMap;
-import net.juniper.contrail.contrail_vrouter_api.ContrailVRouterApi;
 import net.juniper.contrail.vcenter.MainDB;
+import net.juniper.contrail.vcenter.MainDBSnapshot;
 import net.juniper.contrail.vcenter.VCenterDB;
 import net.juniper.contrail.vcenter.VCenterMonitor;
 import net.juniper.contrail.vcenter.VCenterNotify;
+import net.juniper.contrail.vcenter.VRouterConnection;
 import net.juniper.contrail.vcenter.VRouterNotifier;
 import net.juniper.contrail.vcenter.VirtualMachineInfo;
 import net.juniper.contrail.vcenter.VirtualMachineInterfaceInfo;
@@ -19,14 +20,18 @@ public class VRouterDetailResp {
         vrouter = new VRouterInfo();
         
         //populate here the info
-        Map<String, ContrailVRouterApi> vRouters = VRouterNotifier.getVrouterApiMap();
+        Map<String, VRouterConnection> vRouters = VRouterNotifier.getConnections();
         
-        if (!vRouters.containsKey(req.ipAddr)) {
+        VRouterConnection connection = vRouters.get(req.ipAddr);
+        if (connection == null) {
             return;
         }
         vrouter.setIpAddr(req.ipAddr);
-        ContrailVRouterApi api = vRouters.get(req.ipAddr);
-        vrouter.setState(api!= null);
+        vrouter.setConnection(connection);
+        vrouter.setPortQueue(VRouterNotifier.getPortDispatcher()
+                .getPortQueue(req.ipAddr));
+        vrouter.setPortTable(VRouterNotifier.getPortTable(req.ipAddr));
+        vrouter.setHealth(VRouterNotifier.getHealth(req.ipAddr));
         
         Map<String, String> host2VrouterMap = VCenterNotify.getVcenterDB().getEsxiToVRouterIpMap();
         
@@ -36,21 +41,17 @@ public class VRouterDetailResp {
             }
         }
         
-        populateVNetworks(vrouter.getVNetworks());
+        populateVNetworks(vrouter.getVNetworks(), MainDB.getSnapshot());
     }
     
-    private void populateVNetworks(SandeshObjectList<VirtualNetworkSandesh> vNetworks) {
-        SortedMap<String, VirtualNetworkInfo> entries = 
-                MainDB.getVNs();
-        
-        if (entries == null) {
-            return;
-        }
+    private void populateVNetworks(SandeshObjectList<VirtualNetworkSandesh> vNetworks,
+            MainDBSnapshot snapshot) {
+        SortedMap<String, VirtualNetworkInfo> entries = snapshot.getVNs();
         
         for (Map.Entry<String, VirtualNetworkInfo> entry: entries.entrySet()) {
             VirtualNetworkInfo vmwareVN = entry.getValue(); 
             VirtualNetworkSandesh vn = new VirtualNetworkSandesh();
-            populateVMIs(vn, vmwareVN);
+            populateVMIs(vn, snapshot.getVmiInfo(vmwareVN));
             if (vn.getVMachines().size() > 0) {
                 vn.setName(vmwareVN.getName());
                 vNetworks.add(vn);
@@ -58,18 +59,13 @@ public class VRouterDetailResp {
         }
     }
     
-    private void populateVMIs(VirtualNetworkSandesh vn, VirtualNetworkInfo vmwareVN) {
+    private void populateVMIs(VirtualNetworkSandesh vn,
+            SortedMap<String, VirtualMachineInterfaceInfo> map) {
         SandeshObjectList<VirtualMachineSandesh> vMachines = vn.getVMachines();
         
         if (vMachines == null) {
             return;
         }
-        SortedMap<String, VirtualMachineInterfaceInfo> map 
-                    = vmwareVN.getVmiInfo();
-        
-        if (map == null) {
-            return;
-        }
         for (Map.Entry<String, VirtualMachineInterfaceInfo> entry : map.entrySet()) {
             VirtualMachineInterfaceInfo vmiInfo = entry.getValue();
             VirtualMachineInfo vmInfo = vmiInfo.getVmInfo();
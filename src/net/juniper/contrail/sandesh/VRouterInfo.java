@@ -4,6 +4,12 @@
 
 package net.juniper.contrail.sandesh;
 
+import net.juniper.contrail.vcenter.LatencyStats;
+import net.juniper.contrail.vcenter.VRouterConnection;
+import net.juniper.contrail.vcenter.VRouterHealth;
+import net.juniper.contrail.vcenter.VRouterPortDispatcher;
+import net.juniper.contrail.vcenter.VRouterPortTable;
+
 public class VRouterInfo implements SandeshObject 
 {    
     private String ipAddr;
@@ -47,6 +53,13 @@ public class VRouterInfo implements SandeshObject
          .append("</state>");
     }
   
+    private String connectionState;
+
+    public void setConnection(VRouterConnection connection) {
+        state = connection.isUp();
+        connectionState = connection.getState().toString();
+    }
+
     private String esxiHost;   
     public String getEsxiHost() {
         return esxiHost;
@@ -63,6 +76,58 @@ public class VRouterInfo implements SandeshObject
          .append("</EsxiHost>");
     }
     
+    private int portQueueDepth;
+    private long addPortCount;
+    private long addPortLatencyAvg;
+    private long addPortLatencyMax;
+    private long portFailures;
+
+    public void setPortQueue(VRouterPortDispatcher.PortQueue queue) {
+        if (queue == null) {
+            return;
+        }
+        portQueueDepth = queue.getDepth();
+        LatencyStats addPortLatency = queue.getAddPortLatency();
+        addPortCount = addPortLatency.getCount();
+        addPortLatencyAvg = addPortLatency.getAverage();
+        addPortLatencyMax = addPortLatency.getMax();
+        portFailures = queue.getFailures();
+    }
+
+    private int desiredPorts;
+    private int ackedPorts;
+    private long replayedPorts;
+
+    public void setPortTable(VRouterPortTable table) {
+        if (table == null) {
+            return;
+        }
+        desiredPorts = table.getDesiredCount();
+        ackedPorts = table.getAckedCount();
+        replayedPorts = table.getReplayed();
+    }
+
+    private int consecutiveFailures;
+    private long lastSuccess;
+    private long rttLast;
+    private long rttAvg;
+    private long keepAliveInterval;
+
+    public void setHealth(VRouterHealth health) {
+        if (health == null) {
+            return;
+        }
+        consecutiveFailures = health.getConsecutiveFailures();
+        lastSuccess = health.getLastSuccess();
+        rttLast = health.getLastRtt();
+        rttAvg = health.getRtt().getAverage();
+        keepAliveInterval = health.getInterval();
+    }
+
+    public int getPortQueueDepth() {
+        return portQueueDepth;
+    }
+
     private SandeshObjectList<VirtualNetworkSandesh> vNetworks;
     
     public SandeshObjectList<VirtualNetworkSandesh> getVNetworks() {
@@ -90,7 +155,21 @@ public class VRouterInfo implements SandeshObject
         int inner_id = 1;
         writeFieldIpAddr(s, inner_id++, detail);
         writeFieldState(s, inner_id++);
+        SandeshUtils.writeField(s, "connectionState", "string", inner_id++, connectionState);
         writeFieldEsxiHost(s, inner_id++);
+        SandeshUtils.writeField(s, "portQueueDepth", "int", inner_id++, portQueueDepth);
+        SandeshUtils.writeField(s, "addPortCount", "i64", inner_id++, addPortCount);
+        SandeshUtils.writeField(s, "addPortLatencyAvgMs", "i64", inner_id++, addPortLatencyAvg);
+        SandeshUtils.writeField(s, "addPortLatencyMaxMs", "i64", inner_id++, addPortLatencyMax);
+        SandeshUtils.writeField(s, "portFailures", "i64", inner_id++, portFailures);
+        SandeshUtils.writeField(s, "desiredPorts", "int", inner_id++, desiredPorts);
+        SandeshUtils.writeField(s, "ackedPorts", "int", inner_id++, ackedPorts);
+        SandeshUtils.writeField(s, "replayedPorts", "i64", inner_id++, replayedPorts);
+        SandeshUtils.writeField(s, "consecutiveFailures", "int", inner_id++, consecutiveFailures);
+        SandeshUtils.writeField(s, "lastSuccess", "i64", inner_id++, lastSuccess);
+        SandeshUtils.writeField(s, "rttMs", "i64", inner_id++, rttLast);
+        SandeshUtils.writeField(s, "rttAvgMs", "i64", inner_id++, rttAvg);
+        SandeshUtils.writeField(s, "keepAliveIntervalMs", "i64", inner_id++, keepAliveInterval);
         if (detail == DetailLevel.FULL) {
             vNetworks.writeObject(s, "VirtualNetworks", 
                     DetailLevel.REGULAR, inner_id++);
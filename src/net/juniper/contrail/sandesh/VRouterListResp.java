@@ -1,10 +1,10 @@
 package net.juniper.contrail.sandesh;
 
 import java.util.Map;
-import net.juniper.contrail.contrail_vrouter_api.ContrailVRouterApi;
 import net.juniper.contrail.vcenter.VCenterDB;
 import net.juniper.contrail.vcenter.VCenterMonitor;
 import net.juniper.contrail.vcenter.VCenterNotify;
+import net.juniper.contrail.vcenter.VRouterConnection;
 import net.juniper.contrail.vcenter.VRouterNotifier;
 
 public class VRouterListResp {    
@@ -16,15 +16,19 @@ public class VRouterListResp {
                                                     new ComparatorVRouterInfo());
                 
         Map<String, String> host2VrouterMap = VCenterNotify.getVcenterDB().getEsxiToVRouterIpMap();
-        Map<String, ContrailVRouterApi> vRouters = VRouterNotifier.getVrouterApiMap();
+        Map<String, VRouterConnection> vRouters = VRouterNotifier.getConnections();
 
-        for (Map.Entry<String, ContrailVRouterApi> entry: vRouters.entrySet()) {
-            boolean state_up = (entry.getValue()!= null);
+        for (Map.Entry<String, VRouterConnection> entry: vRouters.entrySet()) {
+            boolean state_up = entry.getValue().isUp();
             if (req.total || (req.up && state_up) || (req.down && !state_up)) {
                 VRouterInfo vrInfo = new VRouterInfo();
                 String vRouterIPAddr = entry.getKey();
                 vrInfo.setIpAddr(vRouterIPAddr);
-                vrInfo.setState(entry.getValue()!= null);
+                vrInfo.setConnection(entry.getValue());
+                vrInfo.setPortQueue(VRouterNotifier.getPortDispatcher()
+                        .getPortQueue(vRouterIPAddr));
+                vrInfo.setPortTable(VRouterNotifier.getPortTable(vRouterIPAddr));
+                vrInfo.setHealth(VRouterNotifier.getHealth(vRouterIPAddr));
                 for (Map.Entry<String, String> map_entry : host2VrouterMap.entrySet()) {
                     if (map_entry.getValue().equals(vRouterIPAddr)) {
                         vrInfo.setEsxiHost(map_entry.getKey());
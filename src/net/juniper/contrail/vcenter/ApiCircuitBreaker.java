@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Circuit breaker in front of the API server.
+ *
+ * After failureThreshold consecutive connection failures the breaker
+ * opens: callers stop sending requests and park their work instead.
+ * Once the open period is over, one waiting caller runs the probe
+ * (half-open). Success closes the breaker and releases everybody, failure
+ * opens it again for twice as long, up to EventRetryQueue.BACKOFF_MAX_MS.
+ */
+public class ApiCircuitBreaker {
+    private static final Logger s_logger =
+            Logger.getLogger(ApiCircuitBreaker.class);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * A cheap request telling whether the API server answers again.
+     */
+    public interface Probe {
+        boolean probe();
+    }
+
+    private final int failureThreshold;
+    private final Probe probe;
+    private State state = State.CLOSED;
+    private int failures;
+    private int opens;
+    private long retryAt;
+    private long openCount;
+    private long probeCount;
+
+    public ApiCircuitBreaker(int failureThreshold, Probe probe) {
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.probe = probe;
+    }
+
+    public synchronized boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    /**
+     * A request went through. While open, only the probe can close.
+     */
+    public synchronized void recordSuccess() {
+        if (state == State.CLOSED) {
+            failures = 0;
+        }
+    }
+
+    /**
+     * A request failed to reach the API server.
+     */
+    public synchronized void recordFailure() {
+        if (state != State.CLOSED) {
+            return;
+        }
+        if (++failures >= failureThreshold) {
+            open();
+        }
+    }
+
+    private void open() {
+        opens++;
+        openCount++;
+        long backoff = EventRetryQueue.getBackoff(opens);
+        retryAt = System.currentTimeMillis() + backoff;
+        if (state == State.CLOSED) {
+            s_logger.error("API server unreachable, holding requests");
+        }
+        state = State.OPEN;
+        s_logger.info("API server probe in " + backoff + " ms");
+    }
+
+    /**
+     * Waits until the breaker is closed, running the half-open probe
+     * when it is due. Returns false if still open after timeoutMillis.
+     */
+    public boolean awaitClosed(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (state == State.CLOSED) {
+                    return true;
+                }
+                if (now >= deadline) {
+                    return false;
+                }
+                if (state == State.OPEN && now >= retryAt) {
+                    state = State.HALF_OPEN;
+                    probeCount++;
+                } else {
+                    long until = (state == State.OPEN) ? Math.min(retryAt, deadline) : deadline;
+                    wait(Math.max(until - now, 1));
+                    continue;
+                }
+            }
+            // half-open, this thread probes, the others wait
+            boolean up = false;
+            try {
+                up = probe.probe();
+            } finally {
+                synchronized (this) {
+                    if (up) {
+                        s_logger.info("API server is back, releasing held requests");
+                        state = State.CLOSED;
+                        failures = 0;
+                        opens = 0;
+                    } else {
+                        open();
+                    }
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized long getOpenCount() {
+        return openCount;
+    }
+
+    public synchronized long getProbeCount() {
+        return probeCount;
+    }
+}
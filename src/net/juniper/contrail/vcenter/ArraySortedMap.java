@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A sorted map held in a single array, for maps of one or two entries
+ * such as the interfaces of a VM, where a ConcurrentSkipListMap costs
+ * more than its content.
+ *
+ * Writes copy the array. Reads and iterations use the array they
+ * started with, so like a ConcurrentSkipListMap they never fail on a
+ * concurrent change, and iterators do not see it. Range views are
+ * read-only copies. Null keys and values are rejected.
+ */
+class ArraySortedMap<K extends Comparable<? super K>, V>
+        extends AbstractMap<K, V> implements SortedMap<K, V> {
+    private static final Object[] EMPTY = new Object[0];
+
+    // key 0, value 0, key 1, value 1, ... in key order
+    private volatile Object[] entries = EMPTY;
+
+    ArraySortedMap() {
+    }
+
+    ArraySortedMap(Map<? extends K, ? extends V> map) {
+        putAll(map);
+    }
+
+    /*
+     * Entry index of the key, or -(insertion index) - 1.
+     */
+    @SuppressWarnings("unchecked")
+    private static int indexOf(Object[] entries, Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        Comparable<Object> k = (Comparable<Object>) key;
+        int low = 0;
+        int high = entries.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = k.compareTo(entries[2 * mid]);
+            if (cmp > 0) {
+                low = mid + 1;
+            } else if (cmp < 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> K keyAt(Object[] entries, int i) {
+        return (K) entries[2 * i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V valueAt(Object[] entries, int i) {
+        return (V) entries[2 * i + 1];
+    }
+
+    @Override
+    public int size() {
+        return entries.length / 2;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return entries.length == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(entries, key) >= 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        Object[] current = entries;
+        int i = indexOf(current, key);
+        return i >= 0 ? ArraySortedMap.<V>valueAt(current, i) : null;
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        Object[] current = entries;
+        int i = indexOf(current, key);
+        if (i >= 0) {
+            V old = valueAt(current, i);
+            Object[] copy = current.clone();
+            copy[2 * i + 1] = value;
+            entries = copy;
+            return old;
+        }
+        i = -(i + 1);
+        Object[] copy = new Object[current.length + 2];
+        System.arraycopy(current, 0, copy, 0, 2 * i);
+        copy[2 * i] = key;
+        copy[2 * i + 1] = value;
+        System.arraycopy(current, 2 * i, copy, 2 * i + 2, current.length - 2 * i);
+        entries = copy;
+        return null;
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+        Object[] current = entries;
+        int i = indexOf(current, key);
+        if (i < 0) {
+            return null;
+        }
+        V old = valueAt(current, i);
+        if (current.length == 2) {
+            entries = EMPTY;
+            return old;
+        }
+        Object[] copy = new Object[current.length - 2];
+        System.arraycopy(current, 0, copy, 0, 2 * i);
+        System.arraycopy(current, 2 * i + 2, copy, 2 * i, current.length - 2 * i - 2);
+        entries = copy;
+        return old;
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries = EMPTY;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                final Object[] snapshot = entries;
+                return new Iterator<Entry<K, V>>() {
+                    private int next;
+                    private K last;
+
+                    @Override
+                    public boolean hasNext() {
+                        return 2 * next < snapshot.length;
+                    }
+
+                    @Override
+                    public Entry<K, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        last = keyAt(snapshot, next);
+                        V value = valueAt(snapshot, next++);
+                        return new AbstractMap.SimpleImmutableEntry<K, V>(last, value);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == null) {
+                            throw new IllegalStateException();
+                        }
+                        ArraySortedMap.this.remove(last);
+                        last = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ArraySortedMap.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return null;
+    }
+
+    @Override
+    public K firstKey() {
+        Object[] current = entries;
+        if (current.length == 0) {
+            throw new NoSuchElementException();
+        }
+        return keyAt(current, 0);
+    }
+
+    @Override
+    public K lastKey() {
+        Object[] current = entries;
+        if (current.length == 0) {
+            throw new NoSuchElementException();
+        }
+        return keyAt(current, current.length / 2 - 1);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return Collections.unmodifiableSortedMap(
+                new TreeMap<K, V>(this).subMap(fromKey, toKey));
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return Collections.unmodifiableSortedMap(
+                new TreeMap<K, V>(this).headMap(toKey));
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return Collections.unmodifiableSortedMap(
+                new TreeMap<K, V>(this).tailMap(fromKey));
+    }
+}
@@ -0,0 +1,289 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+/**
+ * Retries the handling of the objects whose update failed, with an
+ * exponential backoff per object, instead of re-reading the whole
+ * vCenter and VNC inventory.
+ *
+ * Only the last failed work of each kind is kept for an object. It is
+ * dropped as soon as newer work of the same kind for the object
+ * completes, since the handlers read the current state from vCenter.
+ * Work of another kind does not cover it: a guest change succeeds
+ * without doing anything when the VM it is for failed to be created.
+ * A full sync is requested when an object
+ * keeps failing past the retry limit or too many objects are failing at once.
+ *
+ * Work that failed because the API server is unreachable is held instead,
+ * without using up its retries, and released once the circuit breaker
+ * closes again. Held work is kept per object and kind too, and released
+ * in the order it was first held.
+ */
+public class EventRetryQueue implements Runnable {
+    private static final Logger s_logger =
+            Logger.getLogger(EventRetryQueue.class);
+
+    static final long BACKOFF_MIN_MS = 1000;
+    static final long BACKOFF_MAX_MS = 60000;
+
+    /**
+     * What the work does for its object, retried separately.
+     */
+    public enum Kind {
+        EVENT,
+        GUEST,
+        IP_POOL
+    }
+
+    private final VCenterEventDispatcher dispatcher;
+    private final int maxRetries;
+    private final int threshold;
+    // by object and kind
+    private final Map<String, Retry> retries = new ConcurrentHashMap<String, Retry>();
+    // by object and kind, in the order they were first held
+    private final Map<String, Retry> held = new LinkedHashMap<String, Retry>();
+    private volatile ApiCircuitBreaker breaker;
+    private volatile int holdLimit = Integer.MAX_VALUE;
+    private final Object lock = new Object();
+    private volatile boolean running = true;
+    private final Thread thread;
+
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong fullResyncs = new AtomicLong();
+    private final AtomicLong heldCount = new AtomicLong();
+
+    private static class Retry {
+        final String key;
+        final Runnable work;
+        final int attempts;
+        final long nextAttempt;
+
+        Retry(String key, Runnable work, int attempts, long nextAttempt) {
+            this.key = key;
+            this.work = work;
+            this.attempts = attempts;
+            this.nextAttempt = nextAttempt;
+        }
+    }
+
+    public EventRetryQueue(VCenterEventDispatcher dispatcher, int maxRetries,
+            int threshold) {
+        this.dispatcher = dispatcher;
+        this.maxRetries = maxRetries;
+        this.threshold = threshold;
+        thread = new Thread(this, "vcenter-event-retry");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Nothing is retried while the breaker is open, and at most
+     * holdLimit objects wait for it to close.
+     */
+    public void setCircuitBreaker(ApiCircuitBreaker breaker, int holdLimit) {
+        this.breaker = breaker;
+        this.holdLimit = holdLimit;
+    }
+
+    static long getBackoff(int attempts) {
+        long backoff = BACKOFF_MIN_MS;
+        for (int i = 1; i < attempts && backoff < BACKOFF_MAX_MS; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, BACKOFF_MAX_MS);
+    }
+
+    private static String retryKey(String key, Kind kind) {
+        return kind + ":" + key;
+    }
+
+    /**
+     * Records the failure of work done for an object.
+     * Returns false when the failure cannot be retried on its own and
+     * a full sync is needed instead.
+     */
+    public boolean failed(String key, Kind kind, Runnable work) {
+        failures.incrementAndGet();
+        if (key == null || maxRetries <= 0) {
+            return fullResync("failed update has no object to retry");
+        }
+        String retryKey = retryKey(key, kind);
+        synchronized (lock) {
+            Retry previous = retries.get(retryKey);
+            int attempts = (previous == null) ? 1 : previous.attempts + 1;
+            if (attempts > maxRetries) {
+                return fullResync("update of " + retryKey + " failed "
+                        + attempts + " times");
+            }
+            if (previous == null && retries.size() >= threshold) {
+                return fullResync(threshold + " objects are failing");
+            }
+            long backoff = getBackoff(attempts);
+            retries.put(retryKey, new Retry(key, work, attempts,
+                    System.currentTimeMillis() + backoff));
+            s_logger.warn("Update of " + retryKey + " failed, retry " + attempts
+                    + " of " + maxRetries + " in " + backoff + " ms");
+            lock.notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Holds work that could not reach the API server until it answers
+     * again. Returns false when too much is held and a full sync is
+     * needed instead.
+     */
+    public boolean held(String key, Kind kind, Runnable work) {
+        if (key == null) {
+            return fullResync("held update has no object to retry");
+        }
+        String retryKey = retryKey(key, kind);
+        synchronized (lock) {
+            // the newest work of a kind covers the older one, in its place
+            if (!held.containsKey(retryKey) && held.size() >= holdLimit) {
+                return fullResync(holdLimit + " updates wait for the API server");
+            }
+            held.put(retryKey, new Retry(key, work, 0, 0));
+            heldCount.incrementAndGet();
+            lock.notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Newer work of this kind for the object went through, nothing of
+     * that kind left to retry.
+     */
+    public void succeeded(String key, Kind kind) {
+        if (key == null || retries.isEmpty()) {
+            return;
+        }
+        String retryKey = retryKey(key, kind);
+        synchronized (lock) {
+            if (retries.remove(retryKey) != null) {
+                recovered.incrementAndGet();
+                s_logger.info("Update of " + retryKey + " recovered");
+            }
+        }
+    }
+
+    private boolean fullResync(String reason) {
+        s_logger.error(reason + ", full sync needed");
+        fullResyncs.incrementAndGet();
+        clear();
+        return false;
+    }
+
+    /**
+     * Called when a full sync starts, it covers every pending retry.
+     */
+    public void clear() {
+        synchronized (lock) {
+            retries.clear();
+            held.clear();
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            List<Retry> due = new ArrayList<Retry>();
+            try {
+                ApiCircuitBreaker breaker = this.breaker;
+                if (breaker != null && !breaker.isClosed()
+                        && !breaker.awaitClosed(BACKOFF_MAX_MS)) {
+                    // retries would only fail again
+                    continue;
+                }
+                synchronized (lock) {
+                    long now = System.currentTimeMillis();
+                    due.addAll(held.values());
+                    held.clear();
+                    long next = now + BACKOFF_MAX_MS;
+                    Iterator<Map.Entry<String, Retry>> it =
+                            retries.entrySet().iterator();
+                    while (it.hasNext()) {
+                        Map.Entry<String, Retry> entry = it.next();
+                        Retry retry = entry.getValue();
+                        if (retry.nextAttempt <= now) {
+                            due.add(retry);
+                            markDispatched(entry.getKey(), retry);
+                        } else if (retry.nextAttempt < next) {
+                            next = retry.nextAttempt;
+                        }
+                    }
+                    if (due.isEmpty()) {
+                        lock.wait(next - now);
+                        continue;
+                    }
+                }
+                // the entry stays until the work succeeds or fails again,
+                // so the attempt count keeps growing across failures
+                for (Retry retry: due) {
+                    retried.incrementAndGet();
+                    dispatcher.dispatch(retry.key, retry.work);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    /*
+     * Called with the lock held: not due again until this attempt
+     * reports back.
+     */
+    private void markDispatched(String retryKey, Retry retry) {
+        retries.put(retryKey, new Retry(retry.key, retry.work, retry.attempts,
+                Long.MAX_VALUE));
+    }
+
+    public int getPending() {
+        return retries.size();
+    }
+
+    public int getHeld() {
+        synchronized (lock) {
+            return held.size();
+        }
+    }
+
+    public long getHeldCount() {
+        return heldCount.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getRetried() {
+        return retried.get();
+    }
+
+    public long getRecovered() {
+        return recovered.get();
+    }
+
+    public long getFullResyncs() {
+        return fullResyncs.get();
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.Arrays;
+
+/**
+ * Running count / average / max of a latency measured in milliseconds.
+ * Cheap enough to be updated on every event, read by the introspect pages.
+ *
+ * Optionally keeps the last samples, for percentiles that follow the
+ * current latency rather than the whole history.
+ */
+public class LatencyStats {
+    private long count;
+    private long total;
+    private long max;
+    private long last;
+    private final long[] window;
+    private int windowSize;
+    private int windowNext;
+
+    public LatencyStats() {
+        this(0);
+    }
+
+    public LatencyStats(int windowSize) {
+        window = new long[windowSize];
+    }
+
+    public synchronized void record(long millis) {
+        count++;
+        total += millis;
+        last = millis;
+        if (millis > max) {
+            max = millis;
+        }
+        if (window.length > 0) {
+            window[windowNext] = millis;
+            windowNext = (windowNext + 1) % window.length;
+            if (windowSize < window.length) {
+                windowSize++;
+            }
+        }
+    }
+
+    /**
+     * Returns the given percentile of the recent samples, 0 when there
+     * are none or no window was asked for.
+     */
+    public long getPercentile(int percent) {
+        long[] samples;
+        synchronized (this) {
+            if (windowSize == 0) {
+                return 0;
+            }
+            samples = Arrays.copyOf(window, windowSize);
+        }
+        Arrays.sort(samples);
+        int index = (int) Math.ceil(percent * samples.length / 100.0) - 1;
+        return samples[Math.max(0, Math.min(index, samples.length - 1))];
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getAverage() {
+        if (count == 0) {
+            return 0;
+        }
+        return total / count;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized long getLast() {
+        return last;
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        total = 0;
+        max = 0;
+        last = 0;
+        windowSize = 0;
+        windowNext = 0;
+    }
+
+    public synchronized String toString() {
+        return "count " + count + ", avg " + getAverage() + " ms, max "
+                + max + " ms";
+    }
+}
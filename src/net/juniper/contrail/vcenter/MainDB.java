@@ -6,12 +6,28 @@
 package net.juniper.contrail.vcenter;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.log4j.Logger;
+import com.google.common.base.Throwables;
+import com.vmware.vim25.mo.ManagedObject;
+import net.juniper.contrail.api.ApiObjectBase;
 import net.juniper.contrail.api.types.VirtualMachine;
 import net.juniper.contrail.api.types.VirtualNetwork;
 
@@ -20,8 +36,27 @@ public class MainDB {
             new ConcurrentSkipListMap<String, VirtualNetworkInfo>();
     private static volatile SortedMap<String, VirtualMachineInfo> vmwareVMs =
             new ConcurrentSkipListMap<String, VirtualMachineInfo>();
+
+    // secondary indexes, name -> uuid and vmware MOR value -> uuid
+    private static volatile ConcurrentMap<String, String> vnNameIndex =
+            new ConcurrentHashMap<String, String>();
+    private static volatile ConcurrentMap<String, String> vnMorIndex =
+            new ConcurrentHashMap<String, String>();
+    private static volatile ConcurrentMap<String, String> vmNameIndex =
+            new ConcurrentHashMap<String, String>();
+    private static volatile ConcurrentMap<String, String> vmMorIndex =
+            new ConcurrentHashMap<String, String>();
     
     private static volatile VncDB vncDB;
+    private static final AtomicLong syncCount = new AtomicLong();
+    private static volatile SyncSummary lastSync;
+
+    // readers get immutable snapshots, rebuilt on the first read after a
+    // change. During a full sync they keep the last complete one.
+    private static final AtomicLong generation = new AtomicLong();
+    private static final Object snapshotLock = new Object();
+    private static volatile MainDBSnapshot snapshot = MainDBSnapshot.empty();
+    private static volatile boolean syncing;
     private static volatile VCenterDB vcenterDB;
     private static volatile Mode mode;
     private final static Logger s_logger =
@@ -35,22 +70,196 @@ public class MainDB {
         return vmwareVMs;
     }
 
-    public static VirtualNetworkInfo getVnByName(String name) {
-        for (VirtualNetworkInfo vnInfo: vmwareVNs.values()) {
-            if (vnInfo.getName().equals(name)) {
-                return vnInfo;
+    /**
+     * Networks and VMs as of the last change, for readers that iterate
+     * over them. Not updated while a full sync runs.
+     */
+    public static MainDBSnapshot getSnapshot() {
+        MainDBSnapshot current = snapshot;
+        if (syncing || current.getGeneration() == generation.get()) {
+            return current;
+        }
+        synchronized (snapshotLock) {
+            if (syncing || snapshot.getGeneration() == generation.get()) {
+                return snapshot;
             }
+            return publish();
         }
-        return null;
+    }
+
+    /*
+     * Called with snapshotLock held. The generation is read before the
+     * copy, a change racing it makes the next reader rebuild.
+     */
+    private static MainDBSnapshot publish() {
+        snapshot = new MainDBSnapshot(generation.get(),
+                vmwareVNs, vmwareVMs, snapshot);
+        return snapshot;
+    }
+
+    public static long getGeneration() {
+        return generation.get();
+    }
+
+    static void changed() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Stage durations of the running or last full sync, null before it.
+     */
+    public static SyncSummary getLastSync() {
+        return lastSync;
+    }
+
+    public static VirtualNetworkInfo getVnByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        String uuid = vnNameIndex.get(name);
+        if (uuid == null) {
+            return null;
+        }
+        VirtualNetworkInfo vnInfo = vmwareVNs.get(uuid);
+        if (vnInfo == null || !name.equals(vnInfo.getName())) {
+            // stale entry left behind by a rename or a delete
+            vnNameIndex.remove(name, uuid);
+            return null;
+        }
+        return vnInfo;
+    }
+
+    public static VirtualNetworkInfo getVnByMor(String morValue) {
+        if (morValue == null) {
+            return null;
+        }
+        String uuid = vnMorIndex.get(morValue);
+        if (uuid == null) {
+            return null;
+        }
+        VirtualNetworkInfo vnInfo = vmwareVNs.get(uuid);
+        if (vnInfo == null || !morValue.equals(morOf(vnInfo.dpg))) {
+            vnMorIndex.remove(morValue, uuid);
+            return null;
+        }
+        return vnInfo;
     }
 
     public static VirtualMachineInfo getVmByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        String uuid = vmNameIndex.get(name);
+        if (uuid == null) {
+            return null;
+        }
+        VirtualMachineInfo vmInfo = vmwareVMs.get(uuid);
+        if (vmInfo == null || !name.equals(vmInfo.getName())) {
+            vmNameIndex.remove(name, uuid);
+            return null;
+        }
+        return vmInfo;
+    }
+
+    public static VirtualMachineInfo getVmByMor(String morValue) {
+        if (morValue == null) {
+            return null;
+        }
+        String uuid = vmMorIndex.get(morValue);
+        if (uuid == null) {
+            return null;
+        }
+        VirtualMachineInfo vmInfo = vmwareVMs.get(uuid);
+        if (vmInfo == null || !morValue.equals(vmInfo.getVmMor())) {
+            vmMorIndex.remove(morValue, uuid);
+            return null;
+        }
+        return vmInfo;
+    }
+
+    private static String morOf(ManagedObject mo) {
+        if (mo == null || mo.getMOR() == null) {
+            return null;
+        }
+        return mo.getMOR().getVal();
+    }
+
+    private static void index(VirtualNetworkInfo vnInfo,
+            ConcurrentMap<String, String> nameIndex,
+            ConcurrentMap<String, String> morIndex) {
+        String uuid = vnInfo.getUuid();
+        if (uuid == null) {
+            return;
+        }
+        if (vnInfo.getName() != null) {
+            nameIndex.put(vnInfo.getName(), uuid);
+        }
+        String mor = morOf(vnInfo.dpg);
+        if (mor != null) {
+            morIndex.put(mor, uuid);
+        }
+    }
+
+    private static void unindex(VirtualNetworkInfo vnInfo) {
+        String uuid = vnInfo.getUuid();
+        if (vnInfo.getName() != null) {
+            vnNameIndex.remove(vnInfo.getName(), uuid);
+        }
+        String mor = morOf(vnInfo.dpg);
+        if (mor != null) {
+            vnMorIndex.remove(mor, uuid);
+        }
+    }
+
+    private static void index(VirtualMachineInfo vmInfo,
+            ConcurrentMap<String, String> nameIndex,
+            ConcurrentMap<String, String> morIndex) {
+        String uuid = vmInfo.getUuid();
+        if (uuid == null) {
+            return;
+        }
+        if (vmInfo.getName() != null) {
+            nameIndex.put(vmInfo.getName(), uuid);
+        }
+        String mor = vmInfo.getVmMor();
+        if (mor != null) {
+            morIndex.put(mor, uuid);
+        }
+    }
+
+    private static void unindex(VirtualMachineInfo vmInfo) {
+        String uuid = vmInfo.getUuid();
+        if (vmInfo.getName() != null) {
+            vmNameIndex.remove(vmInfo.getName(), uuid);
+        }
+        String mor = vmInfo.getVmMor();
+        if (mor != null) {
+            vmMorIndex.remove(mor, uuid);
+        }
+    }
+
+    private static void reindexVNs() {
+        ConcurrentMap<String, String> nameIndex =
+                new ConcurrentHashMap<String, String>();
+        ConcurrentMap<String, String> morIndex =
+                new ConcurrentHashMap<String, String>();
+        for (VirtualNetworkInfo vnInfo: vmwareVNs.values()) {
+            index(vnInfo, nameIndex, morIndex);
+        }
+        vnNameIndex = nameIndex;
+        vnMorIndex = morIndex;
+    }
+
+    private static void reindexVMs() {
+        ConcurrentMap<String, String> nameIndex =
+                new ConcurrentHashMap<String, String>();
+        ConcurrentMap<String, String> morIndex =
+                new ConcurrentHashMap<String, String>();
         for (VirtualMachineInfo vmInfo: vmwareVMs.values()) {
-            if (vmInfo.getName().equals(name)) {
-                return vmInfo;
-            }
+            index(vmInfo, nameIndex, morIndex);
         }
-        return null;
+        vmNameIndex = nameIndex;
+        vmMorIndex = morIndex;
     }
 
     public static VirtualNetworkInfo getVnById(String uuid) {
@@ -62,24 +271,29 @@ public class MainDB {
     
     public static void created(VirtualNetworkInfo vnInfo) {
         vmwareVNs.put(vnInfo.getUuid(), vnInfo);
+        index(vnInfo, vnNameIndex, vnMorIndex);
+        changed();
     }
     
     public static void updated(VirtualNetworkInfo vnInfo) {
         if (!vmwareVNs.containsKey(vnInfo.getUuid())) {
             vmwareVNs.put(vnInfo.getUuid(), vnInfo);
         }
+        // name or port group may have changed, old keys are dropped lazily
+        index(vnInfo, vnNameIndex, vnMorIndex);
+        changed();
     }
     
     public static void deleted(VirtualNetworkInfo vnInfo) {
         if (vmwareVNs.containsKey(vnInfo.getUuid())) {
             vmwareVNs.remove(vnInfo.getUuid());
         }
+        unindex(vnInfo);
+        changed();
     }
     
     public static void deleteVirtualNetwork(VirtualNetworkInfo vnInfo) {
-        if (vmwareVNs.containsKey(vnInfo.getUuid())) {
-            vmwareVNs.remove(vnInfo.getUuid());
-        }
+        deleted(vnInfo);
     }
 
     public static VirtualMachineInfo getVmById(String uuid) {
@@ -91,69 +305,302 @@ public class MainDB {
 
     public static void created(VirtualMachineInfo vmInfo) {
         vmwareVMs.put(vmInfo.getUuid(), vmInfo);
+        index(vmInfo, vmNameIndex, vmMorIndex);
+        changed();
     }
     
     public static void updated(VirtualMachineInfo vmInfo) {
         if (!vmwareVMs.containsKey(vmInfo.getUuid())) {
             vmwareVMs.put(vmInfo.getUuid(), vmInfo);
         }
+        index(vmInfo, vmNameIndex, vmMorIndex);
+        changed();
     }
     
     public static void deleted(VirtualMachineInfo vmInfo) {
         if (vmwareVMs.containsKey(vmInfo.getUuid())) {
-            vmwareVNs.remove(vmInfo.getUuid());
+            vmwareVMs.remove(vmInfo.getUuid());
         }
+        unindex(vmInfo);
+        changed();
     }
     
     public static <K extends Comparable<K>, V extends VCenterObject> 
     void sync(SortedMap<K, V> oldMap, SortedMap<K, V> newMap) {
+        sync(oldMap, newMap, null);
+    }
+
+    private static <K extends Comparable<K>, V extends VCenterObject> 
+    void sync(SortedMap<K, V> oldMap, SortedMap<K, V> newMap,
+            VncWriteBehind writeBehind) {
+        SyncStats stats = new SyncStats("objects", null, null);
+        sync(oldMap.entrySet().iterator(), newMap.entrySet().iterator(),
+                writeBehind, stats);
+        if (stats.getFailed() > 0) {
+            s_logger.error("Sync of " + stats + " " + stats.getFailures());
+        }
+    }
+
+    /*
+     * Splits the key space into ranges holding about as many vCenter
+     * objects each and merges the ranges in parallel, each thread reading
+     * the API server objects of its range. Returns the statistics of the
+     * ranges, complete once the write-behind is drained.
+     */
+    private static <T extends ApiObjectBase, V extends VCenterObject>
+    List<SyncStats> sync(String what, VncPageIterator<T, V> oldObjs,
+            SortedMap<String, V> newMap, final VncWriteBehind writeBehind)
+            throws InterruptedException {
+        List<String> bounds = splitKeys(newMap, VCenterMonitor.syncPartitions);
+        List<VncPageIterator<T, V>> oldParts = oldObjs.split(bounds);
+        List<SyncStats> stats = new ArrayList<SyncStats>();
+        List<Callable<Void>> merges = new ArrayList<Callable<Void>>();
+        for (int i = 0; i <= bounds.size(); i++) {
+            String from = (i == 0) ? null : bounds.get(i - 1);
+            String to = (i == bounds.size()) ? null : bounds.get(i);
+            final SyncStats partStats = new SyncStats(what, from, to);
+            final VncPageIterator<T, V> oldIter = oldParts.get(i);
+            final Iterator<Entry<String, V>> newIter =
+                    range(newMap, from, to).entrySet().iterator();
+            stats.add(partStats);
+            merges.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    try {
+                        sync(oldIter, newIter, writeBehind, partStats);
+                    } catch (RuntimeException e) {
+                        s_logger.error("Cannot merge " + partStats.getRange()
+                                + ": " + Throwables.getStackTraceAsString(e));
+                        partStats.failed("merge", partStats.getRange(), e);
+                    }
+                    partStats.setRead(oldIter.getCount(), oldIter.getPages());
+                    return null;
+                }
+            });
+        }
+
+        if (merges.size() == 1) {
+            try {
+                merges.get(0).call();
+            } catch (Exception e) {
+                // handled in the merge
+            }
+            return stats;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(merges.size(),
+                new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sync-merge-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            executor.invokeAll(merges);
+        } finally {
+            executor.shutdownNow();
+        }
+        return stats;
+    }
+
+    /*
+     * Keys splitting the map into at most parts ranges of equal size.
+     */
+    private static List<String> splitKeys(SortedMap<String, ?> map, int parts) {
+        List<String> bounds = new ArrayList<String>();
+        int size = map.size();
+        if (parts <= 1 || size < 2 * parts) {
+            return bounds;
+        }
+        int step = size / parts;
+        int i = 0;
+        for (String key: map.keySet()) {
+            if (i > 0 && i % step == 0 && bounds.size() < parts - 1) {
+                bounds.add(key);
+            }
+            i++;
+        }
+        return bounds;
+    }
+
+    private static <V> SortedMap<String, V> range(SortedMap<String, V> map,
+            String from, String to) {
+        if (from == null && to == null) {
+            return map;
+        }
+        if (from == null) {
+            return map.headMap(to);
+        }
+        if (to == null) {
+            return map.tailMap(from);
+        }
+        return map.subMap(from, to);
+    }
+
+    private static void logStats(List<SyncStats> stats) {
+        for (SyncStats partStats: stats) {
+            if (partStats.getFailed() > 0) {
+                s_logger.error("Sync of " + partStats + " "
+                        + partStats.getFailures());
+            } else {
+                s_logger.info("Sync of " + partStats);
+            }
+        }
+    }
+
+    /*
+     * Merges two streams of objects sorted by key, they need not be in
+     * memory as a whole: the API server side is read a page at a time.
+     * With a write-behind the API server writes of every object are
+     * queued and run in parallel with the other objects, the caller
+     * drains it.
+     */
+    private static <K extends Comparable<K>, V extends VCenterObject> 
+    void sync(Iterator<Entry<K, V>> oldIter, Iterator<Entry<K, V>> newIter,
+            VncWriteBehind writeBehind, SyncStats stats) {
         
-        Iterator<Entry<K, V>> oldIter = oldMap.entrySet().iterator();
         Entry<K, V> oldEntry = oldIter.hasNext()? oldIter.next() : null;
-        Iterator<Entry<K, V>> newIter = newMap.entrySet().iterator();
         Entry<K, V> newEntry = newIter.hasNext()? newIter.next() : null;
         
         while (oldEntry != null && newEntry != null) {
             Integer cmp = newEntry.getKey().compareTo(oldEntry.getKey());
-            try {
-                if (cmp == 0) {
-                    newEntry.getValue().sync(oldEntry.getValue(), vncDB);
-                    oldEntry = oldIter.hasNext()? oldIter.next() : null;
-                    newEntry = newIter.hasNext()? newIter.next() : null;
-                } else if (cmp < 0) {
-                    newEntry.getValue().create(vncDB);
-                    newEntry = newIter.hasNext()? newIter.next() : null;
-                } else { 
-                    if (mode != Mode.VCENTER_AS_COMPUTE) {
-                        oldEntry.getValue().delete(vncDB);
-                    }
-                    oldEntry = oldIter.hasNext()? oldIter.next() : null;
+            if (cmp == 0) {
+                syncObject(writeBehind, newEntry.getKey().toString(),
+                        newEntry.getValue(), oldEntry.getValue(), stats);
+                oldEntry = oldIter.hasNext()? oldIter.next() : null;
+                newEntry = newIter.hasNext()? newIter.next() : null;
+            } else if (cmp < 0) {
+                createObject(writeBehind, newEntry.getKey().toString(),
+                        newEntry.getValue(), stats);
+                newEntry = newIter.hasNext()? newIter.next() : null;
+            } else { 
+                if (mode != Mode.VCENTER_AS_COMPUTE) {
+                    deleteObject(writeBehind, oldEntry.getKey().toString(),
+                            oldEntry.getValue(), stats);
                 }
-            } catch (Exception e) {
-                //s_logger.error("Cannot sync " + entry1.getKey());
+                oldEntry = oldIter.hasNext()? oldIter.next() : null;
             }
         }
 
         if (mode != Mode.VCENTER_AS_COMPUTE) {
             while (oldEntry != null) {
-                try {
-                    oldEntry.getValue().delete(vncDB);
-                } catch (Exception e) {
-                    //s_logger.error("Cannot delete " + entry2.getKey());
-                }
+                deleteObject(writeBehind, oldEntry.getKey().toString(),
+                        oldEntry.getValue(), stats);
                 oldEntry = oldIter.hasNext()? oldIter.next() : null;
             }
         }
         
         while (newEntry != null) {
-            try {
-                newEntry.getValue().create(vncDB);
-            } catch (Exception e) {
-                //s_logger.error("Cannot create VN " + entry1.getKey());
-            }
+            createObject(writeBehind, newEntry.getKey().toString(),
+                    newEntry.getValue(), stats);
             newEntry = newIter.hasNext()? newIter.next() : null;
         }
     }
+
+    private static void syncObject(VncWriteBehind writeBehind, String key,
+            final VCenterObject newObj, final VCenterObject oldObj,
+            SyncStats stats) {
+        write(writeBehind, key, "sync", new VncWriteBehind.Write() {
+            @Override
+            public void run() throws Exception {
+                newObj.sync(oldObj, vncDB);
+            }
+        }, stats);
+    }
+
+    private static void createObject(VncWriteBehind writeBehind, String key,
+            final VCenterObject obj, SyncStats stats) {
+        write(writeBehind, key, "create", new VncWriteBehind.Write() {
+            @Override
+            public void run() throws Exception {
+                obj.create(vncDB);
+            }
+        }, stats);
+    }
+
+    private static void deleteObject(VncWriteBehind writeBehind, String key,
+            final VCenterObject obj, SyncStats stats) {
+        write(writeBehind, key, "delete", new VncWriteBehind.Write() {
+            @Override
+            public void run() throws Exception {
+                obj.delete(vncDB);
+            }
+        }, stats);
+    }
+
+    private static void write(VncWriteBehind writeBehind, final String key,
+            final String name, final VncWriteBehind.Write write,
+            final SyncStats stats) {
+        VncWriteBehind.Write counted = new VncWriteBehind.Write() {
+            @Override
+            public void run() throws Exception {
+                try {
+                    write.run();
+                } catch (Exception e) {
+                    stats.failed(name, key, e);
+                    throw e;
+                }
+                stats.succeeded(name, key);
+            }
+        };
+        try {
+            if (writeBehind == null) {
+                counted.run();
+            } else {
+                writeBehind.submit(key, name, counted);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // counted in the stats, the caller reports them
+        }
+    }
+
+    /*
+     * Waits for the writes queued by a sync, the VMs need their
+     * networks in the API server. Complains when the writes take longer
+     * than the API server latency measured by the probe explains, and
+     * fails the sync after syncDrainTimeouts times that, with the keys
+     * still pending recorded as failed in the stats of their range.
+     */
+    private static void drain(VncWriteBehind writeBehind, List<SyncStats> stats)
+            throws InterruptedException, TimeoutException {
+        int threads = writeBehind.getThreads();
+        long rounds = Math.max(1, (writeBehind.getPending() + threads - 1) / threads);
+        long limit = Math.max(VCenterMonitor.syncDrainTimeouts * rounds
+                * vncDB.getApiTimeout(), VncDB.API_TIMEOUT_MIN_MS);
+        long deadline = System.currentTimeMillis() + limit;
+        while (true) {
+            int pending = writeBehind.getPending();
+            long expected = vncDB.getApiTimeout() * ((pending + threads - 1) / threads);
+            long wait = Math.min(Math.max(expected, VncDB.API_TIMEOUT_MIN_MS),
+                    deadline - System.currentTimeMillis());
+            if (wait > 0 && writeBehind.drain(wait)) {
+                return;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                break;
+            }
+            s_logger.warn("Sync waiting for " + writeBehind.getPending()
+                    + " API server writes, probe latency " + vncDB.getProbeLatency());
+        }
+
+        TimeoutException e = new TimeoutException("Sync gave up on "
+                + writeBehind.getPending() + " API server writes after " + limit + " ms");
+        for (String key: writeBehind.getPendingKeys()) {
+            for (SyncStats partStats: stats) {
+                if (partStats.contains(key)) {
+                    partStats.failed("drain", key, e);
+                    break;
+                }
+            }
+        }
+        logStats(stats);
+        throw e;
+    }
   
     public static <K extends Comparable<K>, V extends VCenterObject> 
     void update(SortedMap<K, V> oldMap, SortedMap<K, V> newMap) {
@@ -162,43 +609,48 @@ public class MainDB {
         Entry<K, V> oldEntry = oldIter.hasNext()? oldIter.next() : null;
         Iterator<Entry<K, V>> newIter = newMap.entrySet().iterator();
         Entry<K, V> newEntry = newIter.hasNext()? newIter.next() : null;
+        SyncStats stats = new SyncStats("objects", null, null);
         
         while (oldEntry != null && newEntry != null) {
             Integer cmp = newEntry.getKey().compareTo(oldEntry.getKey());
-            try {
-                if (cmp == 0) {
-                    oldEntry.getValue().update(newEntry.getValue(), vncDB);
-                    oldEntry = oldIter.hasNext()? oldIter.next() : null;
-                    newEntry = newIter.hasNext()? newIter.next() : null;
-                } else if (cmp < 0) {
-                    newEntry.getValue().create(vncDB);
-                    newEntry = newIter.hasNext()? newIter.next() : null;
-                } else {
-                    oldEntry.getValue().delete(vncDB);
-                    oldEntry = oldIter.hasNext()? oldIter.next() : null;
-                }
-            } catch (Exception e) {
-                //s_logger.error("Cannot sync " + entry1.getKey());
+            if (cmp == 0) {
+                final V oldObj = oldEntry.getValue();
+                final V newObj = newEntry.getValue();
+                write(null, oldEntry.getKey().toString(), "update",
+                        new VncWriteBehind.Write() {
+                    @Override
+                    public void run() throws Exception {
+                        oldObj.update(newObj, vncDB);
+                    }
+                }, stats);
+                oldEntry = oldIter.hasNext()? oldIter.next() : null;
+                newEntry = newIter.hasNext()? newIter.next() : null;
+            } else if (cmp < 0) {
+                createObject(null, newEntry.getKey().toString(),
+                        newEntry.getValue(), stats);
+                newEntry = newIter.hasNext()? newIter.next() : null;
+            } else {
+                deleteObject(null, oldEntry.getKey().toString(),
+                        oldEntry.getValue(), stats);
+                oldEntry = oldIter.hasNext()? oldIter.next() : null;
             }
         }
 
         while (oldEntry != null) {
-            try {
-                oldEntry.getValue().delete(vncDB);
-            } catch (Exception e) {
-                //s_logger.error("Cannot delete " + entry2.getKey());
-            }
+            deleteObject(null, oldEntry.getKey().toString(),
+                    oldEntry.getValue(), stats);
             oldEntry = oldIter.hasNext()? oldIter.next() : null;
         }
 
         while (newEntry != null) {
-            try {
-                newEntry.getValue().create(vncDB);
-            } catch (Exception e) {
-                //s_logger.error("Cannot create VN " + entry1.getKey());
-            }
+            createObject(null, newEntry.getKey().toString(),
+                    newEntry.getValue(), stats);
             newEntry = newIter.hasNext()? newIter.next() : null;
         }
+
+        if (stats.getFailed() > 0) {
+            s_logger.error("Update of " + stats + " " + stats.getFailures());
+        }
     }
     
     public static void sync(VCenterDB _vcenterDB, VncDB _vncDB, Mode _mode) 
@@ -207,22 +659,131 @@ public class MainDB {
         vncDB = _vncDB;
         mode = _mode;
         
+        // readers keep the state before the sync until it completes, a
+        // failed sync is retried and keeps it longer
+        synchronized (snapshotLock) {
+            if (!syncing) {
+                publish();
+                syncing = true;
+            }
+        }
+        // VMs of hosts the sync cannot read are carried over from these,
+        // the snapshot also outlives a failed sync that cleared MainDB
+        final SortedMap<String, VirtualMachineInfo> knownVMs = snapshot.getVMs();
         vmwareVNs.clear();
         vmwareVMs.clear();
+        vnNameIndex.clear();
+        vnMorIndex.clear();
+        vmNameIndex.clear();
+        vmMorIndex.clear();
         
+        // vCenter objects are kept, they are the plugin state after the
+        // sync. The API server objects are only compared, page by page.
+        final SyncSummary summary = new SyncSummary(syncCount.incrementAndGet());
+        lastSync = summary;
+        long start = System.currentTimeMillis();
         vmwareVNs = vcenterDB.readVirtualNetworks();
-        SortedMap<String, VirtualNetworkInfo> oldVNs = vncDB.readVirtualNetworks();
-        sync(oldVNs, vmwareVNs);
-        
-        vmwareVMs = vcenterDB.readVirtualMachines();
-        SortedMap<String, VirtualMachineInfo> oldVMs = vncDB.readVirtualMachines();
-        sync(oldVMs, vmwareVMs);
+        reindexVNs();
+        summary.record(SyncSummary.Stage.VCENTER_VN_READ, System.currentTimeMillis() - start);
+
+        // the VM reads only need the vCenter networks, they run while
+        // the networks are reconciled
+        ExecutorService executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sync-read-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        List<SyncStats> vnStats;
+        List<SyncStats> vmStats;
+        try {
+            Future<SortedMap<String, VirtualMachineInfo>> vcenterVMs = executor.submit(
+                    new Callable<SortedMap<String, VirtualMachineInfo>>() {
+                @Override
+                public SortedMap<String, VirtualMachineInfo> call() throws Exception {
+                    long start = System.currentTimeMillis();
+                    SortedMap<String, VirtualMachineInfo> vms =
+                            vcenterDB.readVirtualMachines(knownVMs);
+                    summary.record(SyncSummary.Stage.VCENTER_VM_READ,
+                            System.currentTimeMillis() - start);
+                    return vms;
+                }
+            });
+            Future<VncPageIterator<VirtualMachine, VirtualMachineInfo>> vncVMs =
+                    executor.submit(
+                    new Callable<VncPageIterator<VirtualMachine, VirtualMachineInfo>>() {
+                @Override
+                public VncPageIterator<VirtualMachine, VirtualMachineInfo> call() {
+                    long start = System.currentTimeMillis();
+                    VncPageIterator<VirtualMachine, VirtualMachineInfo> vms =
+                            vncDB.streamVirtualMachines(VCenterMonitor.vncReadPageSize);
+                    summary.record(SyncSummary.Stage.VNC_VM_LIST,
+                            System.currentTimeMillis() - start);
+                    return vms;
+                }
+            });
+
+            start = System.currentTimeMillis();
+            VncPageIterator<VirtualNetwork, VirtualNetworkInfo> oldVNs =
+                    vncDB.streamVirtualNetworks(VCenterMonitor.vncReadPageSize);
+            VncWriteBehind writeBehind = vncDB.getWriteBehind();
+            vnStats = sync("virtual networks", oldVNs, vmwareVNs, writeBehind);
+            drain(writeBehind, vnStats);
+            summary.record(SyncSummary.Stage.VN_SYNC, System.currentTimeMillis() - start);
+            logStats(vnStats);
+
+            vmwareVMs = get(vcenterVMs);
+            reindexVMs();
+            VncPageIterator<VirtualMachine, VirtualMachineInfo> oldVMs = get(vncVMs);
+            start = System.currentTimeMillis();
+            vmStats = sync("virtual machines", oldVMs, vmwareVMs, writeBehind);
+            drain(writeBehind, vmStats);
+            summary.record(SyncSummary.Stage.VM_SYNC, System.currentTimeMillis() - start);
+            logStats(vmStats);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int failures = 0;
+        for (SyncStats stats: vnStats) {
+            failures += stats.getFailed();
+        }
+        for (SyncStats stats: vmStats) {
+            failures += stats.getFailed();
+        }
+        summary.complete(vmwareVNs.size(), vmwareVMs.size(), failures);
+        s_logger.info("Completed " + summary);
+
+        changed();
+        synchronized (snapshotLock) {
+            syncing = false;
+            publish();
+        }
          
         printInfo();
         
         s_logger.info("\nSync complete, waiting for events\n");
     }
 
+    /*
+     * Result of a stage run next to the caller, with its own exception.
+     */
+    private static <T> T get(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
     private static void printInfo() {
         System.out.println("\nNetworks after sync:");
         for (VirtualNetworkInfo vnInfo: vmwareVNs.values()) {
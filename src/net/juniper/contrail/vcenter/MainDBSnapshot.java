@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The networks and VMs of MainDB as of one generation.
+ *
+ * The maps never change once published, a reader holding a snapshot
+ * iterates over a consistent view while events and syncs go on. The
+ * info objects are shared with MainDB, their fields are the live ones.
+ *
+ * The interfaces of a network are copied once per change of that
+ * network, later snapshots share the copy of the networks that did
+ * not change.
+ */
+public class MainDBSnapshot {
+    private final long generation;
+    private final long time;
+    private final SortedMap<String, VirtualNetworkInfo> vns;
+    private final SortedMap<String, VirtualMachineInfo> vms;
+    private final Map<VirtualNetworkInfo, Interfaces> vnInterfaces;
+
+    /*
+     * Copy of the interfaces of a network, and the change count of
+     * the network it was taken at.
+     */
+    private static class Interfaces {
+        final int version;
+        final SortedMap<String, VirtualMachineInterfaceInfo> map;
+
+        Interfaces(int version, SortedMap<String, VirtualMachineInterfaceInfo> map) {
+            this.version = version;
+            this.map = map;
+        }
+    }
+
+    MainDBSnapshot(long generation,
+            SortedMap<String, VirtualNetworkInfo> vns,
+            SortedMap<String, VirtualMachineInfo> vms,
+            MainDBSnapshot previous) {
+        this.generation = generation;
+        time = System.currentTimeMillis();
+        this.vns = Collections.unmodifiableSortedMap(
+                new TreeMap<String, VirtualNetworkInfo>(vns));
+        this.vms = Collections.unmodifiableSortedMap(
+                new TreeMap<String, VirtualMachineInfo>(vms));
+
+        vnInterfaces = new HashMap<VirtualNetworkInfo, Interfaces>();
+        for (VirtualNetworkInfo vnInfo: this.vns.values()) {
+            Interfaces interfaces = null;
+            if (previous != null) {
+                interfaces = previous.vnInterfaces.get(vnInfo);
+            }
+            // read the version first, a change racing the copy is
+            // picked up by the next snapshot
+            int version = vnInfo.getVmiVersion();
+            if (interfaces == null || interfaces.version != version) {
+                SortedMap<String, VirtualMachineInterfaceInfo> vmis = vnInfo.getVmiInfo();
+                interfaces = new Interfaces(version, Collections.unmodifiableSortedMap(
+                        vmis == null ? new TreeMap<String, VirtualMachineInterfaceInfo>()
+                                : new TreeMap<String, VirtualMachineInterfaceInfo>(vmis)));
+            }
+            vnInterfaces.put(vnInfo, interfaces);
+        }
+    }
+
+    static MainDBSnapshot empty() {
+        return new MainDBSnapshot(0,
+                new TreeMap<String, VirtualNetworkInfo>(),
+                new TreeMap<String, VirtualMachineInfo>(), null);
+    }
+
+    /**
+     * Increases with every change of MainDB, snapshots of the same
+     * generation have the same content.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public SortedMap<String, VirtualNetworkInfo> getVNs() {
+        return vns;
+    }
+
+    public SortedMap<String, VirtualMachineInfo> getVMs() {
+        return vms;
+    }
+
+    /**
+     * Interfaces of a network of this snapshot, by MAC address. Empty
+     * for a network that is not part of it.
+     */
+    public SortedMap<String, VirtualMachineInterfaceInfo> getVmiInfo(
+            VirtualNetworkInfo vnInfo) {
+        Interfaces interfaces = vnInterfaces.get(vnInfo);
+        if (interfaces == null) {
+            return Collections.unmodifiableSortedMap(
+                    new TreeMap<String, VirtualMachineInterfaceInfo>());
+        }
+        return interfaces.map;
+    }
+}
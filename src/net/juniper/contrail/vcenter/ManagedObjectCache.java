@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.vmware.vim25.DVPortgroupEvent;
+import com.vmware.vim25.DVPortgroupRenamedEvent;
+import com.vmware.vim25.Event;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.VmEvent;
+import com.vmware.vim25.VmPoweredOffEvent;
+import com.vmware.vim25.VmPoweredOnEvent;
+import com.vmware.vim25.VmReconfiguredEvent;
+import com.vmware.vim25.VmRenamedEvent;
+
+/**
+ * Bounded LRU cache of name -> ManagedObjectReference for the inventory
+ * searches done by VCenterDB on every event (networks, port groups,
+ * hosts and VMs).
+ *
+ * Names are looked up within a scope (the host for VMs, the datacenter
+ * for hosts). Entries are dropped by the events that can make a name
+ * point to another object: VM create/remove/rename/migrate and port group
+ * create/rename/destroy. The whole cache is cleared on every full sync.
+ */
+public class ManagedObjectCache {
+
+    private final int capacity;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    private final LinkedHashMap<String, ManagedObjectReference> cache;
+
+    public ManagedObjectCache(int capacity) {
+        this.capacity = capacity;
+        cache = new LinkedHashMap<String, ManagedObjectReference>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, ManagedObjectReference> eldest) {
+                if (size() > ManagedObjectCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private static String key(String type, String name, String scope) {
+        return type + "|" + name + "|" + (scope == null ? "" : scope);
+    }
+
+    public synchronized ManagedObjectReference get(String type, String name,
+            String scope) {
+        ManagedObjectReference mor = cache.get(key(type, name, scope));
+        if (mor != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return mor;
+    }
+
+    public synchronized void put(String type, String name, String scope,
+            ManagedObjectReference mor) {
+        if (capacity <= 0 || name == null || mor == null) {
+            return;
+        }
+        cache.put(key(type, name, scope), mor);
+    }
+
+    /**
+     * Drops the entries of this type and name in every scope.
+     */
+    public synchronized void invalidate(String type, String name) {
+        if (name == null) {
+            return;
+        }
+        String prefix = type + "|" + name + "|";
+        Iterator<String> it = cache.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    public void invalidate(Event event) {
+        if (event instanceof VmPoweredOnEvent
+                || event instanceof VmPoweredOffEvent
+                || event instanceof VmReconfiguredEvent) {
+            // same VM, same name
+            return;
+        }
+        if (event instanceof VmRenamedEvent) {
+            invalidate("VirtualMachine", ((VmRenamedEvent) event).getOldName());
+            invalidate("VirtualMachine", ((VmRenamedEvent) event).getNewName());
+        } else if (event instanceof VmEvent && event.getVm() != null) {
+            // created, removed, migrated: name or scope changes
+            invalidate("VirtualMachine", event.getVm().getName());
+        }
+
+        if (event instanceof DVPortgroupRenamedEvent) {
+            invalidateNetwork(((DVPortgroupRenamedEvent) event).getOldName());
+            invalidateNetwork(((DVPortgroupRenamedEvent) event).getNewName());
+        } else if (event instanceof DVPortgroupEvent && event.getNet() != null) {
+            invalidateNetwork(event.getNet().getName());
+        }
+    }
+
+    private void invalidateNetwork(String name) {
+        invalidate("Network", name);
+        invalidate("DistributedVirtualPortgroup", name);
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.log4j.Logger;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.mo.Datacenter;
+import com.vmware.vim25.mo.HostSystem;
+
+/**
+ * Reads the VMs of a datacenter host by host on a bounded pool of threads.
+ *
+ * Every host gets a timeout per attempt and a number of retries, and the
+ * whole read stops retrying once the sync budget is used, so that one slow
+ * or disconnected ESXi host cannot hold the sync past its watchdog.
+ * VMs of a host that could not be read are carried over from the VMs
+ * known before the sync, so the sync does not delete them.
+ */
+public class ParallelHostReader {
+    private static final Logger s_logger =
+            Logger.getLogger(ParallelHostReader.class);
+
+    // stay below the 300 s "Sync" watchdog
+    static final long SYNC_BUDGET_MS = 240000;
+
+    // last read of every host, for introspect
+    private static final ConcurrentHashMap<String, HostReadRecord> hostReads =
+            new ConcurrentHashMap<String, HostReadRecord>();
+
+    private final VCenterDB vcenterDB;
+    private final int threads;
+    private final long timeoutMillis;
+    private final int retries;
+
+    public static class HostReadRecord {
+        public final String hostName;
+        public volatile long startTime;
+        public volatile long durationMs;
+        public volatile int attempts;
+        public volatile int vms;
+        public volatile String status = "pending";
+
+        HostReadRecord(String hostName) {
+            this.hostName = hostName;
+        }
+    }
+
+    public ParallelHostReader(VCenterDB vcenterDB, int threads,
+            long timeoutMillis, int retries) {
+        this.vcenterDB = vcenterDB;
+        this.threads = threads;
+        this.timeoutMillis = timeoutMillis;
+        this.retries = retries;
+    }
+
+    public static Map<String, HostReadRecord> getHostReads() {
+        return hostReads;
+    }
+
+    public void read(SortedMap<String, VirtualMachineInfo> map,
+            final Datacenter dc, final String dcName,
+            SortedMap<String, VirtualMachineInfo> knownVMs) throws Exception {
+        long deadline = System.currentTimeMillis() + SYNC_BUDGET_MS;
+
+        Map<String, String> hosts =
+                new VCenterInventoryReader(vcenterDB).readHosts(dc);
+        hostReads.keySet().retainAll(hosts.values());
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(threads, Math.max(hosts.size(), 1)));
+        try {
+            List<String> failedHosts = new ArrayList<String>();
+            List<HostRead> pending = new ArrayList<HostRead>();
+            for (Map.Entry<String, String> entry: hosts.entrySet()) {
+                HostRead hostRead = new HostRead(entry.getKey(), entry.getValue(),
+                        dc, dcName);
+                hostRead.submit(executor);
+                pending.add(hostRead);
+            }
+
+            for (HostRead hostRead: pending) {
+                if (!hostRead.await(executor, deadline)) {
+                    failedHosts.add(hostRead.hostName);
+                    continue;
+                }
+                map.putAll(hostRead.result);
+            }
+
+            if (!failedHosts.isEmpty()) {
+                carryOver(map, failedHosts, knownVMs);
+            }
+        } finally {
+            // abandon reads stuck in a socket, the read timeout ends them
+            executor.shutdownNow();
+        }
+    }
+
+    private void carryOver(SortedMap<String, VirtualMachineInfo> map,
+            List<String> failedHosts, SortedMap<String, VirtualMachineInfo> knownVMs) {
+        int count = 0;
+        for (VirtualMachineInfo vmInfo: knownVMs.values()) {
+            if (failedHosts.contains(vmInfo.getHostName())
+                    && !map.containsKey(vmInfo.getUuid())) {
+                map.put(vmInfo.getUuid(), vmInfo);
+                count++;
+            }
+        }
+        s_logger.warn("Could not read hosts " + failedHosts + ", keeping "
+                + count + " previously known VMs");
+    }
+
+    private class HostRead implements Callable<SortedMap<String, VirtualMachineInfo>> {
+        final String hostMor;
+        final String hostName;
+        final Datacenter dc;
+        final String dcName;
+        final HostReadRecord record;
+        Future<SortedMap<String, VirtualMachineInfo>> future;
+        SortedMap<String, VirtualMachineInfo> result;
+
+        HostRead(String hostMor, String hostName, Datacenter dc, String dcName) {
+            this.hostMor = hostMor;
+            this.hostName = hostName;
+            this.dc = dc;
+            this.dcName = dcName;
+            record = new HostReadRecord(hostName);
+            if (hostName != null) {
+                hostReads.put(hostName, record);
+            }
+        }
+
+        void submit(ExecutorService executor) {
+            record.attempts++;
+            record.status = "queued";
+            record.startTime = 0;
+            future = executor.submit(this);
+        }
+
+        /*
+         * The timeout of an attempt runs from the moment a thread picks
+         * it up, time spent queued behind other hosts does not count.
+         */
+        boolean await(ExecutorService executor, long deadline)
+                throws InterruptedException {
+            while (true) {
+                long now = System.currentTimeMillis();
+                long started = record.startTime;
+                long wait = (started == 0) ? timeoutMillis
+                        : started + timeoutMillis - now;
+                wait = Math.max(Math.min(wait, deadline - now), 0);
+                String failure;
+                try {
+                    result = future.get(wait, TimeUnit.MILLISECONDS);
+                    record.durationMs = System.currentTimeMillis() - record.startTime;
+                    record.vms = result.size();
+                    record.status = "ok";
+                    return true;
+                } catch (TimeoutException e) {
+                    now = System.currentTimeMillis();
+                    started = record.startTime;
+                    if (now < deadline
+                            && (started == 0 || now - started < timeoutMillis)) {
+                        continue;
+                    }
+                    future.cancel(true);
+                    failure = (started == 0) ? "not started" : "timeout";
+                } catch (ExecutionException e) {
+                    failure = "failed: " + e.getCause();
+                }
+                if (record.startTime != 0) {
+                    record.durationMs = System.currentTimeMillis() - record.startTime;
+                }
+                record.status = failure;
+                s_logger.error("Reading VMs of host " + hostName + " " + failure
+                        + " after " + record.durationMs + " ms, attempt "
+                        + record.attempts);
+
+                if (record.attempts > retries
+                        || System.currentTimeMillis() >= deadline) {
+                    return false;
+                }
+                submit(executor);
+            }
+        }
+
+        @Override
+        public SortedMap<String, VirtualMachineInfo> call() throws Exception {
+            record.startTime = System.currentTimeMillis();
+            record.status = "reading";
+            ManagedObjectReference mor = new ManagedObjectReference();
+            mor.setType("HostSystem");
+            mor.setVal(hostMor);
+            HostSystem host = new HostSystem(dc.getServerConnection(), mor);
+
+            SortedMap<String, VirtualMachineInfo> hostVMs =
+                    new ConcurrentSkipListMap<String, VirtualMachineInfo>();
+            new VCenterInventoryReader(vcenterDB).read(hostVMs, host, dc, dcName);
+            return hostVMs;
+        }
+    }
+}
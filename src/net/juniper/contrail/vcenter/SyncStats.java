@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What the merge of one key range did to the API server.
+ *
+ * A failure is kept per key until a later write of the same key
+ * succeeds, so that a write retried by the write-behind is counted once,
+ * by its final outcome.
+ */
+public class SyncStats {
+    private final String what;
+    private final String from;
+    private final String to;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong synced = new AtomicLong();
+    private final AtomicLong deleted = new AtomicLong();
+    private final Map<String, String> failures =
+            new ConcurrentHashMap<String, String>();
+    // objects read from the API server, and in how many pages
+    private volatile int read;
+    private volatile int pages;
+
+    /**
+     * Range [from, to) of the keys, null for an open end.
+     */
+    public SyncStats(String what, String from, String to) {
+        this.what = what;
+        this.from = from;
+        this.to = to;
+    }
+
+    void succeeded(String op, String key) {
+        failures.remove(key);
+        if (op.equals("create")) {
+            created.incrementAndGet();
+        } else if (op.equals("delete")) {
+            deleted.incrementAndGet();
+        } else {
+            synced.incrementAndGet();
+        }
+    }
+
+    void failed(String op, String key, Throwable e) {
+        failures.put(key, op + ": " + e);
+    }
+
+    void setRead(int read, int pages) {
+        this.read = read;
+        this.pages = pages;
+    }
+
+    public int getRead() {
+        return read;
+    }
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    public long getSynced() {
+        return synced.get();
+    }
+
+    public long getDeleted() {
+        return deleted.get();
+    }
+
+    public int getFailed() {
+        return failures.size();
+    }
+
+    /**
+     * Failed keys with the error of their last attempt.
+     */
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+
+    boolean contains(String key) {
+        return (from == null || key.compareTo(from) >= 0)
+                && (to == null || key.compareTo(to) < 0);
+    }
+
+    public String getRange() {
+        return "[" + (from == null ? "" : from) + ", " + (to == null ? "" : to) + ")";
+    }
+
+    public String toString() {
+        return what + " " + getRange() + ": read " + read + " in " + pages
+                + " pages, created " + created + ", synced "
+                + synced + ", deleted " + deleted + ", failed " + failures.size();
+    }
+}
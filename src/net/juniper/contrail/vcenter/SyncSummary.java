@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+/**
+ * Durations of the stages of a full sync.
+ *
+ * The stages needing only the vCenter networks run next to the network
+ * reconciliation, the durations add up to more than the total:
+ *
+ *   VCENTER_VN_READ -+-> VN_SYNC ---------+-> VM_SYNC
+ *                    +-> VCENTER_VM_READ -+
+ *                    +-> VNC_VM_LIST -----+
+ */
+public class SyncSummary {
+    public enum Stage {
+        VCENTER_VN_READ,
+        VN_SYNC,
+        VCENTER_VM_READ,
+        VNC_VM_LIST,
+        VM_SYNC
+    }
+
+    private final long number;
+    private final long startTime;
+    private final long[] durations = new long[Stage.values().length];
+    private long total;
+    private int virtualNetworks;
+    private int virtualMachines;
+    private int failures;
+
+    public SyncSummary(long number) {
+        this.number = number;
+        startTime = System.currentTimeMillis();
+    }
+
+    synchronized void record(Stage stage, long millis) {
+        durations[stage.ordinal()] = millis;
+    }
+
+    synchronized void complete(int virtualNetworks, int virtualMachines, int failures) {
+        total = System.currentTimeMillis() - startTime;
+        this.virtualNetworks = virtualNetworks;
+        this.virtualMachines = virtualMachines;
+        this.failures = failures;
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public synchronized long getDuration(Stage stage) {
+        return durations[stage.ordinal()];
+    }
+
+    /**
+     * 0 while the sync is running.
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    public synchronized int getVirtualNetworks() {
+        return virtualNetworks;
+    }
+
+    public synchronized int getVirtualMachines() {
+        return virtualMachines;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    public synchronized String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append("sync ").append(number).append(": ")
+         .append(virtualNetworks).append(" networks, ")
+         .append(virtualMachines).append(" VMs, ")
+         .append(failures).append(" failed, ")
+         .append(total).append(" ms (");
+        for (Stage stage: Stage.values()) {
+            if (stage.ordinal() > 0) {
+                s.append(", ");
+            }
+            s.append(stage).append(" ").append(durations[stage.ordinal()]).append(" ms");
+        }
+        return s.append(")").toString();
+    }
+}
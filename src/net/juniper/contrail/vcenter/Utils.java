@@ -1,20 +1,89 @@
 package net.juniper.contrail.vcenter;
 
-import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.Collections;
 
 public class Utils {
+    /**
+     * Parses "00:50:56:aa:bb:cc" into its bytes, with no allocation but
+     * the result. Each group keeps its low byte.
+     */
     public static byte[] parseMacAddress(String macAddress) {
-        String[] bytes = macAddress.split(":");
-        byte[] parsed = new byte[bytes.length];
-        for (int x = 0; x < bytes.length; x++) {
-            BigInteger temp = new BigInteger(bytes[x], 16);
-            byte[] raw = temp.toByteArray();
-            parsed[x] = raw[raw.length - 1];
+        int groups = 1;
+        for (int i = 0; i < macAddress.length(); i++) {
+            if (macAddress.charAt(i) == ':') {
+                groups++;
+            }
+        }
+        byte[] parsed = new byte[groups];
+        int x = 0;
+        int value = 0;
+        boolean digits = false;
+        for (int i = 0; i <= macAddress.length(); i++) {
+            if (i == macAddress.length() || macAddress.charAt(i) == ':') {
+                if (!digits) {
+                    throw new NumberFormatException("Invalid MAC address " + macAddress);
+                }
+                parsed[x++] = (byte) value;
+                value = 0;
+                digits = false;
+                continue;
+            }
+            int digit = Character.digit(macAddress.charAt(i), 16);
+            if (digit < 0) {
+                throw new NumberFormatException("Invalid MAC address " + macAddress);
+            }
+            value = (value << 4) | digit;
+            digits = true;
         }
         return parsed;
     }
 
+    /**
+     * Returns the 4 bytes of a dotted IPv4 literal, null for anything else.
+     */
+    public static byte[] parseIpv4Address(String ipAddress) {
+        byte[] parsed = new byte[4];
+        int x = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = 0; i <= ipAddress.length(); i++) {
+            if (i == ipAddress.length() || ipAddress.charAt(i) == '.') {
+                if (digits == 0 || x == 4) {
+                    return null;
+                }
+                parsed[x++] = (byte) value;
+                value = 0;
+                digits = 0;
+                continue;
+            }
+            char c = ipAddress.charAt(i);
+            if (c < '0' || c > '9' || digits == 3) {
+                return null;
+            }
+            value = value * 10 + (c - '0');
+            if (value > 255) {
+                return null;
+            }
+            digits++;
+        }
+        return (x == 4) ? parsed : null;
+    }
+
+    /**
+     * Like InetAddress.getByName, but IPv4 literals never go through
+     * the resolver.
+     */
+    public static InetAddress parseInetAddress(String ipAddress)
+            throws UnknownHostException {
+        byte[] ipv4 = parseIpv4Address(ipAddress);
+        if (ipv4 != null) {
+            return InetAddress.getByAddress(ipv4);
+        }
+        return InetAddress.getByName(ipAddress);
+    }
+
     public static <T> Iterable<T> safe(Iterable<T> iterable) {
         return iterable == null ? Collections.<T>emptyList() : iterable;
     }
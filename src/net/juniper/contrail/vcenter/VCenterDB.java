@@ -62,6 +62,7 @@ import com.vmware.vim25.mo.IpPoolManager;
 import com.vmware.vim25.mo.ManagedEntity;
 import com.vmware.vim25.mo.ManagedObject;
 import com.vmware.vim25.mo.Network;
+import com.vmware.vim25.mo.util.MorUtil;
 import com.vmware.vim25.mo.util.PropertyCollectorUtil;
 import com.vmware.vim25.mo.ServiceInstance;
 import com.vmware.vim25.mo.VirtualMachine;
@@ -90,6 +91,7 @@ public class VCenterDB {
     private volatile SortedMap<String, VirtualNetworkInfo> prevVmwareVNInfos;
     private volatile ConcurrentMap<String, Datacenter> datacenters;
     private volatile ConcurrentMap<String, VmwareDistributedVirtualSwitch> dvswitches;
+    private final ManagedObjectCache moCache;
 
     public volatile Map<String, String> esxiToVRouterIpMap;
     public static volatile Map<String, Boolean> vRouterActiveMap;
@@ -106,8 +108,10 @@ public class VCenterDB {
         this.mode                   = mode;
 
         s_logger.info("VCenterDB(" + contrailDvsName + ", " + ipFabricPgName + ")");        
-        vRouterActiveMap = new HashMap<String, Boolean>();
+        // updated by the parallel host readers and the event workers
+        vRouterActiveMap = new ConcurrentHashMap<String, Boolean>();
         datacenters = new ConcurrentHashMap<String, Datacenter>();
+        moCache = new ManagedObjectCache(VCenterMonitor.vcenterCacheSize);
         dvswitches = new ConcurrentHashMap<String, VmwareDistributedVirtualSwitch>();
         
         // Create ESXi host to vRouterVM Ip address map
@@ -123,6 +127,8 @@ public class VCenterDB {
         }
         s_logger.info("Got rootfolder for vCenter ");
 
+        moCache.clear();
+
         inventoryNavigator = null;
         inventoryNavigator = new InventoryNavigator(rootFolder);
         if (inventoryNavigator == null) {
@@ -244,7 +250,7 @@ public class VCenterDB {
     }
     
     private boolean buildEsxiToVRouterIpMap() {
-        esxiToVRouterIpMap = new HashMap<String, String>();
+        esxiToVRouterIpMap = new ConcurrentHashMap<String, String>();
         try {
             File file = new File("/etc/contrail/ESXiToVRouterIp.map");
             Scanner input = new Scanner(file);
@@ -304,9 +310,10 @@ public class VCenterDB {
     }
     
     protected static String getVirtualMachineMacAddress(
-            VirtualMachineConfigInfo vmConfigInfo,
-            DistributedVirtualPortgroup portGroup) {
-        VirtualDevice devices[] = vmConfigInfo.getHardware().getDevice();
+            VirtualDevice[] devices, String portgroupKey, String portgroupName) {
+        if (devices == null) {
+            devices = new VirtualDevice[0];
+        }
         for (VirtualDevice device : devices) {
             // XXX Assuming only one interface
             if (device instanceof VirtualEthernetCard) {
@@ -328,7 +335,7 @@ public class VCenterDB {
                         continue;
 
                     if (dvpBackingInfo.getPort().getPortgroupKey().
-                            equals(portGroup.getKey())) {
+                            equals(portgroupKey)) {
                         String vmMac = ((VirtualEthernetCard) device).
                                 getMacAddress();
                         return vmMac;
@@ -336,8 +343,8 @@ public class VCenterDB {
                 }
             } 
         }
-        s_logger.error("dvPg: " + portGroup.getName() + " vmConfig: " + 
-                vmConfigInfo + " MAC Address NOT found");
+        s_logger.error("dvPg: " + portgroupName + " devices: " + 
+                devices.length + " MAC Address NOT found");
         return null;
     }
 
@@ -346,9 +353,9 @@ public class VCenterDB {
                     throws Exception {
         // Find if vRouter Ip Fabric mapping exists..
         String vRouterIpAddress = esxiToVRouterIpMap.get(hostName);
-        if (host.getRuntime().isInMaintenanceMode())
-            vRouterActiveMap.put(vRouterIpAddress, false);
         if (vRouterIpAddress != null) {
+            if (host.getRuntime().isInMaintenanceMode())
+                vRouterActiveMap.put(vRouterIpAddress, false);
             return vRouterIpAddress;
         }
 
@@ -383,7 +390,7 @@ public class VCenterDB {
                     continue;
                 }
                 Network network = (Network)
-                        inventoryNavigator.searchManagedEntity("Network",
+                        searchManagedEntity(rootFolder, null, "Network",
                                 networkName);
                 if (network == null) {
                     s_logger.debug("Host: " +
@@ -453,7 +460,7 @@ public class VCenterDB {
                     continue;
                 }
                 Network network = (Network)
-                        inventoryNavigator.searchManagedEntity("Network",
+                        searchManagedEntity(rootFolder, null, "Network",
                                 networkName);
                 if (network == null) {
                     s_logger.debug("dvPg: " + dvPgName + "host: " + 
@@ -526,7 +533,7 @@ public class VCenterDB {
             }
 
             Network network = (Network) 
-                    inventoryNavigator.searchManagedEntity("Network",
+                    searchManagedEntity(rootFolder, null, "Network",
                             networkName);
             if (network == null) {
                 s_logger.debug("dvPg: " + dvPgName
@@ -722,6 +729,29 @@ public class VCenterDB {
     public String getVcenterUrl() { 
         return vcenterUrl; 
     }
+
+    public ManagedObjectCache getManagedObjectCache() {
+        return moCache;
+    }
+
+    /*
+     * searchManagedEntity through the name -> MOR cache, scope is the
+     * name of the object the search starts from.
+     */
+    private ManagedEntity searchManagedEntity(ManagedEntity root, String scope,
+            String type, String name) throws RemoteException {
+        ManagedObjectReference mor = moCache.get(type, name, scope);
+        if (mor != null) {
+            return MorUtil.createExactManagedEntity(
+                    serviceInstance.getServerConnection(), mor);
+        }
+        ManagedEntity me = new InventoryNavigator(root).searchManagedEntity(
+                type, name);
+        if (me != null) {
+            moCache.put(type, name, scope, me.getMOR());
+        }
+        return me;
+    }
     
     public Datacenter getVmwareDatacenter(String name)
         throws RemoteException {
@@ -805,11 +835,9 @@ public class VCenterDB {
                 + ", vCenter " + vcenterUrl + ">.";
 
         // funny but search on the dvs does not work, we need to use rootFolder
-        InventoryNavigator inventoryNavigator = new InventoryNavigator(rootFolder);
-
         Network nw = null;
         try {
-            nw = (Network)inventoryNavigator.searchManagedEntity(
+            nw = (Network)searchManagedEntity(rootFolder, null,
                     "Network", name);
         } catch (RemoteException e ) {
             String msg = "Failed to retrieve " + description;
@@ -834,11 +862,9 @@ public class VCenterDB {
                 + ", datacenter " + dcName + ", vCenter " + vcenterUrl + ">.";
 
         // funny but search on the dvs does not work, we need to use rootFolder
-        InventoryNavigator inventoryNavigator = new InventoryNavigator(rootFolder);
-
         DistributedVirtualPortgroup dpg = null;
         try {
-            dpg = (DistributedVirtualPortgroup)inventoryNavigator.searchManagedEntity(
+            dpg = (DistributedVirtualPortgroup)searchManagedEntity(rootFolder, null,
                     "DistributedVirtualPortgroup", name);
         } catch (RemoteException e ) {
             String msg = "Failed to retrieve " + description;
@@ -862,11 +888,9 @@ public class VCenterDB {
         String description = "<host " + name 
                 + ", datacenter " + dcName + ", vCenter " + vcenterUrl +">.";
         // narrow the search to the dc level
-        InventoryNavigator inventoryNavigator = new InventoryNavigator(dc);
-
         HostSystem host = null;
         try {
-            host = (HostSystem)inventoryNavigator.searchManagedEntity(
+            host = (HostSystem)searchManagedEntity(dc, dcName,
                     "HostSystem", name);
         } catch (RemoteException e ) {
             String msg = "Failed to retrieve " + description;
@@ -890,11 +914,9 @@ public class VCenterDB {
         String description = "<virtual machine " + name + ", host " + hostName 
                 + ", datacenter " + dcName + ", vCenter " + vcenterUrl +">.";
         // narrow the search to the host level
-        InventoryNavigator inventoryNavigator = new InventoryNavigator(host);
-
         VirtualMachine vm = null;
         try {
-            vm = (VirtualMachine)inventoryNavigator.searchManagedEntity(
+            vm = (VirtualMachine)searchManagedEntity(host, hostName,
                     "VirtualMachine", name);
         } catch (RemoteException e ) {
             String msg = "Failed to retrieve " + description;
@@ -994,90 +1016,30 @@ public class VCenterDB {
         return map;
     }
 
-    private void readVirtualMachines(SortedMap<String, VirtualMachineInfo> map,
-            ManagedEntity me, 
-            Datacenter dc, String dcName) 
-                throws Exception {
-
-        ManagedEntity[] vms = new InventoryNavigator(me).searchManagedEntities("VirtualMachine");
-
-        if (vms == null || vms.length == 0) {
-            s_logger.debug("Datacenter: " + dcName + 
-                    " NO virtual machines connected");
-            return;
-        }
-        
-        String vrouterIpAddress = null;
-        HostSystem host = null;
-        // If the passed Managed Entity is at the host-level, then pass 
-        // the hostName and Contrail VM IP Address instead of finding
-        // it every time for every VM which is costly.
-        if (me instanceof HostSystem) {
-            host = (HostSystem) me;
-            String hostName = host.getName();
-            vrouterIpAddress = getVRouterVMIpFabricAddress(hostName, host, dcName); 
-        }
-
-        Hashtable[] pTables = PropertyCollectorUtil.retrieveProperties(vms, "VirtualMachine",
-                new String[] {"name",
-                "config.instanceUuid",
-                "runtime.powerState",
-                "runtime.host",
-                "guest.toolsRunningStatus",
-                "guest.net"
-                });
-        
-        for (int i=0; i < vms.length; i++) {
-            VirtualMachineInfo vmInfo = new VirtualMachineInfo(this,
-                    dc, dcName,
-                    (VirtualMachine)vms[i], pTables[i],
-                    host, vrouterIpAddress);
-                        
-            readVirtualMachineInterfaces(vmInfo);
-                        
-            // Ignore virtual machine?
-            if (vmInfo.ignore()) {
-                s_logger.debug(" Ignoring vm: " + vmInfo.getName());
-                continue;
-            }
-
-            map.put(vmInfo.getUuid(), vmInfo);
-        }
-    }
-
-    SortedMap<String, VirtualMachineInfo> readVirtualMachines() 
+    /**
+     * Reads the VMs of the datacenter. With per-host reads, the VMs of a
+     * host that cannot be read are taken from knownVMs, the VMs known
+     * before the sync.
+     */
+    SortedMap<String, VirtualMachineInfo> readVirtualMachines(
+            SortedMap<String, VirtualMachineInfo> knownVMs)
             throws IOException, Exception {
         
         SortedMap<String, VirtualMachineInfo> map =
                 new ConcurrentSkipListMap<String, VirtualMachineInfo>();
         
         /* the method below can be called in a loop to read multiple  
-         * datacenters and read VMs per hosts     
+         * datacenters, the reader accepts any inventory root
          * for (dc: datacenters)
-         * for (host: dc)
-            readVirtualMachines(map, host, dc, dcName);
+            inventoryReader.read(map, dc, dc, dcName);
          */
-
-        Folder hostsFolder = contrailDC.getHostFolder();
-        List<HostSystem> hostsList = new ArrayList<HostSystem>();
-
-        for (ManagedEntity e : hostsFolder.getChildEntity()) {
-            // This is a cluster resource. Delve deeper to 
-            // find more hosts.
-            if (e instanceof ComputeResource) {
-                ComputeResource cluster = (ComputeResource) e;
-                for(HostSystem host : cluster.getHosts()) {
-                    hostsList.add((HostSystem)host);
-                }
-            }
-
-            if (e instanceof HostSystem) {
-                hostsList.add((HostSystem)e);
-            }
-        }
-
-        for (HostSystem host : hostsList) {
-            readVirtualMachines(map, host, contrailDC, contrailDataCenterName);
+        if (VCenterMonitor.syncHostThreads > 0) {
+            new ParallelHostReader(this, VCenterMonitor.syncHostThreads,
+                    VCenterMonitor.syncHostTimeout, VCenterMonitor.syncHostRetries)
+                .read(map, contrailDC, contrailDataCenterName, knownVMs);
+        } else {
+            new VCenterInventoryReader(this).read(map, contrailDC,
+                    contrailDC, contrailDataCenterName);
         }
         
         return map;
@@ -1085,15 +1047,31 @@ public class VCenterDB {
     
     public void readVirtualMachineInterfaces(VirtualMachineInfo vmInfo) 
             throws IOException, Exception {
-        VirtualMachine vm = vmInfo.vm;
+        VirtualMachine vm = vmInfo.getVm();
         Network[] nets = vm.getNetworks();
+        String[] netNames = new String[nets.length];
+        for (int i = 0; i < nets.length; i++) {
+            netNames[i] = nets[i].getName();
+        }
+        // guest NICs are only read if needed
+        readVirtualMachineInterfaces(vmInfo, netNames,
+                vm.getConfig().getHardware().getDevice(), null);
+    }
+
+    /**
+     * Creates the interfaces of a VM from properties already read from
+     * vCenter. If nicInfos is null the guest NICs are read from the VM
+     * when needed.
+     */
+    void readVirtualMachineInterfaces(VirtualMachineInfo vmInfo,
+            String[] netNames, VirtualDevice[] devices, GuestNicInfo[] nicInfos)
+            throws IOException, Exception {
         
-        for (Network net: nets) {
+        for (String netName: netNames) {
             
             VirtualNetworkInfo vnInfo = null;
             switch (mode) {
             case VCENTER_ONLY:
-                String netName = net.getName();
                 vnInfo = MainDB.getVnByName(netName);
                 if (vnInfo == null) {
                     if (mode == Mode.VCENTER_ONLY) {
@@ -1105,7 +1083,7 @@ public class VCenterDB {
             case VCENTER_AS_COMPUTE:
                 // network is managed by Openstack or other entity
                 // UUID is used in the name because name is not unique
-                String uuid = net.getName();
+                String uuid = netName;
                 vnInfo = MainDB.getVnById(uuid);
                 if (vnInfo == null) {
                     s_logger.info("Skipping VMI in unmanaged network " + uuid);
@@ -1119,13 +1097,21 @@ public class VCenterDB {
             VirtualMachineInterfaceInfo vmiInfo = 
                     new VirtualMachineInterfaceInfo(vmInfo, vnInfo);
 
-            vmiInfo.setMacAddress(getVirtualMachineMacAddress(vm.getConfig(), vnInfo.getDpg()));
+            vmiInfo.setMacAddress(getVirtualMachineMacAddress(devices,
+                    vnInfo.getDpgKey(), vnInfo.getName()));
             
             if (mode != Mode.VCENTER_AS_COMPUTE && vnInfo.getExternalIpam() 
-                && vmInfo.getToolsRunningStatus().equals(VirtualMachineToolsRunningStatus.guestToolsRunning)) {
+                && VirtualMachineToolsRunningStatus.guestToolsRunning.toString().equals(
+                        vmInfo.getToolsRunningStatus())) {
                 // static IP Address & vmWare tools installed
                 // see if we can read it from Guest Nic Info
-                String ipAddr = getVirtualMachineIpAddress(vm, vnInfo.getName());
+                String ipAddr;
+                if (nicInfos != null) {
+                    ipAddr = getVirtualMachineIpAddress(nicInfos, vnInfo.getName(),
+                            vmInfo.getName(), vmiInfo.getMacAddress());
+                } else {
+                    ipAddr = getVirtualMachineIpAddress(vmInfo.getVm(), vnInfo.getName());
+                }
                 vmiInfo.setIpAddress(ipAddr);
                 VCenterNotify.watchVm(vmiInfo.vmInfo);
             }
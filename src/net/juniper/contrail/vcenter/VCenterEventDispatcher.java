@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+/**
+ * Runs the handling of vCenter updates on a pool of workers.
+ *
+ * Every piece of work carries a key (the MOR of the VM or port group it
+ * touches). All work with the same key lands on the same worker queue,
+ * so per-object ordering is kept while unrelated objects are handled
+ * in parallel. Queues are bounded: when a queue is full the receiver
+ * blocks in dispatch() until the worker catches up.
+ */
+public class VCenterEventDispatcher {
+    private static final Logger s_logger =
+            Logger.getLogger(VCenterEventDispatcher.class);
+
+    private final Worker[] workers;
+    private final int queueSize;
+    private volatile boolean running = true;
+    private volatile boolean backpressure;
+
+    // enqueued plus in-progress tasks
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object idleLock = new Object();
+
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong backpressureCount = new AtomicLong();
+    private final LatencyStats queueLatency = new LatencyStats();
+    private final LatencyStats handleLatency = new LatencyStats();
+
+    private static class Task {
+        final String key;
+        final Runnable work;
+        final long enqueueTime;
+
+        Task(String key, Runnable work) {
+            this.key = key;
+            this.work = work;
+            this.enqueueTime = System.currentTimeMillis();
+        }
+    }
+
+    private class Worker implements Runnable {
+        final BlockingQueue<Task> queue;
+        Thread thread;
+
+        Worker(int queueSize) {
+            queue = new ArrayBlockingQueue<Task>(queueSize);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Task task;
+                try {
+                    task = queue.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (task == null) {
+                    continue;
+                }
+                long start = System.currentTimeMillis();
+                queueLatency.record(start - task.enqueueTime);
+                try {
+                    task.work.run();
+                } catch (Throwable e) {
+                    failed.incrementAndGet();
+                    s_logger.error("Unhandled error processing update for "
+                            + task.key + ": " + e);
+                }
+                handleLatency.record(System.currentTimeMillis() - start);
+                processed.incrementAndGet();
+
+                if (pending.decrementAndGet() == 0) {
+                    synchronized (idleLock) {
+                        idleLock.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    public VCenterEventDispatcher(int workerCount, int queueSize) {
+        if (workerCount < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("workers " + workerCount
+                    + ", queue size " + queueSize);
+        }
+        this.queueSize = queueSize;
+        workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(queueSize);
+            workers[i].thread = new Thread(workers[i], "vcenter-event-worker-" + i);
+            workers[i].thread.setDaemon(true);
+            workers[i].thread.start();
+        }
+        s_logger.info("Started " + workerCount + " event workers, queue size "
+                + queueSize);
+    }
+
+    private Worker getWorker(String key) {
+        if (key == null) {
+            return workers[0];
+        }
+        return workers[(key.hashCode() & 0x7fffffff) % workers.length];
+    }
+
+    public void dispatch(String key, Runnable work) throws InterruptedException {
+        Task task = new Task(key, work);
+        Worker worker = getWorker(key);
+
+        pending.incrementAndGet();
+        dispatched.incrementAndGet();
+        if (!worker.queue.offer(task)) {
+            backpressure = true;
+            backpressureCount.incrementAndGet();
+            s_logger.warn("Event queue of " + worker.thread.getName()
+                    + " full, waiting for the workers to catch up");
+            try {
+                worker.queue.put(task);
+            } catch (InterruptedException e) {
+                pending.decrementAndGet();
+                throw e;
+            } finally {
+                backpressure = false;
+            }
+        }
+    }
+
+    /**
+     * Blocks until every dispatched task has completed. Used before
+     * a full sync or before handling updates that must not overlap
+     * with per-object work, such as port group changes.
+     */
+    public void awaitIdle() throws InterruptedException {
+        synchronized (idleLock) {
+            while (pending.get() > 0) {
+                idleLock.wait(1000);
+            }
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        for (Worker worker: workers) {
+            worker.thread.interrupt();
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    public int getQueueCapacity() {
+        return queueSize * workers.length;
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Worker worker: workers) {
+            depth += worker.queue.size();
+        }
+        return depth;
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    public boolean getBackpressure() {
+        return backpressure;
+    }
+
+    public long getBackpressureCount() {
+        return backpressureCount.get();
+    }
+
+    public long getDispatched() {
+        return dispatched.get();
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public LatencyStats getQueueLatency() {
+        return queueLatency;
+    }
+
+    public LatencyStats getHandleLatency() {
+        return handleLatency;
+    }
+}
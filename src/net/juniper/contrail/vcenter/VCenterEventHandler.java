@@ -53,10 +53,8 @@ public class VCenterEventHandler {
                 + "\n----------\n");
     }
 
-    public void handle() throws Exception {
-        printEvent();
-       
-        if (event instanceof VmBeingCreatedEvent
+    static boolean isVmUpdateEvent(Event event) {
+        return event instanceof VmBeingCreatedEvent
             || event instanceof VmCreatedEvent
             || event instanceof VmClonedEvent
             || event instanceof VmCloneEvent
@@ -67,9 +65,19 @@ public class VCenterEventHandler {
             || event instanceof VmMacAssignedEvent
             || event instanceof VmMigratedEvent
             || event instanceof VmPoweredOnEvent
-            || event instanceof VmPoweredOffEvent) {
+            || event instanceof VmPoweredOffEvent;
+    }
+
+    static boolean isVmDeleteEvent(Event event) {
+        return event instanceof VmRemovedEvent;
+    }
+
+    public void handle() throws Exception {
+        printEvent();
+       
+        if (isVmUpdateEvent(event)) {
             handleVmUpdateEvent();
-        } else if (event instanceof VmRemovedEvent) {
+        } else if (isVmDeleteEvent(event)) {
             handleVmDeleteEvent();
         } else if (event instanceof DVPortgroupCreatedEvent
                 || event instanceof DVPortgroupReconfiguredEvent
@@ -104,7 +112,13 @@ public class VCenterEventHandler {
     }
 
     private void handleVmDeleteEvent() throws Exception {
-        VirtualMachineInfo vmInfo = MainDB.getVmByName(event.getVm().getName());
+        VirtualMachineInfo vmInfo = null;
+        if (event.getVm().getVm() != null) {
+            vmInfo = MainDB.getVmByMor(event.getVm().getVm().getVal());
+        }
+        if (vmInfo == null) {
+            vmInfo = MainDB.getVmByName(event.getVm().getName());
+        }
         
         if (vmInfo == null) {
             return;
@@ -118,7 +132,13 @@ public class VCenterEventHandler {
         VirtualNetworkInfo newVnInfo = 
                 new VirtualNetworkInfo(event, vcenterDB);
         
-        VirtualNetworkInfo oldVnInfo = MainDB.getVnByName(newVnInfo.getName());
+        VirtualNetworkInfo oldVnInfo = null;
+        if (newVnInfo.dpg != null) {
+            oldVnInfo = MainDB.getVnByMor(newVnInfo.dpg.getMOR().getVal());
+        }
+        if (oldVnInfo == null) {
+            oldVnInfo = MainDB.getVnByName(newVnInfo.getName());
+        }
         
         if (oldVnInfo != null) {
             oldVnInfo.update(newVnInfo, vncDB);
@@ -130,7 +150,13 @@ public class VCenterEventHandler {
 
     private void handleNetworkDeleteEvent() throws Exception {
         
-        VirtualNetworkInfo vnInfo = MainDB.getVnByName(event.getNet().getName());
+        VirtualNetworkInfo vnInfo = null;
+        if (event.getNet().getNetwork() != null) {
+            vnInfo = MainDB.getVnByMor(event.getNet().getNetwork().getVal());
+        }
+        if (vnInfo == null) {
+            vnInfo = MainDB.getVnByName(event.getNet().getName());
+        }
         
         if (vnInfo == null) {
             return;
@@ -0,0 +1,338 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import org.apache.log4j.Logger;
+import com.vmware.vim25.DynamicProperty;
+import com.vmware.vim25.GuestNicInfo;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.ObjectContent;
+import com.vmware.vim25.ObjectSpec;
+import com.vmware.vim25.PropertyFilterSpec;
+import com.vmware.vim25.PropertySpec;
+import com.vmware.vim25.RetrieveOptions;
+import com.vmware.vim25.RetrieveResult;
+import com.vmware.vim25.SelectionSpec;
+import com.vmware.vim25.TraversalSpec;
+import com.vmware.vim25.VirtualDevice;
+import com.vmware.vim25.mo.Datacenter;
+import com.vmware.vim25.mo.HostSystem;
+import com.vmware.vim25.mo.ManagedEntity;
+import com.vmware.vim25.mo.PropertyCollector;
+import com.vmware.vim25.mo.VirtualMachine;
+import com.vmware.vim25.mo.util.PropertyCollectorUtil;
+import com.vmware.vim25.mo.ServerConnection;
+
+/**
+ * Reads all the VMs below an inventory root (datacenter, folder, cluster
+ * or host) together with their hosts and networks in one paged
+ * RetrievePropertiesEx call, and builds the VirtualMachineInfo and
+ * VirtualMachineInterfaceInfo objects from that result alone.
+ */
+public class VCenterInventoryReader {
+    private static final Logger s_logger =
+            Logger.getLogger(VCenterInventoryReader.class);
+
+    static final int PAGE_SIZE = 500;
+
+    static final String[] vmProps = {
+        "name",
+        "config.instanceUuid",
+        "config.hardware.device",
+        "runtime.powerState",
+        "runtime.host",
+        "guest.toolsRunningStatus",
+        "guest.net",
+        "network"
+    };
+    static final String[] hostProps = { "name", "runtime.inMaintenanceMode" };
+    static final String[] networkProps = { "name" };
+
+    private final VCenterDB vcenterDB;
+
+    // results of the last read, keyed by MOR value
+    private final Map<String, Hashtable> vms = new LinkedHashMap<String, Hashtable>();
+    private final Map<String, Hashtable> hosts = new HashMap<String, Hashtable>();
+    private final Map<String, String> networkNames = new HashMap<String, String>();
+    private int pages;
+
+    public VCenterInventoryReader(VCenterDB vcenterDB) {
+        this.vcenterDB = vcenterDB;
+    }
+
+    public void read(SortedMap<String, VirtualMachineInfo> map,
+            ManagedEntity root, Datacenter dc, String dcName)
+                    throws Exception {
+        long start = System.currentTimeMillis();
+        retrieve(root);
+
+        if (vms.isEmpty()) {
+            s_logger.debug("Datacenter: " + dcName + " " + root.getMOR().getVal()
+                    + " NO virtual machines connected");
+            return;
+        }
+
+        ServerConnection conn = root.getServerConnection();
+        Map<String, String> vrouterIpAddresses = readVRouterIpAddresses(conn);
+
+        for (Map.Entry<String, Hashtable> entry: vms.entrySet()) {
+            Hashtable pTable = entry.getValue();
+            if (pTable.get("config.instanceUuid") == null) {
+                // VM being created, the event will bring it in
+                continue;
+            }
+            ManagedObjectReference vmMor = new ManagedObjectReference();
+            vmMor.setType("VirtualMachine");
+            vmMor.setVal(entry.getKey());
+            VirtualMachine vm = new VirtualMachine(conn, vmMor);
+
+            ManagedObjectReference hostMor =
+                    (ManagedObjectReference) pTable.get("runtime.host");
+            if (hostMor == null) {
+                s_logger.debug(" Skipping vm without host: " + pTable.get("name"));
+                continue;
+            }
+            HostSystem host = new HostSystem(conn, hostMor);
+            String hostName = null;
+            Hashtable hostTable = hosts.get(hostMor.getVal());
+            if (hostTable != null) {
+                hostName = (String) hostTable.get("name");
+            }
+            String vrouterIpAddress = vrouterIpAddresses.get(hostMor.getVal());
+
+            VirtualMachineInfo vmInfo = new VirtualMachineInfo(vcenterDB,
+                    dc, dcName, vm, pTable, host, hostName, vrouterIpAddress);
+
+            vcenterDB.readVirtualMachineInterfaces(vmInfo,
+                    getNetworkNames(pTable),
+                    (VirtualDevice[]) pTable.get("config.hardware.device"),
+                    getGuestNics(pTable));
+
+            // Ignore virtual machine?
+            if (vmInfo.ignore()) {
+                s_logger.debug(" Ignoring vm: " + vmInfo.getName());
+                continue;
+            }
+
+            map.put(vmInfo.getUuid(), vmInfo);
+        }
+        s_logger.info("Read " + vms.size() + " VMs on " + hosts.size()
+                + " hosts below " + root.getMOR().getVal() + " in " + pages
+                + " pages, " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Reads only the hosts below the root, MOR value to host name.
+     */
+    public Map<String, String> readHosts(ManagedEntity root) throws Exception {
+        retrieve(root, false);
+        Map<String, String> hostNames = new HashMap<String, String>();
+        for (Map.Entry<String, Hashtable> entry: hosts.entrySet()) {
+            hostNames.put(entry.getKey(), (String) entry.getValue().get("name"));
+        }
+        return hostNames;
+    }
+
+    public int getVmCount() {
+        return vms.size();
+    }
+
+    private void retrieve(ManagedEntity root) throws Exception {
+        retrieve(root, true);
+    }
+
+    private void retrieve(ManagedEntity root, boolean withVms) throws Exception {
+        vms.clear();
+        hosts.clear();
+        networkNames.clear();
+        pages = 0;
+
+        PropertyCollector propColl =
+                vcenterDB.getServiceInstance().getPropertyCollector();
+        PropertyFilterSpec[] specs =
+                new PropertyFilterSpec[] { createFilterSpec(root.getMOR(), withVms) };
+        RetrieveOptions options = new RetrieveOptions();
+        options.setMaxObjects(PAGE_SIZE);
+
+        RetrieveResult result = propColl.retrievePropertiesEx(specs, options);
+        while (result != null) {
+            pages++;
+            collect(result.getObjects());
+            String token = result.getToken();
+            if (token == null) {
+                break;
+            }
+            result = propColl.continueRetrievePropertiesEx(token);
+        }
+    }
+
+    private void collect(ObjectContent[] objects) {
+        if (objects == null) {
+            return;
+        }
+        for (ObjectContent oc: objects) {
+            Hashtable pTable = new Hashtable();
+            DynamicProperty[] props = oc.getPropSet();
+            if (props != null) {
+                for (DynamicProperty prop: props) {
+                    Object value = PropertyCollectorUtil.convertProperty(prop.getVal());
+                    if (value != null) {
+                        pTable.put(prop.getName(), value);
+                    }
+                }
+            }
+            String type = oc.getObj().getType();
+            String key = oc.getObj().getVal();
+            if (type.equals("VirtualMachine")) {
+                vms.put(key, pTable);
+            } else if (type.equals("HostSystem")) {
+                hosts.put(key, pTable);
+            } else if (pTable.get("name") != null) {
+                // Network, DistributedVirtualPortgroup
+                networkNames.put(key, (String) pTable.get("name"));
+            }
+        }
+    }
+
+    /*
+     * Host -> vRouter address, from the ESXi to vRouter map when possible.
+     * Hosts that are not in the map are looked up once each, not per VM.
+     */
+    private Map<String, String> readVRouterIpAddresses(ServerConnection conn)
+            throws Exception {
+        Map<String, String> vrouterIpAddresses = new HashMap<String, String>();
+        for (Map.Entry<String, Hashtable> entry: hosts.entrySet()) {
+            String hostName = (String) entry.getValue().get("name");
+            if (hostName == null) {
+                continue;
+            }
+            String vrouterIpAddress = vcenterDB.esxiToVRouterIpMap.get(hostName);
+            if (vrouterIpAddress != null) {
+                Boolean maintenance =
+                        (Boolean) entry.getValue().get("runtime.inMaintenanceMode");
+                if (Boolean.TRUE.equals(maintenance)) {
+                    VCenterDB.vRouterActiveMap.put(vrouterIpAddress, false);
+                }
+            } else {
+                ManagedObjectReference hostMor = new ManagedObjectReference();
+                hostMor.setType("HostSystem");
+                hostMor.setVal(entry.getKey());
+                vrouterIpAddress = vcenterDB.getVRouterVMIpFabricAddress(hostName,
+                        new HostSystem(conn, hostMor),
+                        VirtualMachineInfo.contrailVRouterVmNamePrefix);
+            }
+            if (vrouterIpAddress != null) {
+                vrouterIpAddresses.put(entry.getKey(), vrouterIpAddress);
+            }
+        }
+        return vrouterIpAddresses;
+    }
+
+    private String[] getNetworkNames(Hashtable pTable) {
+        ManagedObjectReference[] nets = (ManagedObjectReference[]) pTable.get("network");
+        if (nets == null) {
+            return new String[0];
+        }
+        String[] names = new String[nets.length];
+        int n = 0;
+        for (ManagedObjectReference net: nets) {
+            String name = networkNames.get(net.getVal());
+            if (name != null) {
+                names[n++] = name;
+            }
+        }
+        if (n < names.length) {
+            String[] found = new String[n];
+            System.arraycopy(names, 0, found, 0, n);
+            return found;
+        }
+        return names;
+    }
+
+    private GuestNicInfo[] getGuestNics(Hashtable pTable) {
+        GuestNicInfo[] nics = (GuestNicInfo[]) pTable.get("guest.net");
+        if (nics == null) {
+            // read, but not reported by the tools
+            return new GuestNicInfo[0];
+        }
+        return nics;
+    }
+
+    /*
+     * Datacenter -> hostFolder -> (Folder ->)* ComputeResource -> HostSystem
+     * -> VirtualMachine -> Network. Starting from a folder, cluster or host
+     * simply enters the chain further down. Without VMs the walk stops
+     * at the hosts.
+     */
+    static PropertyFilterSpec createFilterSpec(ManagedObjectReference root,
+            boolean withVms) {
+        TraversalSpec vmToNetwork = createTraversalSpec("vmToNetwork",
+                "VirtualMachine", "network", new SelectionSpec[0]);
+        TraversalSpec hostToVm = createTraversalSpec("hostToVm",
+                "HostSystem", "vm", new SelectionSpec[] { vmToNetwork });
+        SelectionSpec[] fromHost = withVms ?
+                new SelectionSpec[] { hostToVm } : new SelectionSpec[0];
+
+        TraversalSpec crToHost = createTraversalSpec("crToHost",
+                "ComputeResource", "host", fromHost);
+
+        SelectionSpec visitFolders = new SelectionSpec();
+        visitFolders.setName("visitFolders");
+        TraversalSpec folderToChild = createTraversalSpec("visitFolders",
+                "Folder", "childEntity", concat(
+                        new SelectionSpec[] { visitFolders, crToHost }, fromHost));
+        TraversalSpec dcToHostFolder = createTraversalSpec("dcToHostFolder",
+                "Datacenter", "hostFolder", new SelectionSpec[] { folderToChild });
+
+        ObjectSpec os = new ObjectSpec();
+        os.setObj(root);
+        os.setSkip(Boolean.FALSE);
+        os.setSelectSet(concat(new SelectionSpec[] {
+                dcToHostFolder, folderToChild, crToHost }, fromHost));
+
+        PropertySpec vmSpec = new PropertySpec();
+        vmSpec.setType("VirtualMachine");
+        vmSpec.setPathSet(vmProps);
+        PropertySpec hostSpec = new PropertySpec();
+        hostSpec.setType("HostSystem");
+        hostSpec.setPathSet(hostProps);
+        // also matches DistributedVirtualPortgroup
+        PropertySpec networkSpec = new PropertySpec();
+        networkSpec.setType("Network");
+        networkSpec.setPathSet(networkProps);
+
+        PropertyFilterSpec pfs = new PropertyFilterSpec();
+        pfs.setObjectSet(new ObjectSpec[] { os });
+        if (withVms) {
+            pfs.setPropSet(new PropertySpec[] { vmSpec, hostSpec, networkSpec });
+        } else {
+            pfs.setPropSet(new PropertySpec[] { hostSpec });
+        }
+        return pfs;
+    }
+
+    private static SelectionSpec[] concat(SelectionSpec[] a, SelectionSpec[] b) {
+        SelectionSpec[] all = new SelectionSpec[a.length + b.length];
+        System.arraycopy(a, 0, all, 0, a.length);
+        System.arraycopy(b, 0, all, a.length, b.length);
+        return all;
+    }
+
+    private static TraversalSpec createTraversalSpec(String name, String type,
+            String path, SelectionSpec[] selectSet) {
+        TraversalSpec ts = new TraversalSpec();
+        ts.setName(name);
+        ts.setType(type);
+        ts.setPath(path);
+        ts.setSkip(Boolean.FALSE);
+        ts.setSelectSet(selectSet);
+        return ts;
+    }
+}
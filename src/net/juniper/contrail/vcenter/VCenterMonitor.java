@@ -78,6 +78,52 @@ public class VCenterMonitor {
     private static String _zookeeperId        = "node-vcenter-plugin";
 
     static volatile Mode mode  = Mode.VCENTER_ONLY;
+
+    // vCenter update handling: number of workers and per-worker queue size
+    static volatile int eventWorkers   = 4;
+    static volatile int eventQueueSize = 1000;
+    // window in ms for merging VM update bursts, 0 disables coalescing
+    static volatile long eventCoalesceWindow = 500;
+    // retries of a failed object update before falling back to a full sync,
+    // and the number of objects failing at once that forces one
+    static volatile int eventRetries = 5;
+    static volatile int eventRetryThreshold = 100;
+    // threads sending AddPort/DeletePort, shared by the per vRouter queues
+    static volatile int vrouterPortThreads = 8;
+    // ports per second sent to a vRouter agent when it reconnects
+    static volatile int vrouterReplayRate = 50;
+    // consecutive API server connection failures opening the circuit
+    // breaker, and objects held until it closes before a full sync
+    static volatile int apiBreakerThreshold = 3;
+    static volatile int apiHoldLimit = 1000;
+    // API server writes of a sync run on this many threads,
+    // with at most vncWriteInFlight of them queued or running
+    static volatile int vncWriteThreads = 8;
+    static volatile int vncWriteInFlight = 64;
+    // children of a deleted network or VM are deleted on this many threads
+    static volatile int vncDeleteThreads = 8;
+    // a sync reads the API server objects this many at a time, and
+    // merges this many key ranges in parallel
+    static volatile int vncReadPageSize = 256;
+    static volatile int syncPartitions = 4;
+    // a sync gives up on its writes after this many API server
+    // timeouts per round of writes of the write-behind threads
+    static volatile int syncDrainTimeouts = 4;
+    // vRouter keepalives run in parallel, each with a deadline in ms
+    static volatile int vrouterKeepAliveThreads = 16;
+    static volatile long vrouterKeepAliveTimeout = 5000;
+
+    // sync: 0 reads the datacenter in one call, otherwise the number
+    // of hosts read in parallel, each with a timeout in ms and retries
+    static volatile int syncHostThreads  = 0;
+    static volatile long syncHostTimeout = 60000;
+    static volatile int syncHostRetries  = 1;
+
+    // name -> MOR cache for the vCenter inventory searches
+    static volatile int vcenterCacheSize = 4096;
+    // VMs keep MOR values instead of vijava objects and drop their
+    // API server objects once written, they are read again when needed
+    static volatile boolean compactRecords = false;
     
     private static volatile MasterSelection zk_ms;
     public static boolean isZookeeperLeader() {
@@ -114,6 +160,113 @@ public class VCenterMonitor {
                     _apiServerPort = Integer.parseInt(portStr);
                 }
 
+                String workersStr = configProps.getProperty("event.workers");
+                if (workersStr != null && workersStr.length() > 0) {
+                    eventWorkers = Integer.parseInt(workersStr);
+                }
+                String queueSizeStr = configProps.getProperty("event.queue.size");
+                if (queueSizeStr != null && queueSizeStr.length() > 0) {
+                    eventQueueSize = Integer.parseInt(queueSizeStr);
+                }
+
+                String windowStr = configProps.getProperty("event.coalesce.window");
+                if (windowStr != null && windowStr.length() > 0) {
+                    eventCoalesceWindow = Long.parseLong(windowStr);
+                }
+
+                String retriesStr = configProps.getProperty("event.retries");
+                if (retriesStr != null && retriesStr.length() > 0) {
+                    eventRetries = Integer.parseInt(retriesStr);
+                }
+
+                String retryThresholdStr = configProps.getProperty("event.retry.threshold");
+                if (retryThresholdStr != null && retryThresholdStr.length() > 0) {
+                    eventRetryThreshold = Integer.parseInt(retryThresholdStr);
+                }
+
+                String portThreadsStr = configProps.getProperty("vrouter.port.threads");
+                if (portThreadsStr != null && portThreadsStr.length() > 0) {
+                    vrouterPortThreads = Integer.parseInt(portThreadsStr);
+                }
+
+                String replayRateStr = configProps.getProperty("vrouter.replay.rate");
+                if (replayRateStr != null && replayRateStr.length() > 0) {
+                    vrouterReplayRate = Integer.parseInt(replayRateStr);
+                }
+
+                String breakerThresholdStr = configProps.getProperty("api.breaker.threshold");
+                if (breakerThresholdStr != null && breakerThresholdStr.length() > 0) {
+                    apiBreakerThreshold = Integer.parseInt(breakerThresholdStr);
+                }
+
+                String holdLimitStr = configProps.getProperty("api.hold.limit");
+                if (holdLimitStr != null && holdLimitStr.length() > 0) {
+                    apiHoldLimit = Integer.parseInt(holdLimitStr);
+                }
+
+                String vncWriteThreadsStr = configProps.getProperty("vnc.write.threads");
+                if (vncWriteThreadsStr != null && vncWriteThreadsStr.length() > 0) {
+                    vncWriteThreads = Integer.parseInt(vncWriteThreadsStr);
+                }
+
+                String vncWriteInFlightStr = configProps.getProperty("vnc.write.inflight");
+                if (vncWriteInFlightStr != null && vncWriteInFlightStr.length() > 0) {
+                    vncWriteInFlight = Integer.parseInt(vncWriteInFlightStr);
+                }
+
+                String vncDeleteThreadsStr = configProps.getProperty("vnc.delete.threads");
+                if (vncDeleteThreadsStr != null && vncDeleteThreadsStr.length() > 0) {
+                    vncDeleteThreads = Integer.parseInt(vncDeleteThreadsStr);
+                }
+
+                String vncReadPageStr = configProps.getProperty("vnc.read.page");
+                if (vncReadPageStr != null && vncReadPageStr.length() > 0) {
+                    vncReadPageSize = Integer.parseInt(vncReadPageStr);
+                }
+
+                String partitionsStr = configProps.getProperty("sync.partitions");
+                if (partitionsStr != null && partitionsStr.length() > 0) {
+                    syncPartitions = Integer.parseInt(partitionsStr);
+                }
+
+                String drainTimeoutsStr = configProps.getProperty("sync.drain.timeouts");
+                if (drainTimeoutsStr != null && drainTimeoutsStr.length() > 0) {
+                    syncDrainTimeouts = Integer.parseInt(drainTimeoutsStr);
+                }
+
+                String compactStr = configProps.getProperty("records.compact");
+                if (compactStr != null && compactStr.length() > 0) {
+                    compactRecords = Boolean.parseBoolean(compactStr);
+                }
+
+                String keepAliveThreadsStr = configProps.getProperty("vrouter.keepalive.threads");
+                if (keepAliveThreadsStr != null && keepAliveThreadsStr.length() > 0) {
+                    vrouterKeepAliveThreads = Integer.parseInt(keepAliveThreadsStr);
+                }
+
+                String keepAliveTimeoutStr = configProps.getProperty("vrouter.keepalive.timeout");
+                if (keepAliveTimeoutStr != null && keepAliveTimeoutStr.length() > 0) {
+                    vrouterKeepAliveTimeout = Long.parseLong(keepAliveTimeoutStr);
+                }
+
+                String hostThreadsStr = configProps.getProperty("sync.host.threads");
+                if (hostThreadsStr != null && hostThreadsStr.length() > 0) {
+                    syncHostThreads = Integer.parseInt(hostThreadsStr);
+                }
+                String hostTimeoutStr = configProps.getProperty("sync.host.timeout");
+                if (hostTimeoutStr != null && hostTimeoutStr.length() > 0) {
+                    syncHostTimeout = Long.parseLong(hostTimeoutStr);
+                }
+                String hostRetriesStr = configProps.getProperty("sync.host.retries");
+                if (hostRetriesStr != null && hostRetriesStr.length() > 0) {
+                    syncHostRetries = Integer.parseInt(hostRetriesStr);
+                }
+
+                String cacheSizeStr = configProps.getProperty("vcenter.cache.size");
+                if (cacheSizeStr != null && cacheSizeStr.length() > 0) {
+                    vcenterCacheSize = Integer.parseInt(cacheSizeStr);
+                }
+
                 String _mode = configProps.getProperty("mode");
                 
                 if (_mode != null && _mode.equals("vcenter-as-compute")) {
@@ -6,6 +6,7 @@ package net.juniper.contrail.vcenter;
 import java.net.URL;
 import java.net.MalformedURLException;
 import java.rmi.RemoteException;
+import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -21,6 +22,7 @@ import com.vmware.vim25.ArrayOfGuestNicInfo;
 import com.vmware.vim25.Event;
 import com.vmware.vim25.EventFilterSpec;
 import com.vmware.vim25.EventFilterSpecByEntity;
+import com.vmware.vim25.EventFilterSpecByTime;
 import com.vmware.vim25.EventFilterSpecRecursionOption;
 import com.vmware.vim25.ObjectSpec;
 import com.vmware.vim25.ObjectUpdate;
@@ -32,6 +34,7 @@ import com.vmware.vim25.PropertyFilterUpdate;
 import com.vmware.vim25.PropertySpec;
 import com.vmware.vim25.RequestCanceled;
 import com.vmware.vim25.SelectionSpec;
+import com.vmware.vim25.TraversalSpec;
 import com.vmware.vim25.UpdateSet;
 import com.vmware.vim25.VirtualMachineToolsRunningStatus;
 import com.vmware.vim25.VmEvent;
@@ -45,15 +48,19 @@ import com.vmware.vim25.DVPortgroupCreatedEvent;
 import com.vmware.vim25.DVPortgroupDestroyedEvent;
 import com.vmware.vim25.DVPortgroupReconfiguredEvent;
 import com.vmware.vim25.mo.Datacenter;
+import com.vmware.vim25.mo.DistributedVirtualPortgroup;
 import com.vmware.vim25.mo.EventHistoryCollector;
 import com.vmware.vim25.mo.EventManager;
 import com.vmware.vim25.mo.Folder;
 import com.vmware.vim25.mo.InventoryNavigator;
+import com.vmware.vim25.mo.ListView;
 import com.vmware.vim25.mo.ManagedEntity;
 import com.vmware.vim25.mo.ManagedObject;
 import com.vmware.vim25.mo.PropertyCollector;
 import com.vmware.vim25.mo.PropertyFilter;
+import com.vmware.vim25.mo.ServerConnection;
 import com.vmware.vim25.mo.ServiceInstance;
+import com.vmware.vim25.mo.ViewManager;
 
 import net.juniper.contrail.watchdog.TaskWatchDog;
 
@@ -94,12 +101,26 @@ public class VCenterNotify implements Runnable
     private final static String[] ipPoolProps = { "summary.ipPoolId" };
     private static PropertyFilter propFilter;
     private static PropertyCollector propColl;
-    private static Map<String, VirtualMachineInfo> watchedVMs 
-                = new HashMap<String, VirtualMachineInfo>();
-    private static Map<String, VirtualNetworkInfo> watchedVNs 
-                = new HashMap<String, VirtualNetworkInfo>();
-    private static Map<ManagedObject, PropertyFilter> watchedFilters
-                = new HashMap<ManagedObject, PropertyFilter>();
+    private static ConcurrentMap<String, VirtualMachineInfo> watchedVMs 
+                = new ConcurrentHashMap<String, VirtualMachineInfo>();
+    private static ConcurrentMap<String, VirtualNetworkInfo> watchedVNs 
+                = new ConcurrentHashMap<String, VirtualNetworkInfo>();
+    private static final Object watchLock = new Object();
+    private static ListView vmGuestView;
+    private static ListView vnIpPoolView;
+    private static PropertyFilter vmGuestFilter;
+    private static PropertyFilter vnIpPoolFilter;
+    private static volatile VCenterEventDispatcher dispatcher;
+    private static volatile VmEventCoalescer coalescer;
+    private static volatile EventRetryQueue retryQueue;
+
+    // last event handled, where a replay starts after a reconnect
+    private static final Object lastEventLock = new Object();
+    private static int lastEventKey;
+    private static int lastEventChainId;
+    private static Calendar lastEventTime;
+    private static volatile long eventsReplayed;
+    static final int REPLAY_PAGE_SIZE = 100;
     
     private static Boolean shouldRun;
     private static Thread watchUpdates = null;
@@ -193,97 +214,200 @@ public class VCenterNotify implements Runnable
         return AddPortSyncAtPluginStart;
     }
 
-    private void cleanupEventFilters() {
-        for (Map.Entry<ManagedObject, PropertyFilter> entry: watchedFilters.entrySet())
+    /**
+     * A full sync watches again what it finds, the watched objects are
+     * forgotten.
+     */
+    private static void cleanupEventFilters() {
+        cleanupEventFilters(true);
+    }
+
+    /*
+     * After a reconnect the watched objects are kept, so that a replay
+     * of the missed events can watch them again on the new session.
+     */
+    private static void cleanupEventFilters(boolean forgetWatched) {
+        synchronized (watchLock) {
+            destroyWatchFilter(vmGuestFilter, vmGuestView);
+            destroyWatchFilter(vnIpPoolFilter, vnIpPoolView);
+            vmGuestFilter = null;
+            vmGuestView = null;
+            vnIpPoolFilter = null;
+            vnIpPoolView = null;
+            if (forgetWatched) {
+                watchedVMs.clear();
+                watchedVNs.clear();
+            }
+        }
+    }
+
+    private static void destroyWatchFilter(PropertyFilter pf, ListView view) {
         try 
         {
-            PropertyFilter pf = entry.getValue();
-            pf.destroyPropertyFilter();
+            if (pf != null) {
+                pf.destroyPropertyFilter();
+            }
+            if (view != null) {
+                view.destroyView();
+            }
         } catch (RemoteException e) 
         {
             e.printStackTrace();
         }
-        watchedFilters.clear();
-        watchedVMs.clear();
-        watchedVNs.clear();
+    }
+
+    /**
+     * Guest properties of all watched VMs and the IP pool of all watched
+     * port groups are reported by two filters, each over a ListView.
+     * Watching an object is then a membership change of the view instead
+     * of a filter of its own. The views are created after the sync with
+     * everything recorded during the sync, in one call each.
+     */
+    private static void createWatchFilters() throws RemoteException {
+        if (VCenterMonitor.mode == Mode.VCENTER_AS_COMPUTE) {
+            return;
+        }
+        synchronized (watchLock) {
+            ViewManager viewManager =
+                    vcenterDB.getServiceInstance().getViewManager();
+            // objects kept across a reconnect belong to the old session
+            ServerConnection sc = vcenterDB.getServiceInstance().getServerConnection();
+
+            ManagedObject[] vms = new ManagedObject[watchedVMs.size()];
+            int i = 0;
+            for (VirtualMachineInfo vmInfo: watchedVMs.values()) {
+                if (vmInfo.vm != null && vmInfo.vm.getServerConnection() != sc) {
+                    vmInfo.vm = new com.vmware.vim25.mo.VirtualMachine(sc,
+                            vmInfo.vm.getMOR());
+                }
+                vms[i++] = vmInfo.getVm();
+            }
+            vmGuestView = viewManager.createListView(vms);
+            vmGuestFilter = propColl.createFilter(
+                    createViewFilterSpec(vmGuestView, "VirtualMachine", guestProps),
+                    true);
+
+            ManagedObject[] dpgs = new ManagedObject[watchedVNs.size()];
+            i = 0;
+            for (VirtualNetworkInfo vnInfo: watchedVNs.values()) {
+                if (vnInfo.dpg.getServerConnection() != sc) {
+                    vnInfo.dpg = new DistributedVirtualPortgroup(sc, vnInfo.dpg.getMOR());
+                }
+                dpgs[i++] = vnInfo.dpg;
+            }
+            vnIpPoolView = viewManager.createListView(dpgs);
+            vnIpPoolFilter = propColl.createFilter(
+                    createViewFilterSpec(vnIpPoolView, "DistributedVirtualPortgroup",
+                            ipPoolProps),
+                    true);
+            s_logger.info("Watching guest properties of " + vms.length
+                    + " VMs and IP pools of " + dpgs.length + " port groups");
+        }
+    }
+
+    private static PropertyFilterSpec createViewFilterSpec(ListView view,
+            String type, String[] propNames) {
+        TraversalSpec traverseView = new TraversalSpec();
+        traverseView.setName("traverseView");
+        traverseView.setType("ListView");
+        traverseView.setPath("view");
+        traverseView.setSkip(Boolean.FALSE);
+
+        ObjectSpec os = new ObjectSpec();
+        os.setObj(view.getMOR());
+        os.setSkip(Boolean.TRUE);
+        os.setSelectSet(new SelectionSpec[] { traverseView });
+
+        PropertySpec ps = new PropertySpec();
+        ps.setType(type);
+        ps.setPathSet(propNames);
+
+        PropertyFilterSpec pfs = new PropertyFilterSpec();
+        pfs.setObjectSet(new ObjectSpec[] { os });
+        pfs.setPropSet(new PropertySpec[] { ps });
+        return pfs;
     }
 
     public static void watchVm(VirtualMachineInfo vmInfo) {
-        if (VCenterMonitor.mode == Mode.VCENTER_AS_COMPUTE
-            || watchedVMs.containsKey(vmInfo.vm.getMOR().getVal())) {
+        if (VCenterMonitor.mode == Mode.VCENTER_AS_COMPUTE) {
             return;
         }
-        watchedVMs.put(vmInfo.vm.getMOR().getVal(), vmInfo);
-        watchManagedObject(vmInfo.vm, guestProps);
+        synchronized (watchLock) {
+            if (watchedVMs.putIfAbsent(vmInfo.getVmMor(), vmInfo) != null) {
+                return;
+            }
+            modifyWatchView(vmGuestView, vmInfo.getVm(), true);
+        }
     }
 
     public static void unwatchVm(VirtualMachineInfo vmInfo) {
-        if (VCenterMonitor.mode == Mode.VCENTER_AS_COMPUTE
-            || !watchedVMs.containsKey(vmInfo.vm.getMOR().getVal())) {
+        if (VCenterMonitor.mode == Mode.VCENTER_AS_COMPUTE) {
             return;
         }
-        watchedVMs.remove(vmInfo.vm.getMOR().getVal());
-        unwatchManagedObject(vmInfo.vm);
+        synchronized (watchLock) {
+            if (watchedVMs.remove(vmInfo.getVmMor()) == null) {
+                return;
+            }
+            modifyWatchView(vmGuestView, vmInfo.getVm(), false);
+        }
     }
 
     public static void watchVn(VirtualNetworkInfo vnInfo) {
-        if (VCenterMonitor.mode == Mode.VCENTER_AS_COMPUTE
-                || watchedVNs.containsKey(vnInfo.dpg.getMOR().getVal())) {
+        if (VCenterMonitor.mode == Mode.VCENTER_AS_COMPUTE) {
             return;
         }
-        watchedVNs.put(vnInfo.dpg.getMOR().getVal(), vnInfo);
-        watchManagedObject(vnInfo.dpg, ipPoolProps);
+        synchronized (watchLock) {
+            if (watchedVNs.putIfAbsent(vnInfo.dpg.getMOR().getVal(), vnInfo) != null) {
+                return;
+            }
+            modifyWatchView(vnIpPoolView, vnInfo.dpg, true);
+        }
     }
 
     public static void unwatchVn(VirtualNetworkInfo vnInfo) {
-        if (VCenterMonitor.mode == Mode.VCENTER_AS_COMPUTE
-            || !watchedVNs.containsKey(vnInfo.dpg.getMOR().getVal())) {
+        if (VCenterMonitor.mode == Mode.VCENTER_AS_COMPUTE) {
             return;
         }
-        watchedVNs.remove(vnInfo.dpg.getMOR().getVal());
-        unwatchManagedObject(vnInfo.dpg);
+        synchronized (watchLock) {
+            if (watchedVNs.remove(vnInfo.dpg.getMOR().getVal()) == null) {
+                return;
+            }
+            modifyWatchView(vnIpPoolView, vnInfo.dpg, false);
+        }
     }
 
-    private static void watchManagedObject(ManagedObject mos, String[] propNames)
+    private static void modifyWatchView(ListView view, ManagedObject mos,
+            boolean add)
     {
-        PropertyFilterSpec pfs = new PropertyFilterSpec();
-        
-        ObjectSpec[] oss = new ObjectSpec[1];
-        oss[0] = new ObjectSpec();
-        oss[0].setObj(mos.getMOR());
-        pfs.setObjectSet(oss);
-        
-        PropertySpec ps = new PropertySpec();
-        ps.setType(mos.getMOR().getType());
-        ps.setPathSet(propNames);
-        pfs.setPropSet(new PropertySpec[] { ps });
-
+        if (view == null) {
+            // sync in progress, the view is created with all members later
+            return;
+        }
+        ManagedObject[] none = new ManagedObject[0];
+        ManagedObject[] one = new ManagedObject[] { mos };
         try
         {
-            PropertyFilter pf = propColl.createFilter(pfs, true); //report only nesting properties, not enclosing ones.
-            watchedFilters.put(mos, pf);
+            if (add) {
+                view.modifyListView(one, none);
+            } else {
+                view.modifyListView(none, one);
+            }
         } catch(RemoteException re)
         {
             throw new RuntimeException(re);
         }
-
     }
-    
-    private static void unwatchManagedObject(ManagedObject mos)
+
+    private EventHistoryCollector createEventHistoryCollector() throws Exception
     {
-        if (watchedFilters.containsKey(mos)) {
-            try 
-            {
-                PropertyFilter pf = watchedFilters.remove(mos);
-                pf.destroyPropertyFilter();
-            } catch (RemoteException e) 
-            {
-                e.printStackTrace();
-            }
-        }
+        // create the EventHistoryCollector to monitor events for a VM
+        // and get the ManagedObjectReference of the EventHistoryCollector
+        // returned
+        return vcenterDB.getServiceInstance().getEventManager()
+                .createCollectorForEvents(createEventFilter());
     }
 
-    private EventHistoryCollector createEventHistoryCollector() throws Exception
+    private EventFilterSpec createEventFilter()
     {
         // Create an Entity Event Filter Spec to
         // specify the MoRef of the VM to be get events filtered for
@@ -301,12 +425,7 @@ public class VCenterNotify implements Runnable
         // elaborate list of vmEvents
 
         eventFilter.setType(handledEvents);
-
-        // create the EventHistoryCollector to monitor events for a VM
-        // and get the ManagedObjectReference of the EventHistoryCollector
-        // returned
-        return vcenterDB.getServiceInstance().getEventManager()
-                .createCollectorForEvents(eventFilter);
+        return eventFilter;
     }
 
     private PropertyFilterSpec createEventFilterSpec() throws Exception
@@ -365,6 +484,11 @@ public class VCenterNotify implements Runnable
         }
     }
 
+    /**
+     * Runs on the receiver thread: cheap bookkeeping is done inline,
+     * anything that talks to vCenter, the API server or the vRouter
+     * agents is dispatched to the worker keyed by the object's MOR.
+     */
     void handleChanges(ObjectUpdate oUpdate) throws Exception
     {
         s_logger.info("+++++++++++++Received vcenter update of type "
@@ -389,20 +513,16 @@ public class VCenterNotify implements Runnable
             PropertyChangeOp op = changes[pci].getOp();
             if (op!= PropertyChangeOp.remove) {
                 if (propName.equals("summary.ipPoolId")) {
-                    Integer newPoolId = (Integer)value;
-                    ManagedObjectReference mor = oUpdate.getObj();
-                    if (watchedVNs.containsKey(mor.getVal())) {
-                        VirtualNetworkInfo vnInfo = watchedVNs.get(mor.getVal());
-                        Integer oldPoolId = vnInfo.getIpPoolId();
-                        if ((oldPoolId == null && newPoolId == null)
-                                || (oldPoolId != null && newPoolId != null 
-                                        && oldPoolId.equals(newPoolId))) {
-                            continue;
+                    final Integer newPoolId = (Integer)value;
+                    final ManagedObjectReference mor = oUpdate.getObj();
+                    coalescer.flush(mor.getVal());
+                    dispatcher.dispatch(mor.getVal(), new EventTask(mor.getVal(),
+                            EventRetryQueue.Kind.IP_POOL) {
+                        @Override
+                        void process() throws Exception {
+                            handleIpPoolChange(mor, newPoolId);
                         }
-                        vnInfo.setIpPoolId(newPoolId, vcenterDB);
-                        s_logger.info("IP Pool ID for " + vnInfo + " set to " + newPoolId);
-                        vncDB.updateVirtualNetwork(vnInfo);
-                    }
+                    });
                 } else if (propName.equals("guest.toolsRunningStatus")) {
                     toolsRunningStatus = (String)value;
                 } else if (value instanceof ArrayOfEvent) {
@@ -426,33 +546,13 @@ public class VCenterNotify implements Runnable
                                 + anEvent.getFullFormattedMessage()
                                 + "\n----------\n");
                     }
-                } else if ((value instanceof EnteredMaintenanceModeEvent) || (value instanceof HostConnectionLostEvent)) {
-                    Event anEvent = (Event) value;
-                    String vRouterIpAddress = vcenterDB.esxiToVRouterIpMap.get(anEvent.getHost().getName());
-                    if (vRouterIpAddress != null) {
-                        vcenterDB.vRouterActiveMap.put(vRouterIpAddress, false);
-                        s_logger.info("\nEntering maintenance mode. Marking the host " + vRouterIpAddress +" inactive");
-                    } else {
-                        s_logger.info("\nNot managing the host " + vRouterIpAddress +" inactive");
-                    }
-                } else if ((value instanceof ExitMaintenanceModeEvent) || (value instanceof HostConnectedEvent)) {
-                    Event anEvent = (Event) value;
-                    String vRouterIpAddress = vcenterDB.esxiToVRouterIpMap.get(anEvent.getHost().getName());
-                    if (vRouterIpAddress != null) {
-                        vcenterDB.vRouterActiveMap.put(vRouterIpAddress, true);
-                        s_logger.info("\nExit maintenance mode. Marking the host " + vRouterIpAddress +" active");
-                    } else {
-                        s_logger.info("\nNot managing the host " + vRouterIpAddress +" inactive");
-                    }
                 } else if (value instanceof ArrayOfGuestNicInfo) {
                     s_logger.info("Received update array of GuestNics");
                     ArrayOfGuestNicInfo aog = (ArrayOfGuestNicInfo) value;
                     nics = aog.getGuestNicInfo();
                     
                 } else if (value instanceof Event) {
-                    VCenterEventHandler handler = new VCenterEventHandler(
-                            (Event) value, vcenterDB, vncDB);
-                    handler.handle();
+                    handleEvent((Event) value);
                 } else {
                     if (value != null) {
                         s_logger.info("\n Received unhandled property");
@@ -466,24 +566,353 @@ public class VCenterNotify implements Runnable
         }
 
         if (toolsRunningStatus != null || nics != null) {
-            ManagedObjectReference mor = oUpdate.getObj();
-            if (watchedVMs.containsKey(mor.getVal())) {
-                VirtualMachineInfo vmInfo = watchedVMs.get(mor.getVal());
-                if (toolsRunningStatus != null) {
-                    vmInfo.setToolsRunningStatus(toolsRunningStatus);
+            final ManagedObjectReference mor = oUpdate.getObj();
+            final String newToolsRunningStatus = toolsRunningStatus;
+            final GuestNicInfo[] newNics = nics;
+            coalescer.flush(mor.getVal());
+            dispatcher.dispatch(mor.getVal(), new EventTask(mor.getVal(),
+                    EventRetryQueue.Kind.GUEST) {
+                @Override
+                void process() throws Exception {
+                    handleGuestChange(mor, newToolsRunningStatus, newNics);
+                }
+            });
+        }
+        s_logger.info("+++++++++++++Update Processing Complete +++++++++++++++++++++");
+    }
+
+    /**
+     * Handles one event from the live event stream or from a replay.
+     * Events already processed, as known by their key, are skipped.
+     */
+    private void handleEvent(final Event anEvent) throws Exception
+    {
+        synchronized (lastEventLock) {
+            if (lastEventTime != null && anEvent.getKey() <= lastEventKey) {
+                s_logger.debug("Skipping already processed event " + anEvent.getKey());
+                return;
+            }
+            lastEventKey = anEvent.getKey();
+            lastEventChainId = anEvent.getChainId();
+            lastEventTime = anEvent.getCreatedTime();
+        }
+
+        // names may now point to other objects, drop them before
+        // any handler looks them up
+        vcenterDB.getManagedObjectCache().invalidate(anEvent);
+
+        if ((anEvent instanceof EnteredMaintenanceModeEvent) || (anEvent instanceof HostConnectionLostEvent)) {
+            String vRouterIpAddress = vcenterDB.esxiToVRouterIpMap.get(anEvent.getHost().getName());
+            if (vRouterIpAddress != null) {
+                vcenterDB.vRouterActiveMap.put(vRouterIpAddress, false);
+                VRouterNotifier.getConnection(vRouterIpAddress).setMaintenance(true);
+                s_logger.info("\nEntering maintenance mode. Marking the host " + vRouterIpAddress +" inactive");
+            } else {
+                s_logger.info("\nNot managing the host " + vRouterIpAddress +" inactive");
+            }
+        } else if ((anEvent instanceof ExitMaintenanceModeEvent) || (anEvent instanceof HostConnectedEvent)) {
+            String vRouterIpAddress = vcenterDB.esxiToVRouterIpMap.get(anEvent.getHost().getName());
+            if (vRouterIpAddress != null) {
+                vcenterDB.vRouterActiveMap.put(vRouterIpAddress, true);
+                if (VRouterNotifier.getConnection(vRouterIpAddress).setMaintenance(false)) {
+                    VRouterNotifier.getHealth(vRouterIpAddress).suspect();
                 }
-                if (vmInfo.getToolsRunningStatus().equals(VirtualMachineToolsRunningStatus.guestToolsRunning.toString())
-                        && nics != null) {
-                    vmInfo.updatedGuestNics(nics,vncDB);
+                s_logger.info("\nExit maintenance mode. Marking the host " + vRouterIpAddress +" active");
+            } else {
+                s_logger.info("\nNot managing the host " + vRouterIpAddress +" inactive");
+            }
+        } else if (anEvent instanceof DVPortgroupEvent) {
+            // VMs look up their networks in MainDB, so port group
+            // changes are applied with no VM work in flight
+            coalescer.flushAll();
+            dispatcher.awaitIdle();
+            new EventTask(getEventKey(anEvent)) {
+                @Override
+                void process() throws Exception {
+                    VCenterEventHandler handler = new VCenterEventHandler(
+                            anEvent, vcenterDB, vncDB);
+                    handler.handle();
                 }
+            }.run();
+        } else {
+            String key = getEventKey(anEvent);
+            if (VCenterEventHandler.isVmUpdateEvent(anEvent)) {
+                coalescer.add(key, anEvent);
+                return;
             }
+            if (VCenterEventHandler.isVmDeleteEvent(anEvent)) {
+                // the VM is going away, no point in updating it first
+                coalescer.supersede(key);
+            } else {
+                coalescer.flush(key);
+            }
+            dispatchEvent(key, anEvent);
         }
-        s_logger.info("+++++++++++++Update Processing Complete +++++++++++++++++++++");
+    }
+
+    /**
+     * After the vCenter session was re-established, reads the events
+     * missed since the last processed one from a history collector and
+     * handles them, so that no full sync is needed.
+     * Returns false when the replay is not possible, for instance when
+     * the last processed event is no longer in the vCenter event history.
+     */
+    private boolean replayEvents()
+    {
+        Calendar since;
+        int sinceKey;
+        synchronized (lastEventLock) {
+            since = lastEventTime;
+            sinceKey = lastEventKey;
+        }
+        if (since == null || VcenterDBInitComplete == false) {
+            return false;
+        }
+
+        TaskWatchDog.startMonitoring(this, "Replay events",
+                300000, TimeUnit.MILLISECONDS);
+        EventHistoryCollector collector = null;
+        long start = System.currentTimeMillis();
+        int replayed = 0;
+        try {
+            EventFilterSpec eventFilter = createEventFilter();
+            EventFilterSpecByTime timeSpec = new EventFilterSpecByTime();
+            timeSpec.setBeginTime(since);
+            eventFilter.setTime(timeSpec);
+            collector = vcenterDB.getServiceInstance().getEventManager()
+                    .createCollectorForEvents(eventFilter);
+            collector.rewindCollector();
+
+            boolean found = false;
+            Event[] events;
+            while ((events = collector.readNextEvents(REPLAY_PAGE_SIZE)) != null
+                    && events.length > 0) {
+                for (Event anEvent: events) {
+                    if (anEvent.getKey() == sinceKey) {
+                        found = true;
+                        continue;
+                    }
+                    if (anEvent.getKey() < sinceKey) {
+                        continue;
+                    }
+                    if (!found) {
+                        s_logger.warn("Event " + sinceKey + " no longer in the vCenter "
+                                + "event history, cannot replay missed events");
+                        return false;
+                    }
+                    handleEvent(anEvent);
+                    replayed++;
+                }
+            }
+            if (!found) {
+                s_logger.warn("Event " + sinceKey + " no longer in the vCenter "
+                        + "event history, cannot replay missed events");
+                return false;
+            }
+            createWatchFilters();
+            eventsReplayed += replayed;
+            s_logger.info("Replayed " + replayed + " events since event " + sinceKey
+                    + " in " + (System.currentTimeMillis() - start) + " ms");
+            return true;
+        } catch (Exception e) {
+            String stackTrace = Throwables.getStackTraceAsString(e);
+            s_logger.error("Cannot replay events since " + sinceKey
+                    + " after " + replayed + " events: " + e);
+            s_logger.error(stackTrace);
+            return false;
+        } finally {
+            if (collector != null) {
+                try {
+                    collector.destroyCollector();
+                } catch (Exception e) {
+                    s_logger.error("Cannot destroy event history collector: " + e);
+                }
+            }
+            TaskWatchDog.stopMonitoring(this);
+        }
+    }
+
+    private void handleIpPoolChange(ManagedObjectReference mor, Integer newPoolId)
+            throws Exception {
+        if (!watchedVNs.containsKey(mor.getVal())) {
+            return;
+        }
+        VirtualNetworkInfo vnInfo = watchedVNs.get(mor.getVal());
+        Integer oldPoolId = vnInfo.getIpPoolId();
+        if ((oldPoolId == null && newPoolId == null)
+                || (oldPoolId != null && newPoolId != null 
+                        && oldPoolId.equals(newPoolId))) {
+            return;
+        }
+        vnInfo.setIpPoolId(newPoolId, vcenterDB);
+        s_logger.info("IP Pool ID for " + vnInfo + " set to " + newPoolId);
+        vncDB.updateVirtualNetwork(vnInfo);
+    }
+
+    private void handleGuestChange(ManagedObjectReference mor,
+            String toolsRunningStatus, GuestNicInfo[] nics) throws Exception {
+        if (!watchedVMs.containsKey(mor.getVal())) {
+            return;
+        }
+        VirtualMachineInfo vmInfo = watchedVMs.get(mor.getVal());
+        if (toolsRunningStatus != null) {
+            vmInfo.setToolsRunningStatus(toolsRunningStatus);
+        }
+        if (vmInfo.getToolsRunningStatus().equals(VirtualMachineToolsRunningStatus.guestToolsRunning.toString())
+                && nics != null) {
+            vmInfo.updatedGuestNics(nics,vncDB);
+        }
+    }
+
+    private static void dispatchEvent(String key, final Event event)
+            throws InterruptedException {
+        dispatcher.dispatch(key, new EventTask(key) {
+            @Override
+            void process() throws Exception {
+                VCenterEventHandler handler = new VCenterEventHandler(
+                        event, vcenterDB, vncDB);
+                handler.handle();
+            }
+        });
+    }
+
+    /**
+     * Work items run by the event workers. Errors are not propagated
+     * to the receiver: the object is retried on its own, and a full
+     * resync is only flagged on connection loss or when retries give up.
+     */
+    abstract static class EventTask implements Runnable {
+        final String key;
+        final EventRetryQueue.Kind kind;
+
+        EventTask(String key) {
+            this(key, EventRetryQueue.Kind.EVENT);
+        }
+
+        EventTask(String key, EventRetryQueue.Kind kind) {
+            this.key = key;
+            this.kind = kind;
+        }
+
+        abstract void process() throws Exception;
+
+        @Override
+        public void run() {
+            ApiCircuitBreaker breaker = (vncDB != null) ? vncDB.getCircuitBreaker() : null;
+            if (breaker != null && !breaker.isClosed()) {
+                // the API server is away, don't wait for the failure
+                hold();
+                return;
+            }
+            try {
+                process();
+            } catch (Exception e) {
+                s_logger.error("Error in event handling for " + key);
+                String stackTrace = Throwables.getStackTraceAsString(e);
+                s_logger.error(stackTrace);
+                if (breaker != null && VncDB.isApiServerError(stackTrace)) {
+                    breaker.recordFailure();
+                    hold();
+                } else if (isConnectionError(stackTrace)
+                        || retryQueue == null || !retryQueue.failed(key, kind, this)) {
+                    requestResync();
+                }
+                return;
+            }
+            if (breaker != null) {
+                breaker.recordSuccess();
+            }
+            if (retryQueue != null) {
+                retryQueue.succeeded(key, kind);
+            }
+        }
+
+        private void hold() {
+            if (retryQueue == null || !retryQueue.held(key, kind, this)) {
+                requestResync();
+            }
+        }
+    }
+
+    static String getEventKey(Event event) {
+        if (event.getVm() != null && event.getVm().getVm() != null) {
+            return event.getVm().getVm().getVal();
+        }
+        if (event.getNet() != null && event.getNet().getNetwork() != null) {
+            return event.getNet().getNetwork().getVal();
+        }
+        if (event.getHost() != null) {
+            return event.getHost().getName();
+        }
+        return null;
+    }
+
+    /**
+     * Called from the event workers: flag the resync and wake up
+     * the receiver so that the sync is not delayed until the next update.
+     */
+    static void requestResync() {
+        syncNeeded = true;
+        if (propColl == null) {
+            return;
+        }
+        try {
+            propColl.cancelWaitForUpdates();
+        } catch (Exception e) {
+            s_logger.error("Cannot cancel waitForUpdates: " + e);
+        }
+    }
+
+    static boolean isConnectionError(String stackTrace) {
+        //For some reason RemoteException not thrown
+        return stackTrace.contains("java.net.ConnectException: Connection refused")
+            || stackTrace.contains("java.rmi.RemoteException: VI SDK invoke");
+    }
+
+    public static int getLastEventKey() {
+        synchronized (lastEventLock) {
+            return lastEventKey;
+        }
+    }
+
+    public static int getLastEventChainId() {
+        synchronized (lastEventLock) {
+            return lastEventChainId;
+        }
+    }
+
+    public static long getEventsReplayed() {
+        return eventsReplayed;
+    }
+
+    public static EventRetryQueue getEventRetryQueue() {
+        return retryQueue;
+    }
+
+    public static VCenterEventDispatcher getEventDispatcher() {
+        return dispatcher;
+    }
+
+    public static VmEventCoalescer getEventCoalescer() {
+        return coalescer;
     }
 
     public void start() {
         try
         {
+            dispatcher = new VCenterEventDispatcher(VCenterMonitor.eventWorkers,
+                    VCenterMonitor.eventQueueSize);
+            retryQueue = new EventRetryQueue(dispatcher,
+                    VCenterMonitor.eventRetries, VCenterMonitor.eventRetryThreshold);
+            retryQueue.setCircuitBreaker(vncDB.getCircuitBreaker(),
+                    VCenterMonitor.apiHoldLimit);
+            coalescer = new VmEventCoalescer(VCenterMonitor.eventCoalesceWindow) {
+                @Override
+                protected void emit(String key, Event event)
+                        throws InterruptedException {
+                    dispatchEvent(key, event);
+                }
+            };
             watchUpdates = new Thread(this);
             shouldRun = true;
             watchUpdates.start();
@@ -500,6 +929,9 @@ public class VCenterNotify implements Runnable
         shouldRun = false;
         propColl.cancelWaitForUpdates();
         propFilter.destroyPropertyFilter();
+        coalescer.shutdown();
+        retryQueue.shutdown();
+        dispatcher.shutdown();
         vcenterDB.getServiceInstance().getServerConnection().logout();
         watchUpdates.stop();
     }
@@ -525,7 +957,7 @@ public class VCenterNotify implements Runnable
                 300000, TimeUnit.MILLISECONDS);
         try {
             if (vcenterDB.connect() == true) {
-                cleanupEventFilters();
+                cleanupEventFilters(false);
                 PropertyFilterSpec eventFilterSpec = createEventFilterSpec();
                 propColl = vcenterDB.getServiceInstance().getPropertyCollector();
 
@@ -574,6 +1006,12 @@ public class VCenterNotify implements Runnable
                     TaskWatchDog.startMonitoring(this, "Sync",
                             300000, TimeUnit.MILLISECONDS);
                     
+                    // let the workers finish what was already dispatched
+                    coalescer.flushAll();
+                    dispatcher.awaitIdle();
+                    retryQueue.clear();
+                    vcenterDB.getManagedObjectCache().clear();
+                    
                     // When syncVirtualNetworks is run the first time, it also does
                     // addPort to vrouter agent for existing VMIs.
                     // Clear the flag  on first run of syncVirtualNetworks.
@@ -581,6 +1019,7 @@ public class VCenterNotify implements Runnable
                         cleanupEventFilters();
                         vcenterDB.setReadTimeout(VCenterDB.VCENTER_READ_TIMEOUT);
                         MainDB.sync(vcenterDB, vncDB, VCenterMonitor.mode);
+                        createWatchFilters();
                         vcenterDB.setReadTimeout(0);
                         syncNeeded = false;
                         setAddPortSyncAtPluginStart(false);
@@ -589,12 +1028,10 @@ public class VCenterNotify implements Runnable
                         s_logger.error("Error in sync: " + e); 
                         s_logger.error(stackTrace);
                         e.printStackTrace();
-                        if (stackTrace.contains("java.net.ConnectException: Connection refused") ||
-                            stackTrace.contains("java.rmi.RemoteException: VI SDK invoke"))   {
+                        if (isConnectionError(stackTrace)) {
                                 //Remote Exception. Some issue with connection to vcenter-server
                                 // Exception on accessing remote objects.
                                 // Try to reinitialize the VCenter connection.
-                                //For some reason RemoteException not thrown
                                 s_logger.error("Problem with connection to vCenter-Server");
                                 s_logger.error("Restart connection and reSync");
                                 connect2vcenter();
@@ -620,21 +1057,24 @@ public class VCenterNotify implements Runnable
                     }
                 } catch (Exception e)
                 {
+                    // a resync asked for by the workers is not covered by a replay
+                    boolean resyncRequested = syncNeeded;
                     syncNeeded = true;
                     s_logger.error("Error in event handling, resync needed");
                     String stackTrace = Throwables.getStackTraceAsString(e);
                     s_logger.error(stackTrace);
                     e.printStackTrace();
-                    if (stackTrace.contains("java.net.ConnectException: Connection refused") ||
-                        stackTrace.contains("java.rmi.RemoteException: VI SDK invoke"))   {
+                    if (isConnectionError(stackTrace)) {
                             //Remote Exception. Some issue with connection to vcenter-server
                             // Exception on accessing remote objects.
                             // Try to reinitialize the VCenter connection.
-                            //For some reason RemoteException not thrown
                             s_logger.error("Problem with connection to vCenter-Server");
                             s_logger.error("Restart connection and reSync");
                             connect2vcenter();
                             version = "";
+                            if (!resyncRequested && replayEvents()) {
+                                syncNeeded = false;
+                            }
                     }
                 }
             } while (shouldRun);
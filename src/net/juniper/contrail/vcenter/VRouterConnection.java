@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import org.apache.log4j.Logger;
+import net.juniper.contrail.contrail_vrouter_api.ContrailVRouterApi;
+
+/**
+ * Connection to one vRouter agent.
+ *
+ * The agent API is created on first use, by a single thread, and the
+ * state only changes on keepalive results and maintenance mode events:
+ *
+ *   CONNECTING --keepalive--> UP / DOWN
+ *   UP <--keepalive--> DOWN
+ *   any --maintenance--> MAINTENANCE --exit--> CONNECTING
+ *
+ * Reads of the state and of the API take no lock.
+ */
+public class VRouterConnection {
+    private static final Logger s_logger =
+            Logger.getLogger(VRouterConnection.class);
+
+    public enum State {
+        CONNECTING,
+        UP,
+        DOWN,
+        MAINTENANCE
+    }
+
+    private final String vrouterIpAddress;
+    private final int port;
+    private volatile ContrailVRouterApi api;
+    private volatile State state = State.CONNECTING;
+    private volatile long stateTime = System.currentTimeMillis();
+
+    public VRouterConnection(String vrouterIpAddress, int port) {
+        this.vrouterIpAddress = vrouterIpAddress;
+        this.port = port;
+    }
+
+    /**
+     * Returns the agent API, null when the address does not resolve.
+     */
+    ContrailVRouterApi getApi() {
+        ContrailVRouterApi vrouterApi = api;
+        if (vrouterApi != null) {
+            return vrouterApi;
+        }
+        synchronized (this) {
+            if (api == null) {
+                try {
+                    api = new ContrailVRouterApi(
+                            InetAddress.getByName(vrouterIpAddress),
+                            port, false, 1000);
+                } catch (UnknownHostException e) {
+                    s_logger.error("Incorrect vrouter address " + vrouterIpAddress);
+                }
+            }
+            return api;
+        }
+    }
+
+    /**
+     * Records a keepalive result, ignored while in maintenance. Returns
+     * true when the agent just came up, which is when the ports it
+     * missed have to be replayed.
+     */
+    synchronized boolean setConnected(boolean connected) {
+        if (state == State.MAINTENANCE) {
+            return false;
+        }
+        boolean cameUp = connected && state != State.UP;
+        setState(connected ? State.UP : State.DOWN);
+        return cameUp;
+    }
+
+    /**
+     * Returns true when the state changed.
+     */
+    synchronized boolean setMaintenance(boolean maintenance) {
+        if (maintenance) {
+            if (state == State.MAINTENANCE) {
+                return false;
+            }
+            setState(State.MAINTENANCE);
+            return true;
+        }
+        if (state != State.MAINTENANCE) {
+            return false;
+        }
+        setState(State.CONNECTING);
+        return true;
+    }
+
+    private void setState(State newState) {
+        if (state != newState) {
+            s_logger.info("vRouter " + vrouterIpAddress + " " + state + " -> " + newState);
+            state = newState;
+            stateTime = System.currentTimeMillis();
+        }
+    }
+
+    public String getVrouterIpAddress() {
+        return vrouterIpAddress;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isUp() {
+        return state == State.UP;
+    }
+
+    public long getStateTime() {
+        return stateTime;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+/**
+ * Keepalive state of one vRouter agent.
+ *
+ * An agent that keeps answering is probed less and less often, up to
+ * MAX_INTERVAL_MS. An agent that failed, or whose ports could not be
+ * sent, is probed again on every sweep.
+ */
+public class VRouterHealth {
+    // period of the monitor task running the sweeps
+    static final long BASE_INTERVAL_MS = 8000;
+    static final long MAX_INTERVAL_MS = 64000;
+
+    private final String vrouterIpAddress;
+    private long lastCheck;
+    private long lastSuccess;
+    private int consecutiveFailures;
+    private long lastRtt;
+    private long interval;
+    private long nextCheck;
+    private boolean inProgress;
+    // the running check was already counted as failed
+    private boolean overdue;
+    private final LatencyStats rtt = new LatencyStats();
+
+    public VRouterHealth(String vrouterIpAddress) {
+        this.vrouterIpAddress = vrouterIpAddress;
+    }
+
+    /**
+     * Returns false when the agent is not due yet or its previous
+     * check is still running.
+     */
+    synchronized boolean startCheck(long now) {
+        if (inProgress || now < nextCheck) {
+            return false;
+        }
+        inProgress = true;
+        lastCheck = now;
+        return true;
+    }
+
+    synchronized void succeeded(long rttMillis) {
+        inProgress = false;
+        overdue = false;
+        lastSuccess = System.currentTimeMillis();
+        consecutiveFailures = 0;
+        lastRtt = rttMillis;
+        rtt.record(rttMillis);
+        interval = (interval == 0) ? BASE_INTERVAL_MS
+                : Math.min(interval * 2, MAX_INTERVAL_MS);
+        nextCheck = lastCheck + interval;
+    }
+
+    synchronized void failed() {
+        inProgress = false;
+        if (!overdue) {
+            consecutiveFailures++;
+        }
+        overdue = false;
+        interval = 0;
+        nextCheck = 0;
+    }
+
+    /**
+     * The check did not answer within its deadline. It is still running
+     * and will record its own result when it returns.
+     */
+    synchronized void timedOut() {
+        if (!overdue) {
+            consecutiveFailures++;
+        }
+        overdue = true;
+        interval = 0;
+        nextCheck = 0;
+    }
+
+    /**
+     * Something else, a failed AddPort for instance, hints that the
+     * agent is gone: probe it on the next sweep.
+     */
+    synchronized void suspect() {
+        interval = 0;
+        nextCheck = 0;
+    }
+
+    public String getVrouterIpAddress() {
+        return vrouterIpAddress;
+    }
+
+    public synchronized long getLastCheck() {
+        return lastCheck;
+    }
+
+    public synchronized long getLastSuccess() {
+        return lastSuccess;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized long getLastRtt() {
+        return lastRtt;
+    }
+
+    public synchronized long getInterval() {
+        return interval;
+    }
+
+    public LatencyStats getRtt() {
+        return rtt;
+    }
+}
@@ -6,24 +6,133 @@
 
 package net.juniper.contrail.vcenter;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.Map;
 import java.util.UUID;
 import org.apache.log4j.Logger;
 import net.juniper.contrail.contrail_vrouter_api.ContrailVRouterApi;
 
 public class VRouterNotifier {
-    static volatile HashMap<String, ContrailVRouterApi> vrouterApiMap = 
-            new HashMap<String, ContrailVRouterApi>();
+    private static final ConcurrentHashMap<String, VRouterConnection> connections =
+            new ConcurrentHashMap<String, VRouterConnection>();
     static final int vrouterApiPort = 9090;
     
     private final static Logger s_logger =
             Logger.getLogger(VRouterNotifier.class);
 
-    public static Map<String, ContrailVRouterApi> getVrouterApiMap() {
-        return vrouterApiMap;
+    private static volatile VRouterPortDispatcher portDispatcher;
+    private static final ConcurrentHashMap<String, VRouterPortTable> portTables =
+            new ConcurrentHashMap<String, VRouterPortTable>();
+    private static final ConcurrentHashMap<String, VRouterHealth> healthMap =
+            new ConcurrentHashMap<String, VRouterHealth>();
+    private static volatile ExecutorService keepAliveExecutor;
+    // below the 60 s watchdog of the keepalive task
+    static final long KEEPALIVE_BUDGET_MS = 45000;
+
+    public static Map<String, VRouterConnection> getConnections() {
+        return connections;
+    }
+
+    public static VRouterConnection getConnection(String vrouterIpAddress) {
+        VRouterConnection connection = connections.get(vrouterIpAddress);
+        if (connection == null) {
+            connection = new VRouterConnection(vrouterIpAddress, vrouterApiPort);
+            VRouterConnection oldConnection =
+                    connections.putIfAbsent(vrouterIpAddress, connection);
+            if (oldConnection != null) {
+                connection = oldConnection;
+            }
+        }
+        return connection;
+    }
+
+    public static VRouterPortDispatcher getPortDispatcher() {
+        if (portDispatcher == null) {
+            synchronized (VRouterNotifier.class) {
+                if (portDispatcher == null) {
+                    portDispatcher = new VRouterPortDispatcher(
+                            VCenterMonitor.vrouterPortThreads);
+                }
+            }
+        }
+        return portDispatcher;
+    }
+
+    public static VRouterPortTable getPortTable(String vrouterIpAddress) {
+        VRouterPortTable table = portTables.get(vrouterIpAddress);
+        if (table == null) {
+            table = new VRouterPortTable(vrouterIpAddress);
+            VRouterPortTable oldTable = portTables.putIfAbsent(vrouterIpAddress, table);
+            if (oldTable != null) {
+                table = oldTable;
+            }
+        }
+        return table;
+    }
+
+    private static VRouterPortDispatcher.PortOp addPortOp(
+            final VRouterPortTable table, final VRouterPortTable.PortEntry entry,
+            String description) {
+        return new VRouterPortDispatcher.PortOp(description, true) {
+            @Override
+            boolean send(ContrailVRouterApi vrouterApi) {
+                return entry.addPort(vrouterApi);
+            }
+
+            @Override
+            boolean isStale() {
+                return !table.isDesired(entry);
+            }
+
+            @Override
+            void sent() {
+                table.added(entry);
+            }
+
+            @Override
+            void done() {
+                table.addDone(entry);
+            }
+        };
+    }
+
+    private static VRouterPortDispatcher.PortOp deletePortOp(
+            final VRouterPortTable table, final UUID vmiUuid,
+            String description) {
+        return new VRouterPortDispatcher.PortOp(description, false) {
+            @Override
+            boolean send(ContrailVRouterApi vrouterApi) {
+                return vrouterApi.DeletePort(vmiUuid);
+            }
+
+            @Override
+            boolean isStale() {
+                return table.isDesired(vmiUuid);
+            }
+
+            @Override
+            void sent() {
+                table.deleted(vmiUuid);
+            }
+
+            @Override
+            void done() {
+                table.deleteDone(vmiUuid);
+            }
+        };
+    }
+
+    static ContrailVRouterApi getVrouterApi(String vrouterIpAddress) {
+        return getConnection(vrouterIpAddress).getApi();
     }
     
     public static void created(VirtualMachineInterfaceInfo vmiInfo) {
@@ -60,29 +169,20 @@ public class VRouterNotifier {
             return;
         }
         try {
-            ContrailVRouterApi vrouterApi = vrouterApiMap.get(vrouterIpAddress);
-            if (vrouterApi == null) {
-                vrouterApi = new ContrailVRouterApi(
-                        InetAddress.getByName(vrouterIpAddress),
-                        vrouterApiPort, false, 1000);
-                vrouterApiMap.put(vrouterIpAddress, vrouterApi);
-            }
-            
-               
-            boolean ret = vrouterApi.AddPort(UUID.fromString(vmiInfo.getUuid()),
-                    UUID.fromString(vmInfo.getUuid()), vmiInfo.getUuid(),
-                    InetAddress.getByName(ipAddress),
-                    Utils.parseMacAddress(vmiInfo.getMacAddress()),
-                    UUID.fromString(vnInfo.getUuid()),
-                    vnInfo.getIsolatedVlanId(),
-                    vnInfo.getPrimaryVlanId(), vmInfo.getName());
-            if (ret) {
-                s_logger.info("VRouterAPi Add Port success for " + vmiInfo);
-            } else {
-                // log failure but don't worry. Periodic KeepAlive task will
-                // attempt to connect to vRouter Agent and replay AddPorts.
-                s_logger.error("VRouterAPI Add Port failed for " + vmiInfo);
+            // immutable, the VMI may change before the port is sent
+            VRouterPortTable.PortEntry entry = vmiInfo.getPortEntry();
+
+            VRouterPortTable table = getPortTable(vrouterIpAddress);
+            if (!table.setDesired(entry)) {
+                s_logger.debug("Port already added for " + vmiInfo);
+                return;
+            }
+            if (!table.addQueued(entry)) {
+                s_logger.debug("Port already queued for " + vmiInfo);
+                return;
             }
+            getPortDispatcher().enqueue(vrouterIpAddress,
+                    addPortOp(table, entry, vmiInfo.toString()));
         } catch(Throwable e) {
             s_logger.error("Exception in addPort for " + vmiInfo + ": " + e.getMessage());
             e.printStackTrace();
@@ -119,57 +219,179 @@ public class VRouterNotifier {
             return;
         }
         
-        ContrailVRouterApi vrouterApi = vrouterApiMap.get(vrouterIpAddress);
-        if (vrouterApi == null) {
-            try {
-            vrouterApi = new ContrailVRouterApi(
-                    InetAddress.getByName(vrouterIpAddress), 
-                    vrouterApiPort, false, 1000);
-            } catch (UnknownHostException e) {
-                // log error ("Incorrect vrouter address");
-                s_logger.error("deletePort failed due to unknown vrouter " + vrouterIpAddress);
-                return;
+        // the port may be known to the agent from before a restart
+        // of the plugin, so the delete is always sent
+        UUID vmiUuid = vmiInfo.getVmiUuid();
+        VRouterPortTable table = getPortTable(vrouterIpAddress);
+        table.removeDesired(vmiUuid);
+        if (!table.deleteQueued(vmiUuid)) {
+            s_logger.debug("Port delete already queued for " + vmiInfo);
+            return;
+        }
+        getPortDispatcher().enqueue(vrouterIpAddress,
+                deletePortOp(table, vmiUuid, vmiInfo.toString()));
+    }
+
+    /*
+     * The agent came back: send what changed while it was away,
+     * rate limited so that a large host does not flood the agent.
+     * Also sends the ports left over by failed or dropped AddPorts.
+     * Ports with an operation still queued are skipped, that one goes
+     * out first, so the queue does not grow with every keepalive.
+     */
+    private static void replayPorts(String vrouterIpAddress, boolean cameUp) {
+        VRouterPortTable table = getPortTable(vrouterIpAddress);
+        List<VRouterPortDispatcher.PortOp> ops =
+                new ArrayList<VRouterPortDispatcher.PortOp>();
+        for (UUID vmiUuid: table.getDeleteDelta()) {
+            if (table.deleteQueued(vmiUuid)) {
+                ops.add(deletePortOp(table, vmiUuid, "VMI " + vmiUuid));
             }
-            vrouterApiMap.put(vrouterIpAddress, vrouterApi);
         }
-        boolean ret = vrouterApi.DeletePort(UUID.fromString(vmiInfo.getUuid()));
-        
-        if (ret) {
-            s_logger.info("VRouterAPi Delete Port success for " + vmiInfo);
-        } else {
-            // log failure but don't worry. Periodic KeepAlive task will
-            // attempt to connect to vRouter Agent and replay DeletePorts.
-            s_logger.error("VRouterAPI Delete Port failed for " + vmiInfo);
+        for (VRouterPortTable.PortEntry entry: table.getAddDelta()) {
+            if (table.addQueued(entry)) {
+                ops.add(addPortOp(table, entry, "VMI <" + entry.vmName + ", "
+                        + entry.vmiUuid + ">"));
+            }
+        }
+        if (ops.isEmpty()) {
+            return;
         }
+        s_logger.info("vRouter " + vrouterIpAddress
+                + (cameUp ? " reconnected" : " missing ports") + ", replaying "
+                + ops.size() + " of " + table.getDesiredCount() + " ports");
+        table.replayed(ops.size());
+        getPortDispatcher().enqueue(vrouterIpAddress, ops,
+                VCenterMonitor.vrouterReplayRate);
     }
     
+    public static VRouterHealth getHealth(String vrouterIpAddress) {
+        VRouterHealth health = healthMap.get(vrouterIpAddress);
+        if (health == null) {
+            health = new VRouterHealth(vrouterIpAddress);
+            VRouterHealth oldHealth = healthMap.putIfAbsent(vrouterIpAddress, health);
+            if (oldHealth != null) {
+                health = oldHealth;
+            }
+        }
+        return health;
+    }
+
+    private static ExecutorService getKeepAliveExecutor() {
+        if (keepAliveExecutor == null) {
+            synchronized (VRouterNotifier.class) {
+                if (keepAliveExecutor == null) {
+                    keepAliveExecutor = Executors.newFixedThreadPool(
+                            VCenterMonitor.vrouterKeepAliveThreads, new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r,
+                                    "vrouter-keepalive-" + count.getAndIncrement());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+            }
+        }
+        return keepAliveExecutor;
+    }
+
     // KeepAlive with all active vRouter Agent Connections.
+    // Agents are probed in parallel, each within its own deadline, and the
+    // whole sweep stays within KEEPALIVE_BUDGET_MS of the 60 s watchdog.
     public static void vrouterAgentPeriodicConnectionCheck() {
         
         Map<String, Boolean> vRouterActiveMap = VCenterDB.vRouterActiveMap;
-        
+        long start = System.currentTimeMillis();
+        long deadline = start + KEEPALIVE_BUDGET_MS;
+        long timeout = VCenterMonitor.vrouterKeepAliveTimeout;
+
+        List<VRouterHealth> checks = new ArrayList<VRouterHealth>();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
         for (Map.Entry<String, Boolean> entry: vRouterActiveMap.entrySet()) {
+            final String vrouterIpAddress = entry.getKey();
+            VRouterConnection connection = getConnection(vrouterIpAddress);
             if (entry.getValue() == Boolean.FALSE) {
                 // host is in maintenance mode
+                connection.setMaintenance(true);
                 continue;
             }
 
-            String vrouterIpAddress = entry.getKey();
-            ContrailVRouterApi vrouterApi = vrouterApiMap.get(vrouterIpAddress);
-            if (vrouterApi == null) {
-                try {
-                    vrouterApi = new ContrailVRouterApi(
-                          InetAddress.getByName(vrouterIpAddress), 
-                          vrouterApiPort, false, 1000);
-                } catch (UnknownHostException e) { 
+            final VRouterHealth health = getHealth(vrouterIpAddress);
+            if (connection.setMaintenance(false)) {
+                // back from maintenance, check it now
+                health.suspect();
+            }
+            if (!health.startCheck(start)) {
+                continue;
+            }
+            checks.add(health);
+            futures.add(getKeepAliveExecutor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    checkConnection(vrouterIpAddress, health);
                 }
-                if (vrouterApi == null) {
-                    continue;
+            }));
+        }
+
+        int failed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            VRouterHealth health = checks.get(i);
+            long now = System.currentTimeMillis();
+            long wait = Math.max(Math.min(deadline, now + timeout) - now, 0);
+            try {
+                futures.get(i).get(wait, TimeUnit.MILLISECONDS);
+                if (health.getConsecutiveFailures() > 0) {
+                    failed++;
                 }
-                vrouterApiMap.put(vrouterIpAddress, vrouterApi);
+            } catch (TimeoutException e) {
+                // a check stuck in the agent connection keeps the
+                // connection lock, it is not started again until it returns
+                failed++;
+                health.timedOut();
+                s_logger.warn("Keepalive of vRouter " + health.getVrouterIpAddress()
+                        + " did not answer in " + timeout + " ms");
+            } catch (Exception e) {
+                // the check recorded its own failure
+                failed++;
+                s_logger.error("Keepalive of vRouter " + health.getVrouterIpAddress()
+                        + " failed: " + e);
             }
-            // run Keep Alive with vRouter Agent.
-            vrouterApi.PeriodicConnectionCheck();
+        }
+        if (!futures.isEmpty()) {
+            s_logger.debug("Keepalive of " + futures.size() + " vRouters, "
+                    + failed + " failed, in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    private static void checkConnection(String vrouterIpAddress, VRouterHealth health) {
+        boolean connected = false;
+        boolean cameUp = false;
+        long start = System.currentTimeMillis();
+        VRouterConnection connection = getConnection(vrouterIpAddress);
+        try {
+            ContrailVRouterApi vrouterApi = connection.getApi();
+            if (vrouterApi != null) {
+                // run Keep Alive with vRouter Agent.
+                synchronized (vrouterApi) {
+                    connected = vrouterApi.PeriodicConnectionCheck();
+                }
+            }
+        } finally {
+            cameUp = connection.setConnected(connected);
+            if (connected) {
+                health.succeeded(System.currentTimeMillis() - start);
+            } else {
+                health.failed();
+            }
+        }
+        if (cameUp) {
+            replayPorts(vrouterIpAddress, true);
+        } else if (connected && !getPortTable(vrouterIpAddress).getAddDelta().isEmpty()) {
+            replayPorts(vrouterIpAddress, false);
         }
     }
 }
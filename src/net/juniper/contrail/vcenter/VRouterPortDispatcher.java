@@ -0,0 +1,306 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import net.juniper.contrail.contrail_vrouter_api.ContrailVRouterApi;
+
+/**
+ * Sends AddPort / DeletePort to the vRouter agents off the event threads.
+ *
+ * Every vRouter has its own ordered queue of port operations. A queue is
+ * drained by at most one thread at a time, taken from a pool shared by all
+ * vRouters, and gives the thread back after a batch so that an unreachable
+ * agent, where every call waits for its timeout, only delays its own ports.
+ */
+public class VRouterPortDispatcher {
+    private static final Logger s_logger =
+            Logger.getLogger(VRouterPortDispatcher.class);
+
+    static final int BATCH_SIZE = 16;
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final int threads;
+    private final ConcurrentHashMap<String, PortQueue> queues =
+            new ConcurrentHashMap<String, PortQueue>();
+
+    /**
+     * A port operation, with everything it needs copied at enqueue time
+     * since the VMI may change before the operation runs.
+     */
+    abstract static class PortOp {
+        final String description;
+        final boolean add;
+        long enqueueTime;
+        // rate limited replays are not sent before this time
+        long notBefore;
+
+        PortOp(String description, boolean add) {
+            this.description = description;
+            this.add = add;
+        }
+
+        abstract boolean send(ContrailVRouterApi vrouterApi) throws Exception;
+
+        /**
+         * True when a later change made this operation useless.
+         */
+        boolean isStale() {
+            return false;
+        }
+
+        /**
+         * Called once the agent accepted the operation.
+         */
+        void sent() {
+        }
+
+        /**
+         * Called when the operation left the queue, sent, failed or stale.
+         */
+        void done() {
+        }
+    }
+
+    public class PortQueue implements Runnable {
+        private final String vrouterIpAddress;
+        private final LinkedList<PortOp> ops = new LinkedList<PortOp>();
+        private boolean scheduled;
+
+        private final LatencyStats queueLatency = new LatencyStats();
+        private final LatencyStats addPortLatency = new LatencyStats();
+        private final LatencyStats deletePortLatency = new LatencyStats();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong superseded = new AtomicLong();
+
+        PortQueue(String vrouterIpAddress) {
+            this.vrouterIpAddress = vrouterIpAddress;
+        }
+
+        void add(PortOp op) {
+            boolean submit = false;
+            synchronized (this) {
+                ops.add(op);
+                if (!scheduled) {
+                    scheduled = true;
+                    submit = true;
+                }
+            }
+            if (submit) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                PortOp op;
+                long delay;
+                synchronized (this) {
+                    op = ops.peek();
+                    if (op == null) {
+                        scheduled = false;
+                        return;
+                    }
+                    delay = op.notBefore - System.currentTimeMillis();
+                    if (delay <= 0) {
+                        ops.poll();
+                    }
+                }
+                if (delay > 0) {
+                    // give the thread back until the rate limit allows more
+                    timer.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            executor.execute(PortQueue.this);
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                execute(op);
+            }
+            // back to the end of the pool queue, other vRouters go first
+            executor.execute(this);
+        }
+
+        private void execute(PortOp op) {
+            try {
+                send(op);
+            } finally {
+                op.done();
+            }
+        }
+
+        private void send(PortOp op) {
+            long start = System.currentTimeMillis();
+            queueLatency.record(start - op.enqueueTime);
+            if (op.isStale()) {
+                superseded.incrementAndGet();
+                return;
+            }
+            boolean ret = false;
+            try {
+                ContrailVRouterApi vrouterApi =
+                        VRouterNotifier.getVrouterApi(vrouterIpAddress);
+                if (vrouterApi != null) {
+                    // the keepalive uses the same connection
+                    synchronized (vrouterApi) {
+                        ret = op.send(vrouterApi);
+                    }
+                }
+            } catch (Throwable e) {
+                s_logger.error("Exception in " + (op.add ? "addPort" : "deletePort")
+                        + " for " + op.description + ": " + e.getMessage());
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            if (op.add) {
+                addPortLatency.record(elapsed);
+            } else {
+                deletePortLatency.record(elapsed);
+            }
+            if (ret) {
+                op.sent();
+                s_logger.info("VRouterAPi " + (op.add ? "Add" : "Delete")
+                        + " Port success for " + op.description);
+            } else {
+                // log failure but don't worry. Periodic KeepAlive task will
+                // attempt to connect to vRouter Agent and replay the ports.
+                failures.incrementAndGet();
+                VRouterNotifier.getHealth(vrouterIpAddress).suspect();
+                s_logger.error("VRouterAPI " + (op.add ? "Add" : "Delete")
+                        + " Port failed for " + op.description);
+            }
+        }
+
+        public String getVrouterIpAddress() {
+            return vrouterIpAddress;
+        }
+
+        public synchronized int getDepth() {
+            return ops.size();
+        }
+
+        public LatencyStats getQueueLatency() {
+            return queueLatency;
+        }
+
+        public LatencyStats getAddPortLatency() {
+            return addPortLatency;
+        }
+
+        public LatencyStats getDeletePortLatency() {
+            return deletePortLatency;
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getSuperseded() {
+            return superseded.get();
+        }
+    }
+
+    public VRouterPortDispatcher(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads " + threads);
+        }
+        this.threads = threads;
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r,
+                        "vrouter-port-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "vrouter-port-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        s_logger.info("Started " + threads + " vRouter port threads");
+    }
+
+    /**
+     * Queues the operation behind the earlier ones for the same vRouter
+     * and returns right away.
+     */
+    void enqueue(String vrouterIpAddress, PortOp op) {
+        op.enqueueTime = System.currentTimeMillis();
+        getQueue(vrouterIpAddress).add(op);
+    }
+
+    /**
+     * Queues the operations spaced so that no more than opsPerSecond
+     * of them are sent to the vRouter.
+     */
+    void enqueue(String vrouterIpAddress, List<PortOp> ops, int opsPerSecond) {
+        long now = System.currentTimeMillis();
+        long interval = (opsPerSecond > 0) ? 1000 / opsPerSecond : 0;
+        PortQueue queue = getQueue(vrouterIpAddress);
+        for (int i = 0; i < ops.size(); i++) {
+            PortOp op = ops.get(i);
+            op.enqueueTime = now;
+            op.notBefore = now + i * interval;
+            queue.add(op);
+        }
+    }
+
+    private PortQueue getQueue(String vrouterIpAddress) {
+        PortQueue queue = queues.get(vrouterIpAddress);
+        if (queue == null) {
+            queue = new PortQueue(vrouterIpAddress);
+            PortQueue oldQueue = queues.putIfAbsent(vrouterIpAddress, queue);
+            if (oldQueue != null) {
+                queue = oldQueue;
+            }
+        }
+        return queue;
+    }
+
+    public PortQueue getPortQueue(String vrouterIpAddress) {
+        return queues.get(vrouterIpAddress);
+    }
+
+    public Map<String, PortQueue> getPortQueues() {
+        return queues;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (PortQueue queue: queues.values()) {
+            depth += queue.getDepth();
+        }
+        return depth;
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        executor.shutdownNow();
+    }
+}
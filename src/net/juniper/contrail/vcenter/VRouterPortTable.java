@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import net.juniper.contrail.contrail_vrouter_api.ContrailVRouterApi;
+
+/**
+ * Ports of one vRouter agent: the desired state, as computed from vCenter,
+ * and the acknowledged state, what the agent accepted so far.
+ *
+ * An AddPort identical to the acknowledged one is not sent again, so a
+ * sync does not resend every port. After the agent reconnects only the
+ * difference between the two states is sent. Whether the agent is up is
+ * the VRouterConnection's business.
+ */
+public class VRouterPortTable {
+    private final String vrouterIpAddress;
+    private final Map<UUID, PortEntry> desired = new ConcurrentHashMap<UUID, PortEntry>();
+    private final Map<UUID, PortEntry> acked = new ConcurrentHashMap<UUID, PortEntry>();
+    // AddPorts and DeletePorts in the dispatcher queue or being sent
+    private final Map<UUID, PortEntry> queuedAdds = new ConcurrentHashMap<UUID, PortEntry>();
+    private final Set<UUID> queuedDeletes =
+            Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    /**
+     * The AddPort arguments of one VMI.
+     */
+    public static class PortEntry {
+        final UUID vmiUuid;
+        final UUID vmUuid;
+        final String vmiName;
+        final InetAddress ipAddress;
+        final byte[] macAddress;
+        final UUID vnUuid;
+        final short isolatedVlanId;
+        final short primaryVlanId;
+        final String vmName;
+
+        PortEntry(UUID vmiUuid, UUID vmUuid, String vmiName,
+                InetAddress ipAddress, byte[] macAddress, UUID vnUuid,
+                short isolatedVlanId, short primaryVlanId, String vmName) {
+            this.vmiUuid = vmiUuid;
+            this.vmUuid = vmUuid;
+            this.vmiName = vmiName;
+            this.ipAddress = ipAddress;
+            this.macAddress = macAddress;
+            this.vnUuid = vnUuid;
+            this.isolatedVlanId = isolatedVlanId;
+            this.primaryVlanId = primaryVlanId;
+            this.vmName = vmName;
+        }
+
+        boolean addPort(ContrailVRouterApi vrouterApi) {
+            return vrouterApi.AddPort(vmiUuid, vmUuid, vmiName, ipAddress,
+                    macAddress, vnUuid, isolatedVlanId, primaryVlanId, vmName);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PortEntry)) {
+                return false;
+            }
+            PortEntry other = (PortEntry) obj;
+            return vmiUuid.equals(other.vmiUuid)
+                && vmUuid.equals(other.vmUuid)
+                && equal(vmiName, other.vmiName)
+                && ipAddress.equals(other.ipAddress)
+                && Arrays.equals(macAddress, other.macAddress)
+                && vnUuid.equals(other.vnUuid)
+                && isolatedVlanId == other.isolatedVlanId
+                && primaryVlanId == other.primaryVlanId
+                && equal(vmName, other.vmName);
+        }
+
+        private static boolean equal(String a, String b) {
+            return (a == null) ? (b == null) : a.equals(b);
+        }
+
+        @Override
+        public int hashCode() {
+            return vmiUuid.hashCode() * 31 + ipAddress.hashCode();
+        }
+    }
+
+    public VRouterPortTable(String vrouterIpAddress) {
+        this.vrouterIpAddress = vrouterIpAddress;
+    }
+
+    /**
+     * Returns false when the agent already acknowledged this exact port.
+     */
+    boolean setDesired(PortEntry entry) {
+        desired.put(entry.vmiUuid, entry);
+        if (entry.equals(acked.get(entry.vmiUuid))) {
+            skipped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    void removeDesired(UUID vmiUuid) {
+        desired.remove(vmiUuid);
+    }
+
+    /**
+     * An AddPort queued earlier is stale when the port changed or was
+     * deleted since, or when an identical AddPort went through meanwhile.
+     * A DeletePort is stale when the port was added back since.
+     */
+    boolean isDesired(PortEntry entry) {
+        return entry.equals(desired.get(entry.vmiUuid))
+            && !entry.equals(acked.get(entry.vmiUuid));
+    }
+
+    boolean isDesired(UUID vmiUuid) {
+        return desired.containsKey(vmiUuid);
+    }
+
+    /**
+     * Marks an AddPort as queued. Returns false when the same AddPort is
+     * queued already, it goes out without being queued again.
+     */
+    boolean addQueued(PortEntry entry) {
+        return !entry.equals(queuedAdds.put(entry.vmiUuid, entry));
+    }
+
+    void addDone(PortEntry entry) {
+        queuedAdds.remove(entry.vmiUuid, entry);
+    }
+
+    /**
+     * Marks a DeletePort as queued. Returns false when one is queued
+     * already.
+     */
+    boolean deleteQueued(UUID vmiUuid) {
+        return queuedDeletes.add(vmiUuid);
+    }
+
+    void deleteDone(UUID vmiUuid) {
+        queuedDeletes.remove(vmiUuid);
+    }
+
+    void added(PortEntry entry) {
+        acked.put(entry.vmiUuid, entry);
+    }
+
+    void deleted(UUID vmiUuid) {
+        acked.remove(vmiUuid);
+    }
+
+    List<PortEntry> getAddDelta() {
+        List<PortEntry> delta = new ArrayList<PortEntry>();
+        for (PortEntry entry: desired.values()) {
+            if (!entry.equals(acked.get(entry.vmiUuid))) {
+                delta.add(entry);
+            }
+        }
+        return delta;
+    }
+
+    List<UUID> getDeleteDelta() {
+        List<UUID> delta = new ArrayList<UUID>();
+        for (UUID vmiUuid: acked.keySet()) {
+            if (!desired.containsKey(vmiUuid)) {
+                delta.add(vmiUuid);
+            }
+        }
+        return delta;
+    }
+
+    void replayed(int count) {
+        replayed.addAndGet(count);
+    }
+
+    public String getVrouterIpAddress() {
+        return vrouterIpAddress;
+    }
+
+    public int getDesiredCount() {
+        return desired.size();
+    }
+
+    public int getAckedCount() {
+        return acked.size();
+    }
+
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+}
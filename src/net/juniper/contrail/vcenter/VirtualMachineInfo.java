@@ -25,6 +25,8 @@ import com.vmware.vim25.RuntimeFault;
 import net.juniper.contrail.api.ApiPropertyBase;
 import net.juniper.contrail.api.ObjectReference;
 import net.juniper.contrail.api.types.VirtualMachine;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 public class VirtualMachineInfo extends VCenterObject {
     private String uuid; // required attribute, key for this object
@@ -40,8 +42,12 @@ public class VirtualMachineInfo extends VCenterObject {
     private SortedMap<String, VirtualMachineInterfaceInfo> vmiInfoMap; // key is MAC address
     protected static final String contrailVRouterVmNamePrefix = "contrailVM";
 
-    // Vmware objects
+    // host, vRouter and datacenter names are shared by many VMs
+    private static final Interner<String> names = Interners.newWeakInterner();
+
+    // Vmware objects, dropped by compact() but for the MOR value
     com.vmware.vim25.mo.VirtualMachine vm;
+    private String vmMor;
     com.vmware.vim25.mo.HostSystem host;
     com.vmware.vim25.mo.VmwareDistributedVirtualSwitch dvs;
     String dvsName;
@@ -54,36 +60,51 @@ public class VirtualMachineInfo extends VCenterObject {
     public VirtualMachineInfo(String uuid) {
         this.uuid             = uuid;
 
-        vmiInfoMap = new ConcurrentSkipListMap<String, VirtualMachineInterfaceInfo>();
+        vmiInfoMap = newVmiMap();
+    }
+
+    /*
+     * VMs have one or two interfaces, in compact mode they are kept in
+     * an array instead of a skip list.
+     */
+    private static SortedMap<String, VirtualMachineInterfaceInfo> newVmiMap() {
+        if (VCenterMonitor.compactRecords) {
+            return new ArraySortedMap<String, VirtualMachineInterfaceInfo>();
+        }
+        return new ConcurrentSkipListMap<String, VirtualMachineInterfaceInfo>();
+    }
+
+    static String intern(String name) {
+        return name == null ? null : names.intern(name);
     }
 
     public VirtualMachineInfo(Event event,  VCenterDB vcenterDB, VncDB vncDB) throws Exception {
         if (event.getDatacenter() != null) {
-            dcName = event.getDatacenter().getName();
+            dcName = intern(event.getDatacenter().getName());
             dc = vcenterDB.getVmwareDatacenter(dcName);
         }
 
         if (event.getDvs() != null) {
-            dvsName = event.getDvs().getName();
+            dvsName = intern(event.getDvs().getName());
             dvs = vcenterDB.getVmwareDvs(dvsName, dc, dcName);
         } else {
-            dvsName = vcenterDB.contrailDvSwitchName;
+            dvsName = intern(vcenterDB.contrailDvSwitchName);
             dvs = vcenterDB.getVmwareDvs(dvsName, dc, dcName);
         }
 
         if (event.getHost() != null) {
-            hostName = event.getHost().getName();
+            hostName = intern(event.getHost().getName());
             host = vcenterDB.getVmwareHost(hostName, dc, dcName);
 
             if (event.getVm() != null) {
                 name = event.getVm().getName();
   
-                vm = vcenterDB.getVmwareVirtualMachine(name, host, hostName, dcName);
+                setVm(vcenterDB.getVmwareVirtualMachine(name, host, hostName, dcName));
              }
         }
         
-        vrouterIpAddress = vcenterDB.getVRouterVMIpFabricAddress(
-                hostName, host, contrailVRouterVmNamePrefix);
+        vrouterIpAddress = intern(vcenterDB.getVRouterVMIpFabricAddress(
+                hostName, host, contrailVRouterVmNamePrefix));
         
         uuid = vm.getConfig().getInstanceUuid();
 
@@ -91,7 +112,7 @@ public class VirtualMachineInfo extends VCenterObject {
         powerState = vmRuntimeInfo.getPowerState();
         toolsRunningStatus = vm.getGuest().getToolsRunningStatus();
 
-        vmiInfoMap = new ConcurrentSkipListMap<String, VirtualMachineInterfaceInfo>();
+        vmiInfoMap = newVmiMap();
         vcenterDB.readVirtualMachineInterfaces(this);
         
         if (vcenterDB.mode == Mode.VCENTER_AS_COMPUTE) {
@@ -105,7 +126,7 @@ public class VirtualMachineInfo extends VCenterObject {
     }
 
     public VirtualMachineInfo(net.juniper.contrail.api.types.VirtualMachine vm) {
-        vmiInfoMap = new ConcurrentSkipListMap<String, VirtualMachineInterfaceInfo>();
+        vmiInfoMap = newVmiMap();
         
         if (vm == null) {
             return;
@@ -121,6 +142,15 @@ public class VirtualMachineInfo extends VCenterObject {
             com.vmware.vim25.mo.HostSystem host,
             String vrouterIpAddress) 
                     throws Exception {
+        this(vcenterDB, dc, dcName, vm, pTable, host, null, vrouterIpAddress);
+    }
+
+    public VirtualMachineInfo(VCenterDB vcenterDB,
+            com.vmware.vim25.mo.Datacenter dc, String dcName,
+            com.vmware.vim25.mo.VirtualMachine vm, Hashtable pTable, 
+            com.vmware.vim25.mo.HostSystem host, String hostName,
+            String vrouterIpAddress) 
+                    throws Exception {
 
         if (vcenterDB == null || dc == null || dcName == null
                 || vm == null || pTable == null) {
@@ -128,8 +158,8 @@ public class VirtualMachineInfo extends VCenterObject {
         }
         
         this.dc = dc;
-        this.dcName = dcName;
-        this.vm = vm;
+        this.dcName = intern(dcName);
+        setVm(vm);
         
         // Name
         uuid  = (String)  pTable.get("config.instanceUuid");
@@ -139,7 +169,11 @@ public class VirtualMachineInfo extends VCenterObject {
             ManagedObjectReference hostHmor = (ManagedObjectReference) pTable.get("runtime.host");
             host = new HostSystem(vm.getServerConnection(), hostHmor);
         }
-        hostName = host.getName();
+        this.host = host;
+        if (hostName == null) {
+            hostName = host.getName();
+        }
+        this.hostName = intern(hostName);
 
         powerState = (VirtualMachinePowerState)pTable.get("runtime.powerState");
         toolsRunningStatus  = (String)  pTable.get("guest.toolsRunningStatus");
@@ -148,8 +182,9 @@ public class VirtualMachineInfo extends VCenterObject {
             vrouterIpAddress = vcenterDB.getVRouterVMIpFabricAddress(
                     hostName, host, contrailVRouterVmNamePrefix);
         }
+        this.vrouterIpAddress = intern(vrouterIpAddress);
 
-        vmiInfoMap = new ConcurrentSkipListMap<String, VirtualMachineInterfaceInfo>();
+        vmiInfoMap = newVmiMap();
     }
     
     public String getHostName() {
@@ -157,7 +192,7 @@ public class VirtualMachineInfo extends VCenterObject {
     }
 
     public void setHostName(String hostName) {
-        this.hostName = hostName;
+        this.hostName = intern(hostName);
     }
 
     public ManagedObjectReference getHmor() {
@@ -173,7 +208,42 @@ public class VirtualMachineInfo extends VCenterObject {
     }
 
     public void setVrouterIpAddress(String vrouterIpAddress) {
-        this.vrouterIpAddress = vrouterIpAddress;
+        this.vrouterIpAddress = intern(vrouterIpAddress);
+    }
+
+    /**
+     * MOR value of the vCenter VM, kept when the VM object is dropped.
+     */
+    public String getVmMor() {
+        return vmMor;
+    }
+
+    /**
+     * Sets the vCenter VM and the MOR value compact() keeps of it.
+     */
+    void setVm(com.vmware.vim25.mo.VirtualMachine vm) {
+        this.vm = vm;
+        vmMor = vm.getMOR().getVal();
+    }
+
+    /**
+     * The vCenter VM, rebuilt from its MOR value on the current vCenter
+     * connection if compact() dropped it.
+     */
+    com.vmware.vim25.mo.VirtualMachine getVm() {
+        com.vmware.vim25.mo.VirtualMachine vm = this.vm;
+        if (vm != null || vmMor == null) {
+            return vm;
+        }
+        VCenterDB vcenterDB = VCenterNotify.getVcenterDB();
+        if (vcenterDB == null || vcenterDB.getServiceInstance() == null) {
+            return null;
+        }
+        ManagedObjectReference mor = new ManagedObjectReference();
+        mor.setType("VirtualMachine");
+        mor.setVal(vmMor);
+        return new com.vmware.vim25.mo.VirtualMachine(
+                vcenterDB.getServiceInstance().getServerConnection(), mor);
     }
 
     public String getMacAddress() {
@@ -270,6 +340,27 @@ public class VirtualMachineInfo extends VCenterObject {
                 oldVmi.updatedGuestNic(nic, vncDB);
             }
         }
+        compact();
+    }
+
+    /*
+     * In compact mode, drops what can be found again once the VM is in
+     * MainDB and the API server: the vijava objects but for the MOR
+     * value, and the API server objects, VncDB reads them by UUID when
+     * it needs them.
+     */
+    void compact() {
+        if (!VCenterMonitor.compactRecords) {
+            return;
+        }
+        vm = null;
+        host = null;
+        dvs = null;
+        dc = null;
+        apiVm = null;
+        for (VirtualMachineInterfaceInfo vmiInfo: vmiInfoMap.values()) {
+            vmiInfo.compact();
+        }
     }
     
     public void created(VirtualMachineInterfaceInfo vmiInfo) {
@@ -395,6 +486,7 @@ public class VirtualMachineInfo extends VCenterObject {
        }
        
        MainDB.created(this); 
+       compact();
     }
     
     @Override
@@ -428,8 +520,9 @@ public class VirtualMachineInfo extends VCenterObject {
         if (newVmInfo.toolsRunningStatus != null) {
             toolsRunningStatus = newVmInfo.toolsRunningStatus;
         }
-        if (newVmInfo.vm != null) {
+        if (newVmInfo.vmMor != null) {
             vm = newVmInfo.vm;
+            vmMor = newVmInfo.vmMor;
         }
         if (newVmInfo.host != null) {
             host = newVmInfo.host;
@@ -462,7 +555,11 @@ public class VirtualMachineInfo extends VCenterObject {
            vmiInfo.setVmInfo(this);
         }
         
+        // refresh the name and MOR indexes
+        MainDB.updated(this);
+        
         MainDB.update(vmiInfoMap, newVmInfo.vmiInfoMap);
+        compact();
     }
 
     @Override
@@ -483,6 +580,7 @@ public class VirtualMachineInfo extends VCenterObject {
         //vncDB.updateVirtualMachine(this);
         
         MainDB.sync(oldVmInfo.vmiInfoMap, this.vmiInfoMap);
+        compact();
     }
 
     @Override
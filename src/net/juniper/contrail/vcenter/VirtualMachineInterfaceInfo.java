@@ -10,6 +10,8 @@ import net.juniper.contrail.api.types.VirtualMachine;
 import net.juniper.contrail.api.types.VirtualMachineInterface;
 
 import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.UUID;
 
 import com.vmware.vim25.GuestNicInfo;
 import com.vmware.vim25.NetIpConfigInfo;
@@ -25,6 +27,13 @@ public class VirtualMachineInterfaceInfo extends VCenterObject {
     private String ipAddress;
     private String macAddress;
     private boolean up;
+
+    // AddPort arguments, parsed once and checked against their inputs
+    private VRouterPortTable.PortEntry portEntry;
+    private String portEntryIpAddress;
+    private String portEntryMacAddress;
+    private String portEntryVmUuid;
+    private String portEntryVnUuid;
     
     //API server objects
     net.juniper.contrail.api.types.VirtualMachineInterface apiVmi;
@@ -36,6 +45,21 @@ public class VirtualMachineInterfaceInfo extends VCenterObject {
         this.vnInfo = vnInfo;
     }
 
+    /**
+     * UUID of the VMI the plugin creates for this VM, network and MAC.
+     * Being the same on every run, the VMI can be read back by UUID
+     * and creating it again is harmless.
+     */
+    static String deriveUuid(String vmUuid, String vnUuid, String macAddress) {
+        String key = "vmi:" + vmUuid + ":" + vnUuid + ":" + macAddress;
+        return UUID.nameUUIDFromBytes(key.getBytes()).toString();
+    }
+
+    static String deriveInstanceIpUuid(String vmiUuid) {
+        String key = "instance-ip:" + vmiUuid;
+        return UUID.nameUUIDFromBytes(key.getBytes()).toString();
+    }
+
     public String getUuid() {
         return uuid;
     }
@@ -76,6 +100,63 @@ public class VirtualMachineInterfaceInfo extends VCenterObject {
         this.ipAddress = ipAddress;
     }
 
+    /**
+     * Returns the AddPort arguments of this VMI, rebuilt only when one
+     * of them changed since the last call.
+     */
+    synchronized VRouterPortTable.PortEntry getPortEntry()
+            throws UnknownHostException {
+        VRouterPortTable.PortEntry entry = portEntry;
+        if (entry != null
+                && entry.vmiName.equals(uuid)
+                && portEntryVmUuid.equals(vmInfo.getUuid())
+                && portEntryVnUuid.equals(vnInfo.getUuid())
+                && portEntryIpAddress.equals(ipAddress)
+                && portEntryMacAddress.equals(macAddress)
+                && entry.isolatedVlanId == vnInfo.getIsolatedVlanId()
+                && entry.primaryVlanId == vnInfo.getPrimaryVlanId()
+                && (entry.vmName == null ? vmInfo.getName() == null
+                        : entry.vmName.equals(vmInfo.getName()))) {
+            return entry;
+        }
+        entry = new VRouterPortTable.PortEntry(
+                UUID.fromString(uuid),
+                UUID.fromString(vmInfo.getUuid()), uuid,
+                Utils.parseInetAddress(ipAddress),
+                Utils.parseMacAddress(macAddress),
+                UUID.fromString(vnInfo.getUuid()),
+                vnInfo.getIsolatedVlanId(),
+                vnInfo.getPrimaryVlanId(), vmInfo.getName());
+        portEntry = entry;
+        portEntryIpAddress = ipAddress;
+        portEntryMacAddress = macAddress;
+        portEntryVmUuid = vmInfo.getUuid();
+        portEntryVnUuid = vnInfo.getUuid();
+        return entry;
+    }
+
+    /**
+     * The UUID of this VMI, parsed only when no AddPort was built yet.
+     */
+    synchronized UUID getVmiUuid() {
+        if (portEntry != null && portEntry.vmiName.equals(uuid)) {
+            return portEntry.vmiUuid;
+        }
+        return UUID.fromString(uuid);
+    }
+
+    private synchronized void reusePortEntry(VirtualMachineInterfaceInfo oldVmiInfo) {
+        synchronized (oldVmiInfo) {
+            if (portEntry == null && oldVmiInfo.portEntry != null) {
+                portEntry = oldVmiInfo.portEntry;
+                portEntryIpAddress = oldVmiInfo.portEntryIpAddress;
+                portEntryMacAddress = oldVmiInfo.portEntryMacAddress;
+                portEntryVmUuid = oldVmiInfo.portEntryVmUuid;
+                portEntryVnUuid = oldVmiInfo.portEntryVnUuid;
+            }
+        }
+    }
+
     public void updatedGuestNic(GuestNicInfo nic, VncDB vncDB) 
                 throws Exception {
         if (nic == null) {
@@ -148,6 +229,15 @@ public class VirtualMachineInterfaceInfo extends VCenterObject {
             + ", " + uuid + ">";
     }
 
+    /*
+     * Drops the API server objects, VncDB reads them by UUID when it
+     * needs them again.
+     */
+    void compact() {
+        apiVmi = null;
+        apiInstanceIp = null;
+    }
+
     @Override
     void create(VncDB vncDB) throws Exception {
         vncDB.createVirtualMachineInterface(this);
@@ -229,6 +319,7 @@ public class VirtualMachineInterfaceInfo extends VCenterObject {
         if (apiVmi == null && oldVmiInfo.apiVmi != null) {
             apiVmi = oldVmiInfo.apiVmi;
         }
+        reusePortEntry(oldVmiInfo);
         
         if (vnInfo == oldVmiInfo.vnInfo) {
             // network is the same
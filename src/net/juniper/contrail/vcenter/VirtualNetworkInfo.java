@@ -10,6 +10,7 @@ import java.util.SortedMap;
 import java.util.UUID;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.vmware.vim25.DVPortSetting;
 import com.vmware.vim25.DVSConfigInfo;
@@ -39,6 +40,7 @@ public class VirtualNetworkInfo extends VCenterObject {
     private short primaryVlanId;
     private SortedMap<String, VirtualMachineInfo> vmInfo;
     private SortedMap<String, VirtualMachineInterfaceInfo> vmiInfoMap; // key is MAC address
+    private final AtomicInteger vmiVersion = new AtomicInteger(); // changes of vmiInfoMap
     private Integer ipPoolId;
     private String subnetAddress;
     private String subnetMask;
@@ -50,6 +52,7 @@ public class VirtualNetworkInfo extends VCenterObject {
     // Vmware
     com.vmware.vim25.mo.Network net;
     DistributedVirtualPortgroup dpg;
+    String dpgKey;
     DVPortSetting portSetting;
     com.vmware.vim25.mo.VmwareDistributedVirtualSwitch dvs;
     String dvsName;
@@ -152,6 +155,7 @@ public class VirtualNetworkInfo extends VCenterObject {
         }
 
         name = (String) pTable.get("name");
+        dpgKey = (String) pTable.get("config.key");
 
         switch(vcenterDB.mode) {
         case VCENTER_AS_COMPUTE:
@@ -266,6 +270,10 @@ public class VirtualNetworkInfo extends VCenterObject {
         return vmiInfoMap;
     }
 
+    int getVmiVersion() {
+        return vmiVersion.get();
+    }
+
     public SortedMap<String, VirtualMachineInfo> getVmInfo() {
         return vmInfo;
     }
@@ -385,23 +393,38 @@ public class VirtualNetworkInfo extends VCenterObject {
     public void setDpg(DistributedVirtualPortgroup dpg) {
         this.dpg = dpg;
     }
+
+    public String getDpgKey() throws RemoteException {
+        if (dpgKey == null && dpg != null) {
+            dpgKey = dpg.getKey();
+        }
+        return dpgKey;
+    }
     
     public void created(VirtualMachineInterfaceInfo vmiInfo) {
         vmiInfoMap.put(vmiInfo.getMacAddress(), vmiInfo);
+        vmiChanged();
     }
     
     public void updated(VirtualMachineInterfaceInfo vmiInfo) {
         if (!vmiInfoMap.containsKey(vmiInfo.getMacAddress())) {
             vmiInfoMap.put(vmiInfo.getMacAddress(), vmiInfo);
+            vmiChanged();
         }
     }
 
     public void deleted(VirtualMachineInterfaceInfo vmiInfo) {
         if (vmiInfoMap.containsKey(vmiInfo.getMacAddress())) {
             vmiInfoMap.remove(vmiInfo.getMacAddress());
+            vmiChanged();
         }
     }
 
+    private void vmiChanged() {
+        vmiVersion.incrementAndGet();
+        MainDB.changed();
+    }
+
     public boolean equals(VirtualNetworkInfo vn) {
         if (vn == null) {
             return false;
@@ -535,6 +558,9 @@ public class VirtualNetworkInfo extends VCenterObject {
         if (newVnInfo.dpg != null) {
             dpg = newVnInfo.dpg;
         }
+        if (newVnInfo.dpgKey != null) {
+            dpgKey = newVnInfo.dpgKey;
+        }
         if (newVnInfo.portSetting != null) {
             portSetting = newVnInfo.portSetting;
         }
@@ -546,6 +572,9 @@ public class VirtualNetworkInfo extends VCenterObject {
             dvsName = newVnInfo.dvsName;
         }
         
+        // refresh the name and MOR indexes
+        MainDB.updated(this);
+        
         // notify observers
         // for networks we do not update the API server
     }
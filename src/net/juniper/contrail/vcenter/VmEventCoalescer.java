@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import com.vmware.vim25.Event;
+
+/**
+ * Merges the bursts of VM update events vCenter sends for one operation
+ * (a clone produces created, reconfigured, powered on, mac assigned, ...).
+ *
+ * The first update for a VM opens a window; later updates for the same
+ * VM within the window replace the pending one. When the window expires
+ * only the last event is emitted. Since the handler reads the current VM
+ * state from vCenter, the last event is enough to bring the VM up to date.
+ *
+ * Pending updates are emitted under the coalescer lock, so work that the
+ * caller dispatches after flush(key) or supersede(key) is queued behind it.
+ */
+public abstract class VmEventCoalescer implements Runnable {
+    private static final Logger s_logger =
+            Logger.getLogger(VmEventCoalescer.class);
+
+    private final long windowMillis;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    // insertion order is deadline order, the window is the same for all keys
+    private final LinkedHashMap<String, Pending> pending =
+            new LinkedHashMap<String, Pending>();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong emitted = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+
+    private static class Pending {
+        Event event;
+        final long deadline;
+
+        Pending(Event event, long deadline) {
+            this.event = event;
+            this.deadline = deadline;
+        }
+    }
+
+    public VmEventCoalescer(long windowMillis) {
+        this.windowMillis = windowMillis;
+        if (windowMillis > 0) {
+            thread = new Thread(this, "vcenter-event-coalescer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Called with the coalescer lock held.
+     */
+    protected abstract void emit(String key, Event event)
+            throws InterruptedException;
+
+    public synchronized void add(String key, Event event)
+            throws InterruptedException {
+        received.incrementAndGet();
+        if (windowMillis <= 0 || key == null) {
+            emitted.incrementAndGet();
+            emit(key, event);
+            return;
+        }
+        Pending p = pending.get(key);
+        if (p != null) {
+            p.event = event;
+            return;
+        }
+        pending.put(key, new Pending(event,
+                System.currentTimeMillis() + windowMillis));
+        notifyAll();
+    }
+
+    /**
+     * Emits the pending update for this key, if any, so that the work
+     * the caller is about to dispatch for the same object follows it.
+     */
+    public synchronized void flush(String key) throws InterruptedException {
+        if (key == null) {
+            return;
+        }
+        Pending p = pending.remove(key);
+        if (p != null) {
+            emitted.incrementAndGet();
+            emit(key, p.event);
+        }
+    }
+
+    public synchronized void flushAll() throws InterruptedException {
+        Iterator<Map.Entry<String, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Pending> entry = it.next();
+            it.remove();
+            emitted.incrementAndGet();
+            emit(entry.getKey(), entry.getValue().event);
+        }
+    }
+
+    /**
+     * Drops the pending update for this key, used when the VM is deleted.
+     */
+    public synchronized boolean supersede(String key) {
+        if (key == null) {
+            return false;
+        }
+        if (pending.remove(key) != null) {
+            superseded.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        wait();
+                        continue;
+                    }
+                    Iterator<Map.Entry<String, Pending>> it =
+                            pending.entrySet().iterator();
+                    Map.Entry<String, Pending> first = it.next();
+                    long delay = first.getValue().deadline
+                            - System.currentTimeMillis();
+                    if (delay > 0) {
+                        wait(delay);
+                        continue;
+                    }
+                    it.remove();
+                    emitted.incrementAndGet();
+                    emit(first.getKey(), first.getValue().event);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                s_logger.error("Error emitting coalesced VM update: " + e);
+            }
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getEmitted() {
+        return emitted.get();
+    }
+
+    public long getSuperseded() {
+        return superseded.get();
+    }
+
+    /**
+     * Events received per update emitted or dropped by a delete,
+     * 1.0 when nothing was merged.
+     */
+    public double getCollapseRatio() {
+        long out = emitted.get() + superseded.get();
+        if (out == 0) {
+            return 1.0;
+        }
+        return (double) received.get() / out;
+    }
+}
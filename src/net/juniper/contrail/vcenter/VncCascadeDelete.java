@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+/**
+ * Deletes the children of an API server object in parallel.
+ *
+ * The children of one level do not refer to each other (the instance IPs
+ * of a network, the interfaces of a VM), so they are deleted on a small
+ * pool shared by all callers. deleteAll() returns once every child is
+ * gone, the caller then deletes what they referred to: instance IPs,
+ * then interfaces, then the VM or network.
+ *
+ * A child runs its own children inline, the pool threads never wait on
+ * the pool. With a single thread everything runs inline.
+ */
+public class VncCascadeDelete {
+    private static final Logger s_logger =
+            Logger.getLogger(VncCascadeDelete.class);
+
+    private final int threads;
+    private final ExecutorService executor;
+    private final ThreadLocal<Boolean> worker = new ThreadLocal<Boolean>();
+
+    private final AtomicLong deleted = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final LatencyStats latency = new LatencyStats();
+
+    public VncCascadeDelete(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads " + threads);
+        }
+        this.threads = threads;
+        if (threads == 1) {
+            executor = null;
+            return;
+        }
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        worker.set(Boolean.TRUE);
+                        r.run();
+                    }
+                }, "vnc-delete-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        s_logger.info("Started " + threads + " API server delete threads");
+    }
+
+    /**
+     * Runs the deletes and waits for all of them, even when some fail.
+     * Throws the first failure afterwards, the parent must then be kept
+     * since something may still refer to it.
+     */
+    public void deleteAll(String what, List<VncWriteBehind.Write> deletes)
+            throws IOException {
+        if (deletes.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Throwable failure;
+        if (executor == null || deletes.size() == 1 || worker.get() != null) {
+            failure = runInline(deletes);
+        } else {
+            failure = runParallel(deletes);
+        }
+        latency.record(System.currentTimeMillis() - start);
+
+        if (failure instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted deleting " + what);
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw new IOException("Cannot delete " + what, failure);
+        }
+    }
+
+    private Throwable runInline(List<VncWriteBehind.Write> deletes) {
+        Throwable failure = null;
+        for (VncWriteBehind.Write delete: deletes) {
+            Throwable e = run(delete);
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        return failure;
+    }
+
+    private Throwable runParallel(List<VncWriteBehind.Write> deletes) {
+        List<Future<Throwable>> futures = new ArrayList<Future<Throwable>>(deletes.size());
+        for (final VncWriteBehind.Write delete: deletes) {
+            futures.add(executor.submit(new Callable<Throwable>() {
+                @Override
+                public Throwable call() {
+                    return VncCascadeDelete.this.run(delete);
+                }
+            }));
+        }
+        Throwable failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            Throwable e;
+            try {
+                e = futures.get(i).get();
+            } catch (InterruptedException ie) {
+                for (int j = i; j < futures.size(); j++) {
+                    futures.get(j).cancel(true);
+                }
+                return ie;
+            } catch (ExecutionException ee) {
+                e = ee.getCause();
+            }
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        return failure;
+    }
+
+    private Throwable run(VncWriteBehind.Write delete) {
+        try {
+            delete.run();
+            deleted.incrementAndGet();
+            return null;
+        } catch (Throwable e) {
+            failures.incrementAndGet();
+            s_logger.error("Cascade delete failed: " + e);
+            return e;
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getDeleted() {
+        return deleted.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public LatencyStats getLatency() {
+        return latency;
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
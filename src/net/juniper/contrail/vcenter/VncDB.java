@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -19,12 +20,15 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.log4j.Logger;
 import org.apache.commons.net.util.SubnetUtils;
 import net.juniper.contrail.api.ApiConnector;
 import net.juniper.contrail.api.ApiConnectorFactory;
+import net.juniper.contrail.api.ApiObjectBase;
 import net.juniper.contrail.api.ApiPropertyBase;
 import net.juniper.contrail.api.ObjectReference;
+import net.juniper.contrail.api.types.Domain;
 import net.juniper.contrail.api.types.InstanceIp;
 import net.juniper.contrail.api.types.FloatingIp;
 import net.juniper.contrail.api.types.MacAddressesType;
@@ -60,6 +64,16 @@ public class VncDB {
     private SecurityGroup vCenterDefSecGrp;
     private IdPermsType vCenterIdPerms;
     Mode mode;
+    private volatile VncWriteBehind writeBehind;
+    private volatile ApiCircuitBreaker circuitBreaker;
+    private volatile VncCascadeDelete cascadeDelete;
+
+    // round trip of the liveness probe, sizes the waits on the API server
+    static final int PROBE_WINDOW = 64;
+    static final long API_TIMEOUT_MIN_MS = 2000;
+    static final long API_TIMEOUT_MAX_MS = 60000;
+    private final LatencyStats probeLatency = new LatencyStats(PROBE_WINDOW);
+    private final AtomicLong probeFailures = new AtomicLong();
 
     public static final String VNC_ROOT_DOMAIN     = "default-domain";
     public static final String VNC_VCENTER_PROJECT = "vCenter";
@@ -109,6 +123,34 @@ public class VncDB {
         this.authurl  = authurl;
     }
     
+    public VncWriteBehind getWriteBehind() {
+        if (writeBehind == null) {
+            synchronized (this) {
+                if (writeBehind == null) {
+                    VncWriteBehind newWriteBehind = new VncWriteBehind(
+                            VCenterMonitor.vncWriteThreads,
+                            VCenterMonitor.vncWriteInFlight);
+                    newWriteBehind.setCircuitBreaker(getCircuitBreaker(),
+                            VCenterMonitor.eventRetries);
+                    newWriteBehind.setSlowThreshold(getApiTimeout());
+                    writeBehind = newWriteBehind;
+                }
+            }
+        }
+        return writeBehind;
+    }
+
+    public VncCascadeDelete getCascadeDelete() {
+        if (cascadeDelete == null) {
+            synchronized (this) {
+                if (cascadeDelete == null) {
+                    cascadeDelete = new VncCascadeDelete(VCenterMonitor.vncDeleteThreads);
+                }
+            }
+        }
+        return cascadeDelete;
+    }
+
     public void setApiConnector(ApiConnector _apiConnector) {
         apiConnector = _apiConnector;
     }
@@ -153,27 +195,94 @@ public class VncDB {
             }
         }
 
-        // Read project list as a life check
-        s_logger.info(" Checking if api-server is alive and kicking..");
+        // Read a single object as a life check, not the whole project list
+        s_logger.debug(" Checking if api-server is alive and kicking..");
 
+        long start = System.currentTimeMillis();
+        ApiObjectBase pulse = null;
         try {
-            List<Project> projects = (List<Project>) apiConnector.list(Project.class, null);
-            if (projects == null) {
-                s_logger.error(" ApiServer not fully awake yet.. retry again..");
-                alive = false;
-                return false;
+            if (vCenterProject != null && vCenterProject.getUuid() != null) {
+                // once initialized, reading our own project is enough
+                pulse = apiConnector.findById(Project.class, vCenterProject.getUuid());
+            } else {
+                // the root domain exists on every API server
+                pulse = apiConnector.findByFQN(Domain.class, VNC_ROOT_DOMAIN);
             }
         } catch (Exception e) {
+            s_logger.error(" ApiServer probe failed: " + e);
+        }
+        if (pulse == null) {
+            s_logger.error(" ApiServer not fully awake yet.. retry again..");
+            probeFailures.incrementAndGet();
             alive = false;
             return false;
         }
+        long rtt = System.currentTimeMillis() - start;
+        probeLatency.record(rtt);
+        VncWriteBehind vncWrites = writeBehind;
+        if (vncWrites != null) {
+            vncWrites.setSlowThreshold(getApiTimeout());
+        }
 
+        if (!alive) {
+            s_logger.info(" Api-server alive. Got the pulse in " + rtt + " ms");
+        }
         alive = true;
-        s_logger.info(" Api-server alive. Got the pulse..");
         return true;
 
     }
 
+    public LatencyStats getProbeLatency() {
+        return probeLatency;
+    }
+
+    public long getProbeFailures() {
+        return probeFailures.get();
+    }
+
+    /**
+     * How long a single API server request is expected to take at most:
+     * a multiple of the recent 99th percentile of the probe round trip,
+     * so that a loaded API server is waited for and an idle one is not.
+     */
+    public long getApiTimeout() {
+        if (probeLatency.getCount() == 0) {
+            return API_TIMEOUT_MAX_MS;
+        }
+        long timeout = 10 * probeLatency.getPercentile(99);
+        return Math.max(API_TIMEOUT_MIN_MS, Math.min(timeout, API_TIMEOUT_MAX_MS));
+    }
+
+    public ApiCircuitBreaker getCircuitBreaker() {
+        if (circuitBreaker == null) {
+            synchronized (this) {
+                if (circuitBreaker == null) {
+                    circuitBreaker = new ApiCircuitBreaker(
+                            VCenterMonitor.apiBreakerThreshold,
+                            new ApiCircuitBreaker.Probe() {
+                                @Override
+                                public boolean probe() {
+                                    return isVncApiServerAlive();
+                                }
+                            });
+                }
+            }
+        }
+        return circuitBreaker;
+    }
+
+    /**
+     * True when the failure is the API server not answering, as opposed
+     * to an error in the request itself.
+     */
+    static boolean isApiServerError(String stackTrace) {
+        return stackTrace.contains("net.juniper.contrail.api.")
+            && (stackTrace.contains("java.net.ConnectException")
+                || stackTrace.contains("java.net.SocketTimeoutException")
+                || stackTrace.contains("NoHttpResponseException")
+                || stackTrace.contains("java.net.SocketException: Connection reset"));
+    }
+
     public boolean Initialize() {
 
         // Check if api-server is alive
@@ -677,14 +786,25 @@ public class VncDB {
         if (vmiInfo.apiVmi != null) {
             return;
         }
-        VirtualMachineInterface apiVmi = readVirtualMachineInterface(vmiInfo);
 
-        if (apiVmi != null) {
-            return;
+        if (vmiInfo.getUuid() == null) {
+            vmiInfo.setUuid(VirtualMachineInterfaceInfo.deriveUuid(
+                    vmInfo.getUuid(), vnInfo.getUuid(), vmiInfo.getMacAddress()));
         }
-        if (mode == Mode.VCENTER_AS_COMPUTE) {
-            s_logger.error("VMI not found in the API server " + vmiInfo);
-            return;
+        List<ObjectReference<ApiPropertyBase>> vmInterfaceRefs =
+                vm.getVirtualMachineInterfaceBackRefs();
+        if (vmInterfaceRefs != null && !vmInterfaceRefs.isEmpty()) {
+            // the VM was read from the API server, its VMI may exist
+            for (ObjectReference<ApiPropertyBase> vmInterfaceRef : vmInterfaceRefs) {
+                if (vmiInfo.getUuid().equals(vmInterfaceRef.getUuid())
+                        && readVirtualMachineInterfaceById(vmiInfo)) {
+                    return;
+                }
+            }
+            // created with a random UUID by an earlier version
+            if (readVirtualMachineInterface(vmiInfo) != null) {
+                return;
+            }
         }
 
         // create Virtual machine interface
@@ -694,9 +814,6 @@ public class VncDB {
         VirtualMachineInterface vmInterface = new VirtualMachineInterface();
         vmInterface.setDisplayName(vmInterfaceName);
         
-        if (vmiInfo.getUuid() == null) {
-            vmiInfo.setUuid(UUID.randomUUID().toString());
-        }
         vmInterface.setUuid(vmiInfo.getUuid());
         vmInterface.setName(vmiInfo.getUuid());
         vmInterface.setParent(vCenterProject);
@@ -707,12 +824,36 @@ public class VncDB {
         macAddrType.addMacAddress(vmiInfo.getMacAddress());
         vmInterface.setMacAddresses(macAddrType);
         vmInterface.setIdPerms(vCenterIdPerms);
-        apiConnector.create(vmInterface);
+        if (!apiConnector.create(vmInterface)) {
+            // same UUID, left by an earlier attempt
+            if (readVirtualMachineInterfaceById(vmiInfo)) {
+                return;
+            }
+            s_logger.error("Cannot create " + vmiInfo);
+            return;
+        }
         apiConnector.read(vmInterface);
         vmiInfo.apiVmi = vmInterface;
         s_logger.debug("Created " + vmiInfo);
     }
 
+    /*
+     * Adopts the VMI of this UUID if the API server has it.
+     */
+    private boolean readVirtualMachineInterfaceById(
+            VirtualMachineInterfaceInfo vmiInfo) throws IOException {
+        VirtualMachineInterface apiVmi = (VirtualMachineInterface)
+                apiConnector.findById(VirtualMachineInterface.class,
+                        vmiInfo.getUuid());
+        if (apiVmi == null) {
+            return false;
+        }
+        vmiInfo.apiVmi = apiVmi;
+        setMacAddress(vmiInfo);
+        readInstanceIp(vmiInfo);
+        return true;
+    }
+
     public void deleteVirtualMachineInterface(
             VirtualMachineInterfaceInfo vmiInfo)
             throws IOException {
@@ -808,8 +949,19 @@ public class VncDB {
             }
         }
         VirtualMachineInterface vmIntf = vmiInfo.apiVmi;
+        if (vmIntf == null) {
+            // dropped by a compact VM record
+            vmIntf = vmiInfo.apiVmi = (VirtualMachineInterface) apiConnector.findById(
+                    VirtualMachineInterface.class, vmiInfo.getUuid());
+
+            if (vmIntf == null) {
+                s_logger.error("Cannot find " + vmiInfo);
+                return;
+            }
+        }
         String instanceIpName = "ip-" + network.getName() + "-" + vmiInfo.vmInfo.getName() ;
-        String instIpUuid = UUID.randomUUID().toString();
+        String instIpUuid = VirtualMachineInterfaceInfo.deriveInstanceIpUuid(
+                vmiInfo.getUuid());
         
         InstanceIp instanceIp = new InstanceIp();
         if (vmiInfo.getIpAddress() != null) {
@@ -821,8 +973,28 @@ public class VncDB {
         instanceIp.setVirtualNetwork(network);
         instanceIp.setVirtualMachineInterface(vmIntf);
         instanceIp.setIdPerms(vCenterIdPerms);
-        apiConnector.create(instanceIp);
-        apiConnector.read(instanceIp);
+        if (!apiConnector.create(instanceIp)) {
+            // same UUID, left by an earlier attempt
+            InstanceIp oldInstanceIp = (InstanceIp) apiConnector.findById(
+                    InstanceIp.class, instIpUuid);
+            if (oldInstanceIp != null && vmiInfo.getIpAddress() != null
+                    && !vmiInfo.getIpAddress().equals(oldInstanceIp.getAddress())) {
+                // the static address changed meanwhile
+                apiConnector.delete(oldInstanceIp);
+                oldInstanceIp = null;
+                if (apiConnector.create(instanceIp)) {
+                    apiConnector.read(instanceIp);
+                    oldInstanceIp = instanceIp;
+                }
+            }
+            if (oldInstanceIp == null) {
+                s_logger.error("Cannot create instance IP for " + vmiInfo);
+                return;
+            }
+            instanceIp = oldInstanceIp;
+        } else {
+            apiConnector.read(instanceIp);
+        }
 
         vmiInfo.apiInstanceIp = instanceIp;
         vmiInfo.setIpAddress(instanceIp.getAddress());
@@ -831,28 +1003,66 @@ public class VncDB {
                 instanceIp.getAddress());
     }
 
+    /*
+     * List scope of the objects the plugin creates under the vCenter
+     * project. Objects of other projects are only of interest when
+     * vCenter is used as compute for another orchestrator.
+     */
+    private List<String> getListParent() {
+        if (mode == Mode.VCENTER_ONLY && vCenterProject != null) {
+            return vCenterProject.getQualifiedName();
+        }
+        return null;
+    }
+
     SortedMap<String, VirtualNetworkInfo> readVirtualNetworks() {
-        SortedMap<String, VirtualNetworkInfo>  map = 
-                new ConcurrentSkipListMap<String, VirtualNetworkInfo>();
+        return readAll(streamVirtualNetworks(Integer.MAX_VALUE));
+    }
 
+    /**
+     * The networks in UUID order, read pageSize at a time.
+     */
+    VncPageIterator<VirtualNetwork, VirtualNetworkInfo> streamVirtualNetworks(int pageSize) {
         List<VirtualNetwork> apiObjs = null;
         try {
             apiObjs = (List<VirtualNetwork>) 
-                    apiConnector.list(VirtualNetwork.class, null);
+                    apiConnector.list(VirtualNetwork.class, getListParent());
         } catch (Exception ex) {
             s_logger.error("Exception in api.list(VirtualNetworks): " + ex);
             ex.printStackTrace();
-            return map;
         }
-        
+
+        return new VncPageIterator<VirtualNetwork, VirtualNetworkInfo>(
+                Utils.safe(apiObjs), pageSize) {
+            @Override
+            SortedMap<String, VirtualNetworkInfo> readPage(List<VirtualNetwork> vns) {
+                return readVirtualNetworks(vns);
+            }
+        };
+    }
+
+    private static <V> SortedMap<String, V> readAll(Iterator<Entry<String, V>> iter) {
+        SortedMap<String, V> map = new ConcurrentSkipListMap<String, V>();
+        while (iter.hasNext()) {
+            Entry<String, V> entry = iter.next();
+            map.put(entry.getKey(), entry.getValue());
+        }
+        return map;
+    }
+
+    private SortedMap<String, VirtualNetworkInfo> readVirtualNetworks(
+            List<VirtualNetwork> apiObjs) {
+        SortedMap<String, VirtualNetworkInfo>  map = 
+                new ConcurrentSkipListMap<String, VirtualNetworkInfo>();
+
+        long start = System.currentTimeMillis();
         for (VirtualNetwork vn : apiObjs) {
             try {
-                //TODO can we get rid of this call by reading everything with the list?
-                apiConnector.read(vn);
                 // Ignore network ?
                 if (doIgnoreVirtualNetwork(vn.getName())) {
                     continue;
                 }
+                apiConnector.read(vn);
                 // Ignore objects where creator isn't "vcenter-plugin"
                 if ((mode == Mode.VCENTER_ONLY) && 
                         ((vn.getIdPerms().getCreator() == null)  ||
@@ -868,28 +1078,54 @@ public class VncDB {
             }
         }
 
+        s_logger.debug("Read " + map.size() + " virtual networks from the API server in "
+                + (System.currentTimeMillis() - start) + " ms");
         return map;
     }
 
- 
+    /*
+     * Reads the VMs with their interfaces and instance IPs.
+     * Every API object is fetched exactly once: interfaces and instance IPs
+     * are read in bulk and joined to the VMs in memory through the back
+     * references, instead of being fetched again for the MAC address and
+     * for the IP address of every interface.
+     */
     SortedMap<String, VirtualMachineInfo> readVirtualMachines() {
-        
+        return readAll(streamVirtualMachines(Integer.MAX_VALUE));
+    }
+
+    /**
+     * The VMs with their interfaces and instance IPs in UUID order,
+     * read pageSize VMs at a time.
+     */
+    VncPageIterator<VirtualMachine, VirtualMachineInfo> streamVirtualMachines(int pageSize) {
         List<VirtualMachine> apiVms = null;
-        SortedMap<String, VirtualMachineInfo>  map = 
-                new ConcurrentSkipListMap<String, VirtualMachineInfo>();
-        
         try {
             apiVms = (List<VirtualMachine>) 
                     apiConnector.list(VirtualMachine.class, null);
         } catch (Exception e) {
             s_logger.error("Exception in api.list(VirtualMachine): " + e);
             e.printStackTrace();
-            return map;
         }
-       
+
+        return new VncPageIterator<VirtualMachine, VirtualMachineInfo>(
+                Utils.safe(apiVms), pageSize) {
+            @Override
+            SortedMap<String, VirtualMachineInfo> readPage(List<VirtualMachine> vms) {
+                return readVirtualMachines(vms);
+            }
+        };
+    }
+
+    private SortedMap<String, VirtualMachineInfo> readVirtualMachines(
+            List<VirtualMachine> apiVms) {
+        SortedMap<String, VirtualMachineInfo>  map = 
+                new ConcurrentSkipListMap<String, VirtualMachineInfo>();
+        
+        long start = System.currentTimeMillis();
+        List<VirtualMachine> vms = new ArrayList<VirtualMachine>();
         for (VirtualMachine vm : apiVms) {
             try {
-                //TODO can we get rid of this call by reading everything with the list?
                 apiConnector.read(vm);
               
                 // Ignore objects where creator isn't "vcenter-plugin"
@@ -898,19 +1134,118 @@ public class VncDB {
                         !(vm.getIdPerms().getCreator().equals(VNC_VCENTER_PLUGIN)))) {
                     continue;
                 }
-                
-                VirtualMachineInfo vmInfo = new VirtualMachineInfo(vm);
-                readVirtualMachineInterfaces(vmInfo);
-
-                map.put(vmInfo.getUuid(), vmInfo);
+                vms.add(vm);
             } catch (Exception e) {
                 s_logger.error("Cannot sync VM " + vm.getName());
             }
         }
+
+        Map<String, VirtualMachineInterface> vmis = readVirtualMachineInterfaces(vms);
+        Map<String, InstanceIp> instanceIps = readInstanceIps(vmis.values());
+
+        for (VirtualMachine vm : vms) {
+            VirtualMachineInfo vmInfo = new VirtualMachineInfo(vm);
+            for (ObjectReference<ApiPropertyBase> vmInterfaceRef :
+                Utils.safe(vm.getVirtualMachineInterfaceBackRefs())) {
+                VirtualMachineInterface vmInterface =
+                        vmis.get(vmInterfaceRef.getUuid());
+                if (vmInterface == null) {
+                    s_logger.error("Cannot sync VMI " + vmInterfaceRef.getUuid()
+                            + " of VM " + vm.getName());
+                    continue;
+                }
+                addVirtualMachineInterface(vmInfo, vmInterface, instanceIps);
+            }
+            map.put(vmInfo.getUuid(), vmInfo);
+        }
         
+        s_logger.debug("Read " + map.size() + " virtual machines, " + vmis.size()
+                + " interfaces and " + instanceIps.size()
+                + " instance IPs from the API server in "
+                + (System.currentTimeMillis() - start) + " ms");
         return map;
     }
 
+    private Map<String, VirtualMachineInterface> readVirtualMachineInterfaces(
+            List<VirtualMachine> vms) {
+        Map<String, VirtualMachineInterface> vmis =
+                new HashMap<String, VirtualMachineInterface>();
+
+        for (VirtualMachine vm : vms) {
+            for (ObjectReference<ApiPropertyBase> vmInterfaceRef :
+                Utils.safe(vm.getVirtualMachineInterfaceBackRefs())) {
+                String vmInterfaceUuid = vmInterfaceRef.getUuid();
+                if (vmis.containsKey(vmInterfaceUuid)) {
+                    continue;
+                }
+                try {
+                    VirtualMachineInterface vmInterface = (VirtualMachineInterface)
+                            apiConnector.findById(VirtualMachineInterface.class,
+                                    vmInterfaceUuid);
+                    if (vmInterface != null) {
+                        vmis.put(vmInterfaceUuid, vmInterface);
+                    }
+                } catch (Exception e) {
+                    s_logger.error("Cannot read VMI " + vmInterfaceUuid + ": " + e);
+                }
+            }
+        }
+        return vmis;
+    }
+
+    private Map<String, InstanceIp> readInstanceIps(
+            Collection<VirtualMachineInterface> vmis) {
+        Map<String, InstanceIp> instanceIps = new HashMap<String, InstanceIp>();
+
+        for (VirtualMachineInterface vmInterface : vmis) {
+            //TODO this is in fact a list of IP addresses
+            // but we only support one
+            List<ObjectReference<ApiPropertyBase>> instanceIpRefs =
+                    vmInterface.getInstanceIpBackRefs();
+            if (instanceIpRefs == null || instanceIpRefs.isEmpty()) {
+                continue;
+            }
+            String instanceIpUuid = instanceIpRefs.get(0).getUuid();
+            try {
+                InstanceIp inst = (InstanceIp)
+                        apiConnector.findById(InstanceIp.class, instanceIpUuid);
+                if (inst != null) {
+                    instanceIps.put(instanceIpUuid, inst);
+                }
+            } catch (Exception e) {
+                s_logger.error("Cannot read instance IP " + instanceIpUuid + ": " + e);
+            }
+        }
+        return instanceIps;
+    }
+
+    private void addVirtualMachineInterface(VirtualMachineInfo vmInfo,
+            VirtualMachineInterface vmInterface, Map<String, InstanceIp> instanceIps) {
+        List<ObjectReference<ApiPropertyBase>> instanceIpRefs =
+                vmInterface.getInstanceIpBackRefs();
+        InstanceIp inst = null;
+        if (instanceIpRefs != null && !instanceIpRefs.isEmpty()) {
+            inst = instanceIps.get(instanceIpRefs.get(0).getUuid());
+        }
+
+        for (ObjectReference<ApiPropertyBase> vnRef :
+            Utils.safe(vmInterface.getVirtualNetwork())) {
+            VirtualNetworkInfo vnInfo = MainDB.getVnById(vnRef.getUuid());
+            VirtualMachineInterfaceInfo vmiInfo = 
+                    new VirtualMachineInterfaceInfo(vmInfo, vnInfo);
+            
+            vmiInfo.apiVmi = vmInterface;
+            vmiInfo.setUuid(vmInterface.getUuid());
+            setMacAddress(vmiInfo);
+            if (inst != null) {
+                vmiInfo.setIpAddress(inst.getAddress());
+                vmiInfo.apiInstanceIp = inst;
+            }
+
+            vmInfo.created(vmiInfo);
+        }
+    }
+
     public void readVirtualMachineInterfaces(VirtualMachineInfo vmInfo)
         throws IOException {
         
@@ -934,18 +1269,20 @@ public class VncDB {
             VirtualMachineInterface vmInterface = (VirtualMachineInterface)
                     apiConnector.findById(VirtualMachineInterface.class,
                             vmInterfaceUuid);
-            apiConnector.read(vmInterface);
+            if (vmInterface == null) {
+                continue;
+            }
             
             List<ObjectReference<ApiPropertyBase>> vnRefs =
                                             vmInterface.getVirtualNetwork();
-            for (ObjectReference<ApiPropertyBase> vnRef : vnRefs) {
+            for (ObjectReference<ApiPropertyBase> vnRef : Utils.safe(vnRefs)) {
                 VirtualNetworkInfo vnInfo = MainDB.getVnById(vnRef.getUuid());
                 VirtualMachineInterfaceInfo vmiInfo = 
                         new VirtualMachineInterfaceInfo(vmInfo, vnInfo);
                 
                 vmiInfo.apiVmi = vmInterface;
                 vmiInfo.setUuid(vmInterfaceUuid);
-                readMacAddress(vmiInfo);            
+                setMacAddress(vmiInfo);            
                 readInstanceIp(vmiInfo);
 
                 vmInfo.created(vmiInfo);
@@ -953,32 +1290,28 @@ public class VncDB {
         }
     }
 
-    private void readMacAddress(VirtualMachineInterfaceInfo vmiInfo) 
-        throws IOException {
+    private void setMacAddress(VirtualMachineInterfaceInfo vmiInfo) {
         VirtualMachineInterface apiVmi = vmiInfo.apiVmi;
-        if (apiVmi == null) {
-            apiVmi = (VirtualMachineInterface) apiConnector.findById(
-                    VirtualMachineInterface.class, vmiInfo.getUuid());
-            if (apiVmi == null) {
-                return;
-            }
-            vmiInfo.apiVmi = apiVmi;
+        if (apiVmi == null || apiVmi.getMacAddresses() == null) {
+            return;
         }
         List<String> macAddresses = apiVmi.getMacAddresses().getMacAddress();
-        if (macAddresses.size() > 0) {
+        if (macAddresses != null && macAddresses.size() > 0) {
             vmiInfo.setMacAddress(macAddresses.get(0));
         }
     }
 
     private void readInstanceIp(VirtualMachineInterfaceInfo vmiInfo) 
             throws IOException {
-        VirtualMachineInterface apiVmi = 
-                (VirtualMachineInterface) apiConnector.findById(
-                    VirtualMachineInterface.class, vmiInfo.getUuid());
+        VirtualMachineInterface apiVmi = vmiInfo.apiVmi;
         if (apiVmi == null) {
-            return;
+            apiVmi = (VirtualMachineInterface) apiConnector.findById(
+                    VirtualMachineInterface.class, vmiInfo.getUuid());
+            if (apiVmi == null) {
+                return;
+            }
+            vmiInfo.apiVmi = apiVmi;
         }
-        vmiInfo.apiVmi = apiVmi;
 
         List<ObjectReference<ApiPropertyBase>> instanceIpRefs = 
                 apiVmi.getInstanceIpBackRefs();
@@ -1027,7 +1360,7 @@ public class VncDB {
                 if (vnRef.getUuid().equals(vmiInfo.vnInfo.getUuid())) {
                     vmiInfo.apiVmi = vmInterface;
                     vmiInfo.setUuid(vmInterface.getUuid());
-                    readMacAddress(vmiInfo);
+                    setMacAddress(vmiInfo);
                     readInstanceIp(vmiInfo);
                     return vmInterface;
                }
@@ -1049,9 +1382,16 @@ public class VncDB {
             return ;
         }
         
-        for (InstanceIp vn : apiObjs) {
-            apiConnector.delete(vn);
+        List<VncWriteBehind.Write> deletes = new ArrayList<VncWriteBehind.Write>();
+        for (final InstanceIp instanceIp : apiObjs) {
+            deletes.add(new VncWriteBehind.Write() {
+                @Override
+                public void run() throws IOException {
+                    apiConnector.delete(instanceIp);
+                }
+            });
         }
+        getCascadeDelete().deleteAll("instance IPs", deletes);
     }
     
     public void deleteInstanceIp(VirtualMachineInterfaceInfo vmiInfo)
@@ -1094,31 +1434,32 @@ public class VncDB {
     public void deleteInstanceIps(VirtualNetwork apiVn) 
             throws IOException {
         // delete all instance Ip back refs, if there are any left
-        List<ObjectReference<ApiPropertyBase>> instanceIpRefs = 
-                apiVn.getInstanceIpBackRefs();
-        for (ObjectReference<ApiPropertyBase> instanceIpRef : 
-            Utils.safe(instanceIpRefs)) {
-            s_logger.info("Delete instance IP: " + 
-                    instanceIpRef.getReferredName());
-            apiConnector.delete(InstanceIp.class, 
-                    instanceIpRef.getUuid());
-            s_logger.info("Deleted Ip Instance " + instanceIpRef.getUuid());
-        }
+        deleteInstanceIps(apiVn.getInstanceIpBackRefs());
     }
 
     public void deleteInstanceIps(VirtualMachineInterface apiVmi) 
             throws IOException {
         // delete all instance Ip back refs, if there are any left
-        List<ObjectReference<ApiPropertyBase>> instanceIpRefs = 
-                apiVmi.getInstanceIpBackRefs();
-        for (ObjectReference<ApiPropertyBase> instanceIpRef : 
+        deleteInstanceIps(apiVmi.getInstanceIpBackRefs());
+    }
+
+    private void deleteInstanceIps(List<ObjectReference<ApiPropertyBase>> instanceIpRefs)
+            throws IOException {
+        List<VncWriteBehind.Write> deletes = new ArrayList<VncWriteBehind.Write>();
+        for (final ObjectReference<ApiPropertyBase> instanceIpRef : 
             Utils.safe(instanceIpRefs)) {
-            s_logger.info("Delete instance IP: " + 
-                    instanceIpRef.getReferredName());
-            apiConnector.delete(InstanceIp.class, 
-                    instanceIpRef.getUuid());
-            s_logger.info("Deleted Ip Instance " + instanceIpRef.getUuid());
+            deletes.add(new VncWriteBehind.Write() {
+                @Override
+                public void run() throws IOException {
+                    s_logger.info("Delete instance IP: " + 
+                            instanceIpRef.getReferredName());
+                    apiConnector.delete(InstanceIp.class, 
+                            instanceIpRef.getUuid());
+                    s_logger.info("Deleted Ip Instance " + instanceIpRef.getUuid());
+                }
+            });
         }
+        getCascadeDelete().deleteAll("instance IPs", deletes);
     }
     
     public void deleteVirtualMachineInterfaces()
@@ -1134,66 +1475,65 @@ public class VncDB {
             return ;
         }
         
-        for (VirtualMachineInterface vmInterface : apiObjs) {
-            deleteInstanceIps(vmInterface);
-            apiConnector.delete(vmInterface);
+        List<VncWriteBehind.Write> deletes = new ArrayList<VncWriteBehind.Write>();
+        for (final VirtualMachineInterface vmInterface : apiObjs) {
+            deletes.add(new VncWriteBehind.Write() {
+                @Override
+                public void run() throws IOException {
+                    deleteInstanceIps(vmInterface);
+                    apiConnector.delete(vmInterface);
+                }
+            });
         }
+        getCascadeDelete().deleteAll("interfaces", deletes);
     }
 
     public void deleteVirtualMachineInterfaces(VirtualNetwork apiVn) 
             throws IOException {
         // delete all VMIs back refs, if there are any left
-        List<ObjectReference<ApiPropertyBase>> vmiRefs = 
-                apiVn.getVirtualMachineInterfaceBackRefs();
-        for (ObjectReference<ApiPropertyBase> vmiRef : 
-            Utils.safe(vmiRefs)) {
-            VirtualMachineInterface apiVmi = 
-                    (VirtualMachineInterface) apiConnector.findById(
-                    VirtualMachineInterface.class, vmiRef.getUuid());
-            
-            if (apiVmi == null) {
-                s_logger.error("Cannot delete VMI, it does not exist in the API server " 
-                                + vmiRef.getUuid());
-                continue;
-            }
-            
-            deleteInstanceIps(apiVmi);
-            
-            s_logger.info("Delete Virtual Machine Interface: " + 
-                    vmiRef.getReferredName());
-            apiConnector.delete(VirtualMachineInterface.class, 
-                    vmiRef.getUuid());
-            s_logger.info("Deleted Virtual Machine Interface " 
-                    + vmiRef.getUuid());
-        }
+        deleteVirtualMachineInterfaces(apiVn.getVirtualMachineInterfaceBackRefs());
     }
 
     public void deleteVirtualMachineInterfaces(VirtualMachine apiVm) 
             throws IOException {
         // delete all VMIs back refs, if there are any left
-        List<ObjectReference<ApiPropertyBase>> vmiRefs = 
-                apiVm.getVirtualMachineInterfaceBackRefs();
-        for (ObjectReference<ApiPropertyBase> vmiRef : 
+        deleteVirtualMachineInterfaces(apiVm.getVirtualMachineInterfaceBackRefs());
+    }
+
+    /*
+     * The interfaces are deleted in parallel, each one after its
+     * instance IPs.
+     */
+    private void deleteVirtualMachineInterfaces(List<ObjectReference<ApiPropertyBase>> vmiRefs)
+            throws IOException {
+        List<VncWriteBehind.Write> deletes = new ArrayList<VncWriteBehind.Write>();
+        for (final ObjectReference<ApiPropertyBase> vmiRef : 
             Utils.safe(vmiRefs)) {
-            VirtualMachineInterface apiVmi = 
-                    (VirtualMachineInterface) apiConnector.findById(
-                    VirtualMachineInterface.class, vmiRef.getUuid());
-            
-            if (apiVmi == null) {
-                s_logger.error("Cannot delete VMI, it does not exist in the API server " 
-                                + vmiRef.getUuid());
-                continue;
-            }
-            
-            deleteInstanceIps(apiVmi);
-            
-            s_logger.info("Delete Virtual Machine Interface: " + 
-                    vmiRef.getReferredName());
-            apiConnector.delete(VirtualMachineInterface.class, 
-                    vmiRef.getUuid());
-            s_logger.info("Deleted Virtual Machine Interface " 
-                    + vmiRef.getUuid());
+            deletes.add(new VncWriteBehind.Write() {
+                @Override
+                public void run() throws IOException {
+                    VirtualMachineInterface apiVmi = 
+                            (VirtualMachineInterface) apiConnector.findById(
+                            VirtualMachineInterface.class, vmiRef.getUuid());
+                    
+                    if (apiVmi == null) {
+                        s_logger.error("Cannot delete VMI, it does not exist in the API server " 
+                                        + vmiRef.getUuid());
+                        return;
+                    }
+                    
+                    deleteInstanceIps(apiVmi);
+                    
+                    s_logger.info("Delete Virtual Machine Interface: " + 
+                            vmiRef.getReferredName());
+                    apiConnector.delete(VirtualMachineInterface.class, 
+                            vmiRef.getUuid());
+                    s_logger.info("Deleted Virtual Machine Interface " 
+                            + vmiRef.getUuid());
+                }
+            });
         }
+        getCascadeDelete().deleteAll("interfaces", deletes);
     }
 
     public void deleteVirtualMachines()
@@ -1209,9 +1549,16 @@ public class VncDB {
             return ;
         }
         
-        for (VirtualMachine vm : apiObjs) {
-            apiConnector.delete(vm);
+        List<VncWriteBehind.Write> deletes = new ArrayList<VncWriteBehind.Write>();
+        for (final VirtualMachine vm : apiObjs) {
+            deletes.add(new VncWriteBehind.Write() {
+                @Override
+                public void run() throws IOException {
+                    apiConnector.delete(vm);
+                }
+            });
         }
+        getCascadeDelete().deleteAll("virtual machines", deletes);
     }
     
     public void deleteVirtualNetworks()
@@ -1227,9 +1574,16 @@ public class VncDB {
             return ;
         }
         
-        for (VirtualNetwork vn : apiObjs) {
-            apiConnector.delete(vn);
+        List<VncWriteBehind.Write> deletes = new ArrayList<VncWriteBehind.Write>();
+        for (final VirtualNetwork vn : apiObjs) {
+            deletes.add(new VncWriteBehind.Write() {
+                @Override
+                public void run() throws IOException {
+                    apiConnector.delete(vn);
+                }
+            });
         }
+        getCascadeDelete().deleteAll("virtual networks", deletes);
     }
     
     public void deleteAll() {
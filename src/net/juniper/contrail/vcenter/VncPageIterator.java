@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import net.juniper.contrail.api.ApiObjectBase;
+
+/**
+ * Iterates over API server objects in UUID order, a page at a time.
+ *
+ * api.list() only returns the names and UUIDs. The full objects of a
+ * page are read when the iteration reaches it and dropped once it moves
+ * on, so a sync holds one page of the API server side at a time and
+ * starts writing before the last page is read.
+ */
+abstract class VncPageIterator<T extends ApiObjectBase, V>
+        implements Iterator<Entry<String, V>> {
+
+    private static final Comparator<ApiObjectBase> UUID_ORDER =
+            new Comparator<ApiObjectBase>() {
+        @Override
+        public int compare(ApiObjectBase o1, ApiObjectBase o2) {
+            return o1.getUuid().compareTo(o2.getUuid());
+        }
+    };
+
+    private final List<T> refs;
+    private final int pageSize;
+    private int next;
+    private Iterator<Entry<String, V>> page;
+    private int pages;
+    private int count;
+
+    VncPageIterator(Iterable<T> refs, int pageSize) {
+        this.refs = new ArrayList<T>();
+        for (T ref: refs) {
+            if (ref.getUuid() != null) {
+                this.refs.add(ref);
+            }
+        }
+        Collections.sort(this.refs, UUID_ORDER);
+        this.pageSize = Math.max(pageSize, 1);
+    }
+
+    /**
+     * Reads the full objects of the references, sorted by UUID. Objects
+     * the sync does not own are left out.
+     */
+    abstract SortedMap<String, V> readPage(List<T> pageRefs);
+
+    /**
+     * Splits the objects at the given sorted keys, into one iterator per
+     * key range, to be merged in parallel. This iterator is empty after.
+     */
+    List<VncPageIterator<T, V>> split(List<String> bounds) {
+        if (next > 0) {
+            throw new IllegalStateException("Iteration already started");
+        }
+        List<VncPageIterator<T, V>> parts = new ArrayList<VncPageIterator<T, V>>();
+        int from = 0;
+        for (int i = 0; i <= bounds.size(); i++) {
+            int to = refs.size();
+            if (i < bounds.size()) {
+                to = from;
+                while (to < refs.size()
+                        && refs.get(to).getUuid().compareTo(bounds.get(i)) < 0) {
+                    to++;
+                }
+            }
+            parts.add(new VncPageIterator<T, V>(refs.subList(from, to), pageSize) {
+                @Override
+                SortedMap<String, V> readPage(List<T> pageRefs) {
+                    return VncPageIterator.this.readPage(pageRefs);
+                }
+            });
+            from = to;
+        }
+        refs.clear();
+        return parts;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while ((page == null || !page.hasNext()) && next < refs.size()) {
+            int end = Math.min(next + pageSize, refs.size());
+            List<T> pageRefs = new ArrayList<T>(refs.subList(next, end));
+            // read() fills the listed objects in, let them go with the page
+            for (int i = next; i < end; i++) {
+                refs.set(i, null);
+            }
+            next = end;
+            SortedMap<String, V> map = readPage(pageRefs);
+            pages++;
+            count += map.size();
+            page = map.entrySet().iterator();
+        }
+        return page != null && page.hasNext();
+    }
+
+    @Override
+    public Entry<String, V> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    /**
+     * Number of objects read so far.
+     */
+    public int getCount() {
+        return count;
+    }
+}
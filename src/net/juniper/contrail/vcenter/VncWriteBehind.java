@@ -0,0 +1,346 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import com.google.common.base.Throwables;
+
+/**
+ * Runs API server writes off the calling thread.
+ *
+ * Writes carry the key of the object they belong to (the VM or network
+ * UUID). The writes of one key run in order, one at a time, since each
+ * step needs what the previous one created (VM, then its interfaces,
+ * then their instance IPs). Writes of different keys run in parallel on a
+ * small pool, so the round trips of many VMs overlap. The number of
+ * writes queued or running is bounded: submit() blocks once it is reached.
+ *
+ * A write that could not reach the API server is retried with backoff,
+ * after waiting for the circuit breaker to close. The writes are
+ * idempotent since the plugin names its objects.
+ */
+public class VncWriteBehind {
+    private static final Logger s_logger =
+            Logger.getLogger(VncWriteBehind.class);
+
+    private final ExecutorService executor;
+    private final int threads;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final ConcurrentHashMap<String, KeyQueue> queues =
+            new ConcurrentHashMap<String, KeyQueue>();
+    private final ConcurrentHashMap<String, LatencyStats> latencies =
+            new ConcurrentHashMap<String, LatencyStats>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object idleLock = new Object();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong slow = new AtomicLong();
+    private volatile long slowThreshold = Long.MAX_VALUE;
+    private volatile ApiCircuitBreaker breaker;
+    private volatile int maxRetries;
+
+    /**
+     * One write, for instance the creation of a VM and its interfaces.
+     */
+    public interface Write {
+        void run() throws Exception;
+    }
+
+    private static class Op {
+        final String name;
+        final Write write;
+
+        Op(String name, Write write) {
+            this.name = name;
+            this.write = write;
+        }
+    }
+
+    private class KeyQueue implements Runnable {
+        private final String key;
+        private final LinkedList<Op> ops = new LinkedList<Op>();
+        private boolean scheduled;
+        // removed from the map once empty, a new queue takes over
+        private boolean removed;
+
+        KeyQueue(String key) {
+            this.key = key;
+        }
+
+        boolean add(Op op) {
+            boolean submit = false;
+            synchronized (this) {
+                if (removed) {
+                    return false;
+                }
+                ops.add(op);
+                if (!scheduled) {
+                    scheduled = true;
+                    submit = true;
+                }
+            }
+            if (submit) {
+                executor.execute(this);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            Op op;
+            synchronized (this) {
+                op = ops.poll();
+                if (op == null) {
+                    scheduled = false;
+                    removed = true;
+                    queues.remove(key, this);
+                    return;
+                }
+            }
+            long start = System.currentTimeMillis();
+            try {
+                execute(op);
+            } catch (Throwable e) {
+                failures.incrementAndGet();
+                s_logger.error("Cannot " + op.name + " " + key + ": " + e);
+                s_logger.error(Throwables.getStackTraceAsString(e));
+                dropQueued();
+            } finally {
+                long elapsed = System.currentTimeMillis() - start;
+                getLatency(op.name).record(elapsed);
+                if (elapsed > slowThreshold) {
+                    slow.incrementAndGet();
+                    s_logger.warn("Slow " + op.name + " " + key + ": " + elapsed + " ms");
+                }
+            }
+            boolean more;
+            synchronized (this) {
+                more = !ops.isEmpty();
+                if (!more) {
+                    scheduled = false;
+                    removed = true;
+                    queues.remove(key, this);
+                }
+            }
+            // counted once the queue is gone, a drained write-behind
+            // has no pending keys
+            done();
+            if (more) {
+                // one write per turn, other keys go first
+                executor.execute(this);
+            }
+        }
+
+        private void execute(Op op) throws Exception {
+            for (int attempt = 1; ; attempt++) {
+                ApiCircuitBreaker breaker = VncWriteBehind.this.breaker;
+                if (breaker != null
+                        && !breaker.awaitClosed(EventRetryQueue.BACKOFF_MAX_MS)) {
+                    throw new IOException("API server unreachable");
+                }
+                try {
+                    op.write.run();
+                    if (breaker != null) {
+                        breaker.recordSuccess();
+                    }
+                    return;
+                } catch (Exception e) {
+                    if (breaker == null || attempt > maxRetries
+                            || !VncDB.isApiServerError(Throwables.getStackTraceAsString(e))) {
+                        throw e;
+                    }
+                    breaker.recordFailure();
+                    retried.incrementAndGet();
+                    long backoff = EventRetryQueue.getBackoff(attempt);
+                    s_logger.warn("Cannot " + op.name + " " + key + ", retry "
+                            + attempt + " of " + maxRetries + " in " + backoff + " ms");
+                    Thread.sleep(backoff);
+                }
+            }
+        }
+
+        /*
+         * The writes queued behind a failed one depend on it, they are
+         * dropped. The next sync or event for the object redoes them.
+         */
+        private void dropQueued() {
+            int dropped;
+            synchronized (this) {
+                dropped = ops.size();
+                ops.clear();
+            }
+            for (int i = 0; i < dropped; i++) {
+                skipped.incrementAndGet();
+                done();
+            }
+            if (dropped > 0) {
+                s_logger.warn("Dropped " + dropped + " writes queued for " + key);
+            }
+        }
+    }
+
+    public VncWriteBehind(int threads, int maxInFlight) {
+        if (threads < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("threads " + threads
+                    + ", in flight " + maxInFlight);
+        }
+        this.threads = threads;
+        this.maxInFlight = maxInFlight;
+        inFlight = new Semaphore(maxInFlight);
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r,
+                        "vnc-write-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        s_logger.info("Started " + threads + " API server write threads");
+    }
+
+    public void setCircuitBreaker(ApiCircuitBreaker breaker, int maxRetries) {
+        this.breaker = breaker;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Writes taking longer than this are logged and counted as slow.
+     */
+    public void setSlowThreshold(long millis) {
+        slowThreshold = millis;
+    }
+
+    /**
+     * Queues the write behind the earlier ones of the same key, blocking
+     * while too many writes are in flight.
+     */
+    public void submit(String key, String name, Write write)
+            throws InterruptedException {
+        inFlight.acquire();
+        pending.incrementAndGet();
+        submitted.incrementAndGet();
+        Op op = new Op(name, write);
+        while (!getQueue(key).add(op)) {
+            // raced with the removal of an idle queue
+        }
+    }
+
+    private void done() {
+        inFlight.release();
+        if (pending.decrementAndGet() == 0) {
+            synchronized (idleLock) {
+                idleLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until every submitted write completed. Returns false if
+     * that did not happen within timeoutMillis.
+     */
+    public boolean drain(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (idleLock) {
+            while (pending.get() > 0) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return false;
+                }
+                idleLock.wait(wait);
+            }
+        }
+        return true;
+    }
+
+    private KeyQueue getQueue(String key) {
+        KeyQueue queue = queues.get(key);
+        if (queue == null) {
+            queue = new KeyQueue(key);
+            KeyQueue oldQueue = queues.putIfAbsent(key, queue);
+            if (oldQueue != null) {
+                queue = oldQueue;
+            }
+        }
+        return queue;
+    }
+
+    private LatencyStats getLatency(String name) {
+        LatencyStats stats = latencies.get(name);
+        if (stats == null) {
+            stats = new LatencyStats();
+            LatencyStats oldStats = latencies.putIfAbsent(name, stats);
+            if (oldStats != null) {
+                stats = oldStats;
+            }
+        }
+        return stats;
+    }
+
+    public Map<String, LatencyStats> getLatencies() {
+        return latencies;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Keys with writes queued or running.
+     */
+    public List<String> getPendingKeys() {
+        return new ArrayList<String>(queues.keySet());
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getRetried() {
+        return retried.get();
+    }
+
+    public long getSlow() {
+        return slow.get();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
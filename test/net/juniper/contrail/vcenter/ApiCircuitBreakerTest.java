@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.FixMethodOrder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ApiCircuitBreakerTest extends TestCase {
+
+    private static class CountingProbe implements ApiCircuitBreaker.Probe {
+        volatile boolean up;
+        volatile int calls;
+
+        @Override
+        public boolean probe() {
+            calls++;
+            return up;
+        }
+    }
+
+    @Test
+    public void testOpensAtThreshold() throws Exception {
+        CountingProbe probe = new CountingProbe();
+        ApiCircuitBreaker breaker = new ApiCircuitBreaker(3, probe);
+
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertEquals(ApiCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.awaitClosed(0));
+
+        breaker.recordFailure();
+        assertEquals(ApiCircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1L, breaker.getOpenCount());
+        // a late success does not close it, only the probe does
+        breaker.recordSuccess();
+        assertFalse(breaker.awaitClosed(10));
+        assertEquals(0, probe.calls);
+    }
+
+    @Test
+    public void testProbeCloses() throws Exception {
+        CountingProbe probe = new CountingProbe();
+        ApiCircuitBreaker breaker = new ApiCircuitBreaker(1, probe);
+
+        breaker.recordFailure();
+        assertFalse(breaker.awaitClosed(EventRetryQueue.BACKOFF_MIN_MS + 500));
+        assertEquals(1, probe.calls);
+        assertEquals(2L, breaker.getOpenCount());
+
+        probe.up = true;
+        assertTrue(breaker.awaitClosed(2 * EventRetryQueue.BACKOFF_MIN_MS + 500));
+        assertEquals(2, probe.calls);
+        assertEquals(ApiCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(2L, breaker.getProbeCount());
+    }
+}
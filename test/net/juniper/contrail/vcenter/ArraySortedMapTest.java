@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.FixMethodOrder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ArraySortedMapTest extends TestCase {
+
+    @Test
+    public void testSortedLikeTreeMap() {
+        SortedMap<String, Integer> map = new ArraySortedMap<String, Integer>();
+        SortedMap<String, Integer> expected = new TreeMap<String, Integer>();
+        String[] keys = { "00:50:56:03", "00:50:56:01", "00:50:56:04",
+                          "00:50:56:02", "00:50:56:01" };
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(expected.put(keys[i], i), map.put(keys[i], i));
+        }
+        assertEquals(expected, map);
+        assertEquals(expected.toString(), map.toString());
+        assertEquals("00:50:56:01", map.firstKey());
+        assertEquals("00:50:56:04", map.lastKey());
+        assertEquals(expected.headMap("00:50:56:03"), map.headMap("00:50:56:03"));
+
+        assertEquals(Integer.valueOf(3), map.remove("00:50:56:02"));
+        assertNull(map.remove("00:50:56:02"));
+        assertFalse(map.containsKey("00:50:56:02"));
+        assertEquals(3, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testIterationIgnoresChanges() {
+        SortedMap<String, Integer> map = new ArraySortedMap<String, Integer>();
+        map.put("a", 1);
+        map.put("c", 3);
+
+        // MainDB.update() removes and adds interfaces while iterating
+        Iterator<Entry<String, Integer>> iter = map.entrySet().iterator();
+        assertEquals("a", iter.next().getKey());
+        map.put("b", 2);
+        map.remove("c");
+        assertEquals("c", iter.next().getKey());
+        assertFalse(iter.hasNext());
+        iter.remove();
+        assertEquals(2, map.size());
+        assertTrue(map.containsKey("b"));
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.FixMethodOrder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class EventRetryQueueTest extends TestCase {
+
+    @Test
+    public void testBackoff() {
+        assertEquals(1000L, EventRetryQueue.getBackoff(1));
+        assertEquals(2000L, EventRetryQueue.getBackoff(2));
+        assertEquals(8000L, EventRetryQueue.getBackoff(4));
+        assertEquals(EventRetryQueue.BACKOFF_MAX_MS, EventRetryQueue.getBackoff(20));
+    }
+
+    @Test
+    public void testRetryIsDispatched() throws InterruptedException {
+        VCenterEventDispatcher dispatcher = new VCenterEventDispatcher(2, 10);
+        EventRetryQueue retryQueue = new EventRetryQueue(dispatcher, 3, 10);
+        final CountDownLatch done = new CountDownLatch(1);
+        Runnable work = new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+
+        assertTrue(retryQueue.failed("vm-1", EventRetryQueue.Kind.EVENT, work));
+        assertEquals(1, retryQueue.getPending());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1L, retryQueue.getRetried());
+
+        retryQueue.succeeded("vm-1", EventRetryQueue.Kind.EVENT);
+        assertEquals(0, retryQueue.getPending());
+        assertEquals(1L, retryQueue.getRecovered());
+
+        retryQueue.shutdown();
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testGuestChangeKeepsFailedUpdate() throws InterruptedException {
+        VCenterEventDispatcher dispatcher = new VCenterEventDispatcher(1, 10);
+        EventRetryQueue retryQueue = new EventRetryQueue(dispatcher, 3, 10);
+        final CountDownLatch created = new CountDownLatch(1);
+        Runnable create = new Runnable() {
+            @Override
+            public void run() {
+                created.countDown();
+            }
+        };
+        Runnable guestChange = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        // the VM create failed, the guest change for the VM finds it not
+        // watched yet and succeeds without doing anything
+        assertTrue(retryQueue.failed("vm-1", EventRetryQueue.Kind.EVENT, create));
+        retryQueue.succeeded("vm-1", EventRetryQueue.Kind.GUEST);
+        assertEquals(1, retryQueue.getPending());
+        assertEquals(0L, retryQueue.getRecovered());
+
+        // a failed guest change is retried next to it
+        assertTrue(retryQueue.failed("vm-1", EventRetryQueue.Kind.GUEST, guestChange));
+        assertEquals(2, retryQueue.getPending());
+
+        assertTrue(created.await(5, TimeUnit.SECONDS));
+        retryQueue.succeeded("vm-1", EventRetryQueue.Kind.EVENT);
+        assertEquals(1, retryQueue.getPending());
+        assertEquals(1L, retryQueue.getRecovered());
+
+        retryQueue.shutdown();
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testHeldPerKind() throws Exception {
+        VCenterEventDispatcher dispatcher = new VCenterEventDispatcher(1, 10);
+        EventRetryQueue retryQueue = new EventRetryQueue(dispatcher, 3, 10);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(2);
+        final AtomicBoolean up = new AtomicBoolean();
+        ApiCircuitBreaker breaker = new ApiCircuitBreaker(1, new ApiCircuitBreaker.Probe() {
+            @Override
+            public boolean probe() {
+                return up.get();
+            }
+        });
+        breaker.recordFailure();
+        retryQueue.setCircuitBreaker(breaker, 10);
+
+        assertTrue(retryQueue.held("vm-1", EventRetryQueue.Kind.EVENT, record("create", order, done)));
+        assertTrue(retryQueue.held("vm-1", EventRetryQueue.Kind.GUEST, record("guest-1", order, done)));
+        assertTrue(retryQueue.held("vm-1", EventRetryQueue.Kind.GUEST, record("guest-2", order, done)));
+        // the guest change does not replace the create
+        assertEquals(2, retryQueue.getHeld());
+
+        up.set(true);
+        assertTrue(done.await(EventRetryQueue.BACKOFF_MAX_MS * 2, TimeUnit.MILLISECONDS));
+        assertEquals("[create, guest-2]", order.toString());
+        assertEquals(0, retryQueue.getHeld());
+
+        retryQueue.shutdown();
+        dispatcher.shutdown();
+    }
+
+    private static Runnable record(final String name, final List<String> order,
+            final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void testFullResync() {
+        VCenterEventDispatcher dispatcher = new VCenterEventDispatcher(1, 10);
+        EventRetryQueue retryQueue = new EventRetryQueue(dispatcher, 2, 2);
+        Runnable work = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        // no object to retry
+        assertFalse(retryQueue.failed(null, EventRetryQueue.Kind.EVENT, work));
+
+        // retry limit
+        assertTrue(retryQueue.failed("vm-1", EventRetryQueue.Kind.EVENT, work));
+        assertTrue(retryQueue.failed("vm-1", EventRetryQueue.Kind.EVENT, work));
+        assertFalse(retryQueue.failed("vm-1", EventRetryQueue.Kind.EVENT, work));
+        assertEquals(0, retryQueue.getPending());
+
+        // too many objects failing at once
+        assertTrue(retryQueue.failed("vm-1", EventRetryQueue.Kind.EVENT, work));
+        assertTrue(retryQueue.failed("vm-2", EventRetryQueue.Kind.EVENT, work));
+        assertFalse(retryQueue.failed("vm-3", EventRetryQueue.Kind.EVENT, work));
+        assertEquals(0, retryQueue.getPending());
+        assertEquals(3L, retryQueue.getFullResyncs());
+
+        retryQueue.shutdown();
+        dispatcher.shutdown();
+    }
+}
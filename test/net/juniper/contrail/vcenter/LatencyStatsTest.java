@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.FixMethodOrder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class LatencyStatsTest extends TestCase {
+
+    @Test
+    public void testPercentiles() {
+        LatencyStats stats = new LatencyStats(100);
+        assertEquals(0L, stats.getPercentile(99));
+        for (int i = 100; i >= 1; i--) {
+            stats.record(i);
+        }
+        assertEquals(50L, stats.getPercentile(50));
+        assertEquals(99L, stats.getPercentile(99));
+        assertEquals(100L, stats.getPercentile(100));
+        assertEquals(100L, stats.getMax());
+    }
+
+    @Test
+    public void testWindowFollowsRecentSamples() {
+        LatencyStats stats = new LatencyStats(4);
+        stats.record(1000);
+        for (int i = 0; i < 4; i++) {
+            stats.record(10);
+        }
+        // the old sample left the window but not the running max
+        assertEquals(10L, stats.getPercentile(99));
+        assertEquals(1000L, stats.getMax());
+
+        // no window, no percentiles
+        LatencyStats plain = new LatencyStats();
+        plain.record(10);
+        assertEquals(0L, plain.getPercentile(50));
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.UUID;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.FixMethodOrder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class MainDBTest extends TestCase {
+
+    @Test
+    public void testVnNameIndex() {
+        String vnUuid = UUID.randomUUID().toString();
+        VirtualNetworkInfo vnInfo = new VirtualNetworkInfo(vnUuid);
+        vnInfo.setName("TestVN-Index");
+
+        MainDB.created(vnInfo);
+        assertSame(vnInfo, MainDB.getVnByName("TestVN-Index"));
+
+        // rename must be picked up by updated()
+        vnInfo.setName("TestVN-Renamed");
+        MainDB.updated(vnInfo);
+        assertSame(vnInfo, MainDB.getVnByName("TestVN-Renamed"));
+        assertNull(MainDB.getVnByName("TestVN-Index"));
+
+        MainDB.deleted(vnInfo);
+        assertNull(MainDB.getVnByName("TestVN-Renamed"));
+        assertNull(MainDB.getVnById(vnUuid));
+    }
+
+    @Test
+    public void testVmNameIndex() {
+        String vmUuid = UUID.randomUUID().toString();
+        VirtualMachineInfo vmInfo = new VirtualMachineInfo(vmUuid);
+        vmInfo.setName("TestVM-Index");
+
+        MainDB.created(vmInfo);
+        assertSame(vmInfo, MainDB.getVmByName("TestVM-Index"));
+        assertSame(vmInfo, MainDB.getVmById(vmUuid));
+
+        MainDB.deleted(vmInfo);
+        assertNull(MainDB.getVmByName("TestVM-Index"));
+        assertNull(MainDB.getVmById(vmUuid));
+        assertNull(MainDB.getVmByName(null));
+        assertNull(MainDB.getVmByMor(null));
+    }
+
+    @Test
+    public void testSnapshot() {
+        String vnUuid = UUID.randomUUID().toString();
+        VirtualNetworkInfo vnInfo = new VirtualNetworkInfo(vnUuid);
+        vnInfo.setName("TestVN-Snapshot");
+
+        MainDBSnapshot before = MainDB.getSnapshot();
+        assertSame(before, MainDB.getSnapshot());
+
+        MainDB.created(vnInfo);
+        MainDBSnapshot after = MainDB.getSnapshot();
+        assertTrue(after.getGeneration() > before.getGeneration());
+        assertEquals(MainDB.getGeneration(), after.getGeneration());
+        assertFalse(before.getVNs().containsKey(vnUuid));
+        assertSame(vnInfo, after.getVNs().get(vnUuid));
+        assertTrue(after.getVmiInfo(vnInfo).isEmpty());
+
+        // a pinned snapshot does not see later changes
+        MainDB.deleted(vnInfo);
+        assertSame(vnInfo, after.getVNs().get(vnUuid));
+        assertFalse(MainDB.getSnapshot().getVNs().containsKey(vnUuid));
+        try {
+            after.getVNs().remove(vnUuid);
+            fail("Snapshot must not change");
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.UUID;
+
+/**
+ * Bytes allocated to build the AddPort arguments of one interface: with
+ * the parsers the plugin used before, with the ones of Utils, and from
+ * the entry cached on the VirtualMachineInterfaceInfo. Not a unit test,
+ * run it on its own on a HotSpot JVM:
+ *
+ *   java -cp ... net.juniper.contrail.vcenter.PortEntryBenchmark [iterations]
+ */
+public class PortEntryBenchmark {
+    private static final String MAC = "00:50:56:8a:1b:2c";
+    private static final String IP = "192.168.10.27";
+
+    // keeps the results alive, so the JIT cannot drop the work
+    private static int sink;
+
+    private interface Case {
+        VRouterPortTable.PortEntry build() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = 1000000;
+        if (args.length > 0) {
+            iterations = Integer.parseInt(args[0]);
+        }
+
+        VirtualNetworkInfo vnInfo = new VirtualNetworkInfo(UUID.randomUUID().toString());
+        vnInfo.setName("vn");
+        VirtualMachineInfo vmInfo = new VirtualMachineInfo(UUID.randomUUID().toString());
+        vmInfo.setName("vm");
+        final VirtualMachineInterfaceInfo vmiInfo =
+                new VirtualMachineInterfaceInfo(vmInfo, vnInfo);
+        vmiInfo.setMacAddress(MAC);
+        vmiInfo.setIpAddress(IP);
+        vmiInfo.setUuid(VirtualMachineInterfaceInfo.deriveUuid(
+                vmInfo.getUuid(), vnInfo.getUuid(), MAC));
+
+        Case oldParsers = new Case() {
+            @Override
+            public VRouterPortTable.PortEntry build() throws Exception {
+                return newEntry(vmiInfo, InetAddress.getByName(IP),
+                        oldParseMacAddress(MAC));
+            }
+        };
+        Case newParsers = new Case() {
+            @Override
+            public VRouterPortTable.PortEntry build() throws Exception {
+                return newEntry(vmiInfo, Utils.parseInetAddress(IP),
+                        Utils.parseMacAddress(MAC));
+            }
+        };
+        Case cached = new Case() {
+            @Override
+            public VRouterPortTable.PortEntry build() throws Exception {
+                return vmiInfo.getPortEntry();
+            }
+        };
+
+        // warm up, so the JIT has compiled what is measured
+        for (int i = 0; i < 3; i++) {
+            measure(oldParsers, iterations);
+            measure(newParsers, iterations);
+            measure(cached, iterations);
+        }
+
+        System.out.println("old parsers:  " + measure(oldParsers, iterations) + " bytes per port");
+        System.out.println("new parsers:  " + measure(newParsers, iterations) + " bytes per port");
+        System.out.println("cached entry: " + measure(cached, iterations) + " bytes per port");
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static VRouterPortTable.PortEntry newEntry(
+            VirtualMachineInterfaceInfo vmiInfo, InetAddress ipAddress,
+            byte[] macAddress) {
+        return new VRouterPortTable.PortEntry(
+                UUID.fromString(vmiInfo.getUuid()),
+                UUID.fromString(vmiInfo.vmInfo.getUuid()), vmiInfo.getUuid(),
+                ipAddress, macAddress,
+                UUID.fromString(vmiInfo.vnInfo.getUuid()),
+                vmiInfo.vnInfo.getIsolatedVlanId(),
+                vmiInfo.vnInfo.getPrimaryVlanId(), vmiInfo.vmInfo.getName());
+    }
+
+    /*
+     * Utils.parseMacAddress before it stopped splitting the string.
+     */
+    private static byte[] oldParseMacAddress(String macAddress) {
+        String[] bytes = macAddress.split(":");
+        byte[] parsed = new byte[bytes.length];
+        for (int x = 0; x < bytes.length; x++) {
+            BigInteger temp = new BigInteger(bytes[x], 16);
+            byte[] raw = temp.toByteArray();
+            parsed[x] = raw[raw.length - 1];
+        }
+        return parsed;
+    }
+
+    private static long measure(Case c, int iterations) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < iterations; i++) {
+            sink += c.build().macAddress[5];
+        }
+        long after = threads.getThreadAllocatedBytes(id);
+        return (after - before) / iterations;
+    }
+}
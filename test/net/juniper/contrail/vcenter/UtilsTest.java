@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.FixMethodOrder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class UtilsTest extends TestCase {
+
+    @Test
+    public void testParseMacAddress() {
+        assertTrue(Arrays.equals(
+                new byte[] { 0x00, 0x50, 0x56, (byte) 0xab, (byte) 0xcd, (byte) 0xEF },
+                Utils.parseMacAddress("00:50:56:ab:cd:EF")));
+        assertTrue(Arrays.equals(
+                new byte[] { 0x0, 0x1, 0x2, 0x3, 0x4, (byte) 0xff },
+                Utils.parseMacAddress("0:1:2:3:4:ff")));
+        try {
+            Utils.parseMacAddress("00:50::ab:cd:ef");
+            fail("empty group accepted");
+        } catch (NumberFormatException e) {
+        }
+    }
+
+    @Test
+    public void testParseIpv4Address() throws UnknownHostException {
+        assertEquals(InetAddress.getByName("192.168.10.21"),
+                Utils.parseInetAddress("192.168.10.21"));
+        assertNull(Utils.parseIpv4Address("1.2.3"));
+        assertNull(Utils.parseIpv4Address("1.2.3.4.5"));
+        assertNull(Utils.parseIpv4Address("256.1.1.1"));
+        assertNull(Utils.parseIpv4Address("1..2.3"));
+        assertNull(Utils.parseIpv4Address("fe80::1"));
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.FixMethodOrder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class VCenterEventDispatcherTest extends TestCase {
+
+    @Test
+    public void testPerKeyOrdering() throws InterruptedException {
+        VCenterEventDispatcher dispatcher = new VCenterEventDispatcher(4, 2);
+        final List<Integer> vm1 = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> vm2 = Collections.synchronizedList(new ArrayList<Integer>());
+
+        for (int i = 0; i < 100; i++) {
+            final int n = i;
+            dispatcher.dispatch("vm-1", new Runnable() {
+                public void run() { vm1.add(n); }
+            });
+            dispatcher.dispatch("vm-2", new Runnable() {
+                public void run() { vm2.add(n); }
+            });
+        }
+        dispatcher.awaitIdle();
+
+        assertEquals(100, vm1.size());
+        assertEquals(100, vm2.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, vm1.get(i).intValue());
+            assertEquals(i, vm2.get(i).intValue());
+        }
+        assertEquals(200L, dispatcher.getProcessed());
+        assertEquals(0, dispatcher.getPending());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testFailureIsCounted() throws InterruptedException {
+        VCenterEventDispatcher dispatcher = new VCenterEventDispatcher(1, 10);
+        dispatcher.dispatch(null, new Runnable() {
+            public void run() { throw new RuntimeException("test"); }
+        });
+        dispatcher.awaitIdle();
+
+        assertEquals(1L, dispatcher.getFailed());
+        assertEquals(1L, dispatcher.getProcessed());
+        dispatcher.shutdown();
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.FixMethodOrder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class VRouterConnectionTest extends TestCase {
+
+    @Test
+    public void testStateMachine() {
+        VRouterConnection connection = new VRouterConnection("10.0.0.1", 9090);
+        assertEquals(VRouterConnection.State.CONNECTING, connection.getState());
+
+        assertTrue(connection.setConnected(true));
+        assertTrue(connection.isUp());
+        assertFalse(connection.setConnected(true));
+        assertFalse(connection.setConnected(false));
+        assertEquals(VRouterConnection.State.DOWN, connection.getState());
+
+        assertTrue(connection.setMaintenance(true));
+        assertFalse(connection.setMaintenance(true));
+        // a keepalive still running does not override maintenance
+        assertFalse(connection.setConnected(true));
+        assertEquals(VRouterConnection.State.MAINTENANCE, connection.getState());
+
+        assertTrue(connection.setMaintenance(false));
+        assertEquals(VRouterConnection.State.CONNECTING, connection.getState());
+        assertFalse(connection.setMaintenance(false));
+        // back from maintenance, the ports are replayed
+        assertTrue(connection.setConnected(true));
+    }
+
+    @Test
+    public void testRegistry() {
+        VRouterConnection connection = VRouterNotifier.getConnection("10.0.0.2");
+        assertSame(connection, VRouterNotifier.getConnection("10.0.0.2"));
+        assertTrue(VRouterNotifier.getConnections().containsKey("10.0.0.2"));
+    }
+}
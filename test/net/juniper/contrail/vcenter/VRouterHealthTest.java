@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.FixMethodOrder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class VRouterHealthTest extends TestCase {
+
+    @Test
+    public void testIntervalBacksOff() {
+        VRouterHealth health = new VRouterHealth("10.0.0.1");
+        long now = 1000000;
+
+        assertTrue(health.startCheck(now));
+        // still running
+        assertFalse(health.startCheck(now));
+        health.succeeded(3);
+        assertEquals(VRouterHealth.BASE_INTERVAL_MS, health.getInterval());
+        assertFalse(health.startCheck(now + VRouterHealth.BASE_INTERVAL_MS - 1));
+
+        for (int i = 0; i < 10; i++) {
+            now += health.getInterval();
+            assertTrue(health.startCheck(now));
+            health.succeeded(3);
+        }
+        assertEquals(VRouterHealth.MAX_INTERVAL_MS, health.getInterval());
+        assertEquals(0, health.getConsecutiveFailures());
+        assertEquals(11L, health.getRtt().getCount());
+    }
+
+    @Test
+    public void testFailureProbesEverySweep() {
+        VRouterHealth health = new VRouterHealth("10.0.0.1");
+        long now = 1000000;
+
+        assertTrue(health.startCheck(now));
+        health.succeeded(3);
+        assertFalse(health.startCheck(now + 1));
+
+        // a failed AddPort makes the agent due right away
+        health.suspect();
+        assertTrue(health.startCheck(now + 1));
+        health.failed();
+        assertTrue(health.startCheck(now + 2));
+        health.timedOut();
+        // the timed out check has not returned yet
+        assertFalse(health.startCheck(now + 3));
+        assertEquals(2, health.getConsecutiveFailures());
+        health.failed();
+        assertEquals(2, health.getConsecutiveFailures());
+        assertTrue(health.startCheck(now + 3));
+    }
+}
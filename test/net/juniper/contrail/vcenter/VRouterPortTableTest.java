@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.FixMethodOrder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class VRouterPortTableTest extends TestCase {
+
+    private static VRouterPortTable.PortEntry entry(UUID vmiUuid, String ip)
+            throws UnknownHostException {
+        return new VRouterPortTable.PortEntry(vmiUuid, UUID.randomUUID(),
+                vmiUuid.toString(), InetAddress.getByName(ip),
+                Utils.parseMacAddress("00:50:56:01:02:03"), UUID.randomUUID(),
+                (short) 100, (short) 101, "vm");
+    }
+
+    @Test
+    public void testAckedPortIsNotResent() throws UnknownHostException {
+        VRouterPortTable table = new VRouterPortTable("10.0.0.1");
+        UUID vmiUuid = UUID.randomUUID();
+        VRouterPortTable.PortEntry port = entry(vmiUuid, "192.168.1.10");
+
+        assertTrue(table.setDesired(port));
+        assertTrue(table.isDesired(port));
+        table.added(port);
+        assertFalse(table.isDesired(port));
+
+        // a sync computes the same port again
+        assertFalse(table.setDesired(port));
+        assertEquals(1L, table.getSkipped());
+    }
+
+    @Test
+    public void testReplayDelta() throws UnknownHostException {
+        VRouterPortTable table = new VRouterPortTable("10.0.0.1");
+        VRouterPortTable.PortEntry acked = entry(UUID.randomUUID(), "192.168.1.10");
+        VRouterPortTable.PortEntry failed = entry(UUID.randomUUID(), "192.168.1.11");
+        VRouterPortTable.PortEntry removed = entry(UUID.randomUUID(), "192.168.1.12");
+
+        table.setDesired(acked);
+        table.added(acked);
+        table.setDesired(removed);
+        table.added(removed);
+        table.setDesired(failed);
+        table.removeDesired(removed.vmiUuid);
+
+        assertEquals(1, table.getAddDelta().size());
+        assertEquals(failed, table.getAddDelta().get(0));
+        assertEquals(1, table.getDeleteDelta().size());
+        assertEquals(removed.vmiUuid, table.getDeleteDelta().get(0));
+    }
+
+    @Test
+    public void testQueuedPortIsNotQueuedAgain() throws UnknownHostException {
+        VRouterPortTable table = new VRouterPortTable("10.0.0.1");
+        UUID vmiUuid = UUID.randomUUID();
+        VRouterPortTable.PortEntry port = entry(vmiUuid, "192.168.1.10");
+        VRouterPortTable.PortEntry moved = entry(vmiUuid, "192.168.1.11");
+
+        assertTrue(table.addQueued(port));
+        // a keepalive finds the port in the delta while it is queued
+        assertFalse(table.addQueued(port));
+        // a changed port is queued, the old op is stale once it runs
+        assertTrue(table.addQueued(moved));
+        table.addDone(port);
+        assertFalse(table.addQueued(moved));
+        // a failed AddPort is replayed by the next keepalive
+        table.addDone(moved);
+        assertTrue(table.addQueued(moved));
+
+        assertTrue(table.deleteQueued(vmiUuid));
+        assertFalse(table.deleteQueued(vmiUuid));
+        table.deleteDone(vmiUuid);
+        assertTrue(table.deleteQueued(vmiUuid));
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.FixMethodOrder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import com.vmware.vim25.Event;
+import com.vmware.vim25.VmPoweredOnEvent;
+import com.vmware.vim25.VmReconfiguredEvent;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class VmEventCoalescerTest extends TestCase {
+
+    private static class RecordingCoalescer extends VmEventCoalescer {
+        final List<Event> events = new ArrayList<Event>();
+        final CountDownLatch emitted;
+
+        RecordingCoalescer(long windowMillis) {
+            this(windowMillis, 0);
+        }
+
+        RecordingCoalescer(long windowMillis, int expected) {
+            super(windowMillis);
+            emitted = new CountDownLatch(expected);
+        }
+
+        @Override
+        protected void emit(String key, Event event) {
+            events.add(event);
+            emitted.countDown();
+        }
+    }
+
+    @Test
+    public void testBurstIsMerged() throws InterruptedException {
+        RecordingCoalescer coalescer = new RecordingCoalescer(60000);
+        Event last = new VmPoweredOnEvent();
+        coalescer.add("vm-1", new VmReconfiguredEvent());
+        coalescer.add("vm-1", new VmReconfiguredEvent());
+        coalescer.add("vm-1", last);
+        assertEquals(0, coalescer.events.size());
+        assertEquals(1, coalescer.getPending());
+
+        coalescer.flush("vm-1");
+        assertEquals(1, coalescer.events.size());
+        assertSame(last, coalescer.events.get(0));
+        assertEquals(3.0, coalescer.getCollapseRatio(), 0.001);
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void testDeleteSupersedes() throws InterruptedException {
+        RecordingCoalescer coalescer = new RecordingCoalescer(60000);
+        coalescer.add("vm-1", new VmReconfiguredEvent());
+        assertTrue(coalescer.supersede("vm-1"));
+        coalescer.flushAll();
+        assertEquals(0, coalescer.events.size());
+        assertEquals(1L, coalescer.getSuperseded());
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void testWindowExpires() throws InterruptedException {
+        RecordingCoalescer coalescer = new RecordingCoalescer(50, 2);
+        coalescer.add("vm-1", new VmReconfiguredEvent());
+        coalescer.add("vm-2", new VmReconfiguredEvent());
+        // emitted by the timer thread, without a flush
+        assertTrue(coalescer.emitted.await(30, TimeUnit.SECONDS));
+        synchronized (coalescer) {
+            assertEquals(2, coalescer.events.size());
+        }
+        coalescer.shutdown();
+    }
+}
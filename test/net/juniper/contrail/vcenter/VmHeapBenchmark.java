@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.VirtualMachinePowerState;
+import net.juniper.contrail.api.types.InstanceIp;
+import net.juniper.contrail.api.types.MacAddressesType;
+import net.juniper.contrail.api.types.VirtualMachine;
+import net.juniper.contrail.api.types.VirtualMachineInterface;
+
+/**
+ * Heap retained by the VM records of MainDB, with and without
+ * records.compact. Not a unit test, run it on its own with a fixed heap:
+ *
+ *   java -Xms2g -Xmx2g -cp ... net.juniper.contrail.vcenter.VmHeapBenchmark [VMs ...]
+ *
+ * Each VM gets two interfaces on 16 networks, spread over 64 hosts, with
+ * the vijava and API server objects a sync leaves on them.
+ */
+public class VmHeapBenchmark {
+    private static final int HOSTS = 64;
+    private static final int NETWORKS = 16;
+
+    public static void main(String[] args) throws Exception {
+        int[] counts = { 10000, 50000 };
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        List<VirtualNetworkInfo> vns = new ArrayList<VirtualNetworkInfo>();
+        for (int i = 0; i < NETWORKS; i++) {
+            VirtualNetworkInfo vnInfo = new VirtualNetworkInfo(UUID.randomUUID().toString());
+            vnInfo.setName("vn-" + i);
+            vns.add(vnInfo);
+        }
+
+        // warm up the classes and the interner
+        measure(1000, false, vns);
+        measure(1000, true, vns);
+
+        for (int count: counts) {
+            long full = measure(count, false, vns);
+            long compact = measure(count, true, vns);
+            System.out.println(count + " VMs: " + (full >> 10) + " KB, "
+                    + (full / count) + " bytes per VM; compact "
+                    + (compact >> 10) + " KB, " + (compact / count)
+                    + " bytes per VM (" + (100 - compact * 100 / full) + "% less)");
+        }
+    }
+
+    private static long measure(int count, boolean compact,
+            List<VirtualNetworkInfo> vns) {
+        VCenterMonitor.compactRecords = compact;
+        long before = usedHeap();
+        List<VirtualMachineInfo> vms = new ArrayList<VirtualMachineInfo>(count);
+        for (int i = 0; i < count; i++) {
+            vms.add(createVm(i, vns));
+        }
+        long after = usedHeap();
+        if (vms.size() != count) {
+            throw new IllegalStateException();
+        }
+        return after - before;
+    }
+
+    private static VirtualMachineInfo createVm(int i, List<VirtualNetworkInfo> vns) {
+        String uuid = UUID.randomUUID().toString();
+        VirtualMachineInfo vmInfo = new VirtualMachineInfo(uuid);
+        vmInfo.setName("vm-" + i);
+        // names parsed from vCenter replies, a new string each time
+        vmInfo.setHostName(new String("esxi-" + (i % HOSTS) + ".lab"));
+        vmInfo.setVrouterIpAddress(new String("10.84.0." + (i % HOSTS)));
+        vmInfo.dcName = VirtualMachineInfo.intern(new String("dc"));
+        vmInfo.dvsName = VirtualMachineInfo.intern(new String("dvs"));
+        vmInfo.setPowerState(VirtualMachinePowerState.poweredOn);
+        vmInfo.setToolsRunningStatus("guestToolsRunning");
+
+        ManagedObjectReference vmMor = new ManagedObjectReference();
+        vmMor.setType("VirtualMachine");
+        vmMor.setVal("vm-" + (1000 + i));
+        vmInfo.setVm(new com.vmware.vim25.mo.VirtualMachine(null, vmMor));
+        ManagedObjectReference hostMor = new ManagedObjectReference();
+        hostMor.setType("HostSystem");
+        hostMor.setVal("host-" + (i % HOSTS));
+        vmInfo.host = new com.vmware.vim25.mo.HostSystem(null, hostMor);
+
+        VirtualMachine apiVm = new VirtualMachine();
+        apiVm.setName(uuid);
+        apiVm.setUuid(uuid);
+        apiVm.setDisplayName(vmInfo.getVrouterIpAddress());
+        vmInfo.apiVm = apiVm;
+
+        for (int n = 0; n < 2; n++) {
+            VirtualNetworkInfo vnInfo = vns.get((i + n) % vns.size());
+            VirtualMachineInterfaceInfo vmiInfo =
+                    new VirtualMachineInterfaceInfo(vmInfo, vnInfo);
+            String mac = String.format("00:50:56:%02x:%02x:%02x",
+                    (i >> 16) & 0xff, (i >> 8) & 0xff, (i + n) & 0xff);
+            vmiInfo.setMacAddress(mac);
+            vmiInfo.setIpAddress("192.168." + ((i >> 8) & 0xff) + "." + (i & 0xff));
+            vmiInfo.setUuid(VirtualMachineInterfaceInfo.deriveUuid(
+                    uuid, vnInfo.getUuid(), mac));
+
+            VirtualMachineInterface apiVmi = new VirtualMachineInterface();
+            apiVmi.setUuid(vmiInfo.getUuid());
+            apiVmi.setName(vmiInfo.getUuid());
+            apiVmi.setDisplayName("vmi-" + vnInfo.getName() + "-" + vmInfo.getName());
+            MacAddressesType macs = new MacAddressesType();
+            macs.addMacAddress(mac);
+            apiVmi.setMacAddresses(macs);
+            apiVmi.addVirtualMachine(apiVm);
+            vmiInfo.apiVmi = apiVmi;
+
+            InstanceIp instanceIp = new InstanceIp();
+            String instanceIpUuid = VirtualMachineInterfaceInfo.deriveInstanceIpUuid(
+                    vmiInfo.getUuid());
+            instanceIp.setUuid(instanceIpUuid);
+            instanceIp.setName(instanceIpUuid);
+            instanceIp.setAddress(vmiInfo.getIpAddress());
+            instanceIp.setVirtualMachineInterface(apiVmi);
+            vmiInfo.apiInstanceIp = instanceIp;
+
+            vmInfo.created(vmiInfo);
+        }
+        vmInfo.compact();
+        return vmInfo;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.FixMethodOrder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class VncCascadeDeleteTest extends TestCase {
+
+    @Test
+    public void testAllChildrenRunDespiteFailure() throws Exception {
+        VncCascadeDelete cascade = new VncCascadeDelete(4);
+        final AtomicInteger done = new AtomicInteger();
+        List<VncWriteBehind.Write> deletes = new ArrayList<VncWriteBehind.Write>();
+        for (int i = 0; i < 20; i++) {
+            final int n = i;
+            deletes.add(new VncWriteBehind.Write() {
+                @Override
+                public void run() throws IOException {
+                    if (n == 3) {
+                        throw new IOException("child " + n);
+                    }
+                    done.incrementAndGet();
+                }
+            });
+        }
+        try {
+            cascade.deleteAll("children", deletes);
+            fail("failure not reported");
+        } catch (IOException e) {
+            assertEquals("child 3", e.getMessage());
+        }
+        assertEquals(19, done.get());
+        assertEquals(19L, cascade.getDeleted());
+        assertEquals(1L, cascade.getFailures());
+        cascade.shutdown();
+    }
+
+    @Test
+    public void testNestedDeletesRunInline() throws Exception {
+        // more parents than threads, each waiting for its own children
+        final VncCascadeDelete cascade = new VncCascadeDelete(2);
+        final AtomicInteger children = new AtomicInteger();
+        List<VncWriteBehind.Write> parents = new ArrayList<VncWriteBehind.Write>();
+        for (int i = 0; i < 8; i++) {
+            parents.add(new VncWriteBehind.Write() {
+                @Override
+                public void run() throws IOException {
+                    List<VncWriteBehind.Write> deletes =
+                            new ArrayList<VncWriteBehind.Write>();
+                    for (int j = 0; j < 3; j++) {
+                        deletes.add(new VncWriteBehind.Write() {
+                            @Override
+                            public void run() {
+                                children.incrementAndGet();
+                            }
+                        });
+                    }
+                    cascade.deleteAll("children", deletes);
+                }
+            });
+        }
+        cascade.deleteAll("parents", parents);
+        assertEquals(24, children.get());
+        cascade.shutdown();
+    }
+}
@@ -94,6 +94,9 @@ public class VncDBTest extends TestCase {
         assertNotNull(vncDB.getApiConnector());
         assertTrue(vncDB.isVncApiServerAlive());
         assertTrue(vncDB.Initialize());
+        // the probe now reads the vCenter project only
+        assertTrue(vncDB.isVncApiServerAlive());
+        assertEquals(2L, vncDB.getProbeLatency().getCount());
     }
 
     @Test
@@ -219,6 +222,11 @@ public class VncDBTest extends TestCase {
         assertNotNull(vmInterface);
         assertEquals(vmInterface.getUuid(), vmiInfo.getUuid());
         assertEquals(vmInterface.getName(), vmiInfo.getUuid());
+        // the same VM, network and MAC always give the same VMI
+        assertEquals(VirtualMachineInterfaceInfo.deriveUuid(vmUuid, vnInfo.getUuid(),
+                macAddress), vmiInfo.getUuid());
+        assertEquals(VirtualMachineInterfaceInfo.deriveInstanceIpUuid(vmiInfo.getUuid()),
+                vmiInfo.apiInstanceIp.getUuid());
         assertEquals(vmInterface.getIdPerms(), vncDB.getVCenterIdPerms());
         assertEquals(vmInterface.getParent(), vncDB.getVCenterProject());
         List<String> macAddresses = vmInterface.getMacAddresses().getMacAddress();
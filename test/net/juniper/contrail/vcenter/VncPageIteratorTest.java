@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.Map.Entry;
+import junit.framework.TestCase;
+import net.juniper.contrail.api.types.VirtualMachine;
+import org.junit.Test;
+import org.junit.FixMethodOrder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class VncPageIteratorTest extends TestCase {
+
+    @Test
+    public void testPagesInUuidOrder() {
+        List<VirtualMachine> vms = new ArrayList<VirtualMachine>();
+        String[] uuids = { "e", "b", "a", "d", "c" };
+        for (String uuid: uuids) {
+            VirtualMachine vm = new VirtualMachine();
+            vm.setUuid(uuid);
+            vms.add(vm);
+        }
+        final List<Integer> pageSizes = new ArrayList<Integer>();
+        VncPageIterator<VirtualMachine, String> iter =
+                new VncPageIterator<VirtualMachine, String>(vms, 2) {
+            @Override
+            SortedMap<String, String> readPage(List<VirtualMachine> page) {
+                pageSizes.add(page.size());
+                SortedMap<String, String> map = new TreeMap<String, String>();
+                for (VirtualMachine vm: page) {
+                    // not owned by the plugin
+                    if (!vm.getUuid().equals("d")) {
+                        map.put(vm.getUuid(), vm.getUuid());
+                    }
+                }
+                return map;
+            }
+        };
+
+        // nothing is read before the iteration asks for it
+        assertEquals(0, pageSizes.size());
+        StringBuilder order = new StringBuilder();
+        while (iter.hasNext()) {
+            Entry<String, String> entry = iter.next();
+            order.append(entry.getKey());
+            if (order.length() == 1) {
+                // one page at a time
+                assertEquals(1, pageSizes.size());
+            }
+        }
+        assertEquals("abce", order.toString());
+        assertEquals(3, iter.getPages());
+        assertEquals(4, iter.getCount());
+        assertEquals("[2, 2, 1]", pageSizes.toString());
+    }
+
+    @Test
+    public void testSplitByKeyRange() {
+        List<VirtualMachine> vms = new ArrayList<VirtualMachine>();
+        String[] uuids = { "e", "b", "a", "d", "c", "f" };
+        for (String uuid: uuids) {
+            VirtualMachine vm = new VirtualMachine();
+            vm.setUuid(uuid);
+            vms.add(vm);
+        }
+        VncPageIterator<VirtualMachine, String> iter =
+                new VncPageIterator<VirtualMachine, String>(vms, 10) {
+            @Override
+            SortedMap<String, String> readPage(List<VirtualMachine> page) {
+                SortedMap<String, String> map = new TreeMap<String, String>();
+                for (VirtualMachine vm: page) {
+                    map.put(vm.getUuid(), vm.getUuid());
+                }
+                return map;
+            }
+        };
+
+        List<String> bounds = new ArrayList<String>();
+        bounds.add("c");
+        bounds.add("ca");
+        List<VncPageIterator<VirtualMachine, String>> parts = iter.split(bounds);
+        assertEquals(3, parts.size());
+        assertFalse(iter.hasNext());
+
+        String[] expected = { "ab", "c", "def" };
+        for (int i = 0; i < parts.size(); i++) {
+            StringBuilder keys = new StringBuilder();
+            while (parts.get(i).hasNext()) {
+                keys.append(parts.get(i).next().getKey());
+            }
+            assertEquals(expected[i], keys.toString());
+        }
+    }
+}
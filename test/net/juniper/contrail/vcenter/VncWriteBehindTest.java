@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2015 Juniper Networks, Inc. All rights reserved.
+ */
+
+package net.juniper.contrail.vcenter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.FixMethodOrder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class VncWriteBehindTest extends TestCase {
+
+    @Test
+    public void testKeysRunInParallel() throws InterruptedException {
+        VncWriteBehind writeBehind = new VncWriteBehind(2, 8);
+        final CountDownLatch started = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            writeBehind.submit("vm-" + i, "create", new VncWriteBehind.Write() {
+                @Override
+                public void run() throws Exception {
+                    // both keys have to be in flight for this to return
+                    started.countDown();
+                    assertTrue(started.await(5, TimeUnit.SECONDS));
+                }
+            });
+        }
+        assertTrue(writeBehind.drain(10000));
+        assertEquals(0L, writeBehind.getFailures());
+        assertEquals(2L, writeBehind.getLatencies().get("create").getCount());
+        writeBehind.shutdown();
+    }
+
+    @Test
+    public void testStepsOfAKeyRunInOrder() throws InterruptedException {
+        VncWriteBehind writeBehind = new VncWriteBehind(4, 4);
+        final List<Integer> steps = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < 20; i++) {
+            final int step = i;
+            writeBehind.submit("vm", "create", new VncWriteBehind.Write() {
+                @Override
+                public void run() throws Exception {
+                    steps.add(step);
+                }
+            });
+        }
+        assertTrue(writeBehind.drain(10000));
+        assertEquals(20, steps.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Integer.valueOf(i), steps.get(i));
+        }
+        writeBehind.shutdown();
+    }
+
+    @Test
+    public void testFailureDropsDependentSteps() throws InterruptedException {
+        VncWriteBehind writeBehind = new VncWriteBehind(1, 8);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> done = Collections.synchronizedList(new ArrayList<String>());
+        writeBehind.submit("vm", "create", new VncWriteBehind.Write() {
+            @Override
+            public void run() throws Exception {
+                release.await(5, TimeUnit.SECONDS);
+                throw new Exception("create VM failed");
+            }
+        });
+        writeBehind.submit("vm", "create", new VncWriteBehind.Write() {
+            @Override
+            public void run() throws Exception {
+                done.add("vmi");
+            }
+        });
+        release.countDown();
+        assertTrue(writeBehind.drain(10000));
+        assertTrue(done.isEmpty());
+        assertEquals(1L, writeBehind.getFailures());
+        assertEquals(1L, writeBehind.getSkipped());
+        writeBehind.shutdown();
+    }
+
+    @Test
+    public void testPendingKeysOnTimeout() throws InterruptedException {
+        VncWriteBehind writeBehind = new VncWriteBehind(2, 8);
+        final CountDownLatch release = new CountDownLatch(1);
+        writeBehind.submit("vm-1", "create", new VncWriteBehind.Write() {
+            @Override
+            public void run() throws Exception {
+                release.await(5, TimeUnit.SECONDS);
+            }
+        });
+        writeBehind.submit("vm-2", "create", new VncWriteBehind.Write() {
+            @Override
+            public void run() throws Exception {
+            }
+        });
+        assertFalse(writeBehind.drain(200));
+        assertEquals(Collections.singletonList("vm-1"), writeBehind.getPendingKeys());
+        release.countDown();
+        assertTrue(writeBehind.drain(10000));
+        assertTrue(writeBehind.getPendingKeys().isEmpty());
+        writeBehind.shutdown();
+    }
+}